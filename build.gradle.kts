@@ -18,6 +18,13 @@ repositories {
     maven("https://jitpack.io")
 }
 
+sourceSets {
+    create("tuner") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
 dependencies {
     implementation(fileTree("lib").include("*.jar"))
     implementation("com.github.JavaBWAPI:JBwapi:1.0.0")
@@ -26,6 +33,8 @@ dependencies {
     testImplementation("org.assertj:assertj-core:3.+")
     testImplementation("io.jenetics:jenetics:5.+")
     testImplementation("org.mockito:mockito-core:3.+")
+
+    "tunerImplementation"("io.jenetics:jenetics:5.+")
 }
 
 configure<JavaPluginConvention> {
@@ -33,6 +42,7 @@ configure<JavaPluginConvention> {
 }
 
 configurations.testImplementation.get().extendsFrom(configurations.implementation.get())
+configurations["tunerImplementation"].extendsFrom(configurations.implementation.get())
 
 tasks {
     check {
@@ -47,6 +57,22 @@ tasks {
         destinationDir = File("docs")
     }
 
+    register<JavaExec>("evaluatorAccuracyReport") {
+        description = "Reports Evaluator agreement with the Simulator and the cost per call of both."
+        dependsOn("jmhJar")
+        classpath = getByName("jmhJar").outputs.files
+        main = "org.bk.ass.EvaluatorAccuracyReport"
+        args = listOf(File(buildDir, "reports/evaluator-accuracy.txt").path) +
+                (project.findProperty("jmhArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+    }
+
+    register<JavaExec>("tune") {
+        description = "Tunes the Evaluator parameters against simulated scenarios."
+        classpath = sourceSets["tuner"].runtimeClasspath
+        main = "org.bk.ass.sim.EvaluatorParameterTuner"
+        args = (project.findProperty("tunerArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+    }
+
 }
 
 jmh {
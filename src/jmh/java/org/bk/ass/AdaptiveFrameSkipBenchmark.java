@@ -0,0 +1,180 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bk.ass.EvaluatorAccuracyBenchmark.Matchup;
+import org.bk.ass.sim.Agent;
+import org.bk.ass.sim.AgentUtil;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.Simulator;
+import org.bk.ass.sim.Simulator.Builder;
+import org.bk.ass.sim.SimulatorSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares fixed frame skips of 1, 4 and 37 with adaptive frame skips of up to 37 and 240 frames
+ * when simulating until one side is dead (or for at most a minute). Run {@link #main(String[])} to
+ * see how often each agrees with a frame skip of 1 on the winner.
+ */
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AdaptiveFrameSkipBenchmark {
+  private static final int MATCHUPS = 500;
+  /**
+   * Upper bound of frames to simulate. A large fixed frame skip can lead to agents missing each
+   * other forever, so simulating until one side is dead might never end.
+   */
+  private static final int MAX_FRAMES = 24 * 60;
+
+  @State(Scope.Thread)
+  public static class MyState {
+
+    /** Additional distance between both forces. */
+    @Param({"0", "800"})
+    int distance;
+
+    Simulator fs1 = new Builder().build();
+    Simulator fs4 = new Builder().withFrameSkip(4).build();
+    Simulator fs37 = new Builder().withFrameSkip(37).build();
+    Simulator adaptive = new Builder().withAdaptiveFrameSkip(37).build();
+    Simulator adaptive240 = new Builder().withAdaptiveFrameSkip(240).build();
+    SimulatorSnapshot[] snapshots;
+    int next;
+
+    @Setup
+    public void setup() {
+      snapshots = snapshots(fs1, distance);
+    }
+
+    SimulatorSnapshot nextSnapshot() {
+      next = (next + 1) % MATCHUPS;
+      return snapshots[next];
+    }
+  }
+
+  /** Static defense only, nothing moves. */
+  @State(Scope.Thread)
+  public static class StaticDefenseState {
+    Simulator fs1 = new Builder().build();
+    Simulator adaptive240 = new Builder().withAdaptiveFrameSkip(240).build();
+    SimulatorSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+      JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+      for (int i = 0; i < 6; i++) {
+        fs1.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(100 + 64 * i));
+        fs1.addAgentB(factory.of(UnitType.Zerg_Sunken_Colony).setX(300).setY(100 + 64 * i));
+      }
+      snapshot = fs1.snapshot();
+    }
+  }
+
+  private static SimulatorSnapshot[] snapshots(Simulator simulator, int distance) {
+    List<Matchup> matchups =
+        EvaluatorAccuracyBenchmark.matchups(EvaluatorAccuracyBenchmark.SEED, MATCHUPS);
+    SimulatorSnapshot[] snapshots = new SimulatorSnapshot[MATCHUPS];
+    for (int i = 0; i < MATCHUPS; i++) {
+      Matchup matchup = matchups.get(i);
+      AgentUtil.randomizePositions(matchup.agentsB, 1200 + distance, 900, 1400 + distance, 1100);
+      matchup.addTo(simulator);
+      snapshots[i] = simulator.snapshot();
+    }
+    return snapshots;
+  }
+
+  @Benchmark
+  public int frameSkip1(MyState state) {
+    return simulate(state.fs1, state.nextSnapshot());
+  }
+
+  @Benchmark
+  public int frameSkip4(MyState state) {
+    return simulate(state.fs4, state.nextSnapshot());
+  }
+
+  @Benchmark
+  public int frameSkip37(MyState state) {
+    return simulate(state.fs37, state.nextSnapshot());
+  }
+
+  @Benchmark
+  public int adaptiveFrameSkip(MyState state) {
+    return simulate(state.adaptive, state.nextSnapshot());
+  }
+
+  @Benchmark
+  public int adaptiveFrameSkip240(MyState state) {
+    return simulate(state.adaptive240, state.nextSnapshot());
+  }
+
+  @Benchmark
+  public int staticDefense_frameSkip1(StaticDefenseState state) {
+    return simulate(state.fs1, state.snapshot);
+  }
+
+  @Benchmark
+  public int staticDefense_adaptiveFrameSkip240(StaticDefenseState state) {
+    return simulate(state.adaptive240, state.snapshot);
+  }
+
+  private static int simulate(Simulator simulator, SimulatorSnapshot snapshot) {
+    simulator.restore(snapshot);
+    return simulator.simulate(MAX_FRAMES);
+  }
+
+  /** Prints how often each frame skip setting agrees with a frame skip of 1 on the winner. */
+  public static void main(String[] args) {
+    MyState state = new MyState();
+    Simulator[] simulators = {state.fs4, state.fs37, state.adaptive, state.adaptive240};
+    String[] names = {"frameSkip4", "frameSkip37", "adaptiveFrameSkip", "adaptiveFrameSkip240"};
+    for (int distance : new int[] {0, 800}) {
+      int[] expected = winners(state.fs1, distance);
+      for (int i = 0; i < simulators.length; i++) {
+        int[] winners = winners(simulators[i], distance);
+        int agreed = 0;
+        for (int m = 0; m < MATCHUPS; m++) {
+          if (winners[m] == expected[m]) {
+            agreed++;
+          }
+        }
+        System.out.printf(
+            "distance %d, %s agrees with frameSkip1: %d/%d (%.1f%%)%n",
+            distance, names[i], agreed, MATCHUPS, 100.0 * agreed / MATCHUPS);
+      }
+    }
+  }
+
+  /**
+   * Simulates each matchup with its own agents, as snapshots don't capture all state that could
+   * be changed by simulating.
+   */
+  private static int[] winners(Simulator simulator, int distance) {
+    SimulatorSnapshot[] snapshots = snapshots(simulator, distance);
+    int[] winners = new int[MATCHUPS];
+    for (int m = 0; m < MATCHUPS; m++) {
+      simulator.setSeed(m);
+      simulate(simulator, snapshots[m]);
+      winners[m] = Long.compare(alive(simulator.getAgentsA()), alive(simulator.getAgentsB()));
+    }
+    return winners;
+  }
+
+  /** Agents killed in the last step are not yet removed. */
+  private static long alive(Collection<Agent> agents) {
+    return agents.stream().filter(agent -> agent.getHealth() > 0).count();
+  }
+}
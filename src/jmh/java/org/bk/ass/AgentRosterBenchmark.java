@@ -0,0 +1,93 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import org.bk.ass.sim.Agent;
+import org.bk.ass.sim.AgentRoster;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.Simulator;
+import org.bk.ass.sim.Simulator.Builder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame setup of a large battle, with only a few units changing between frames. Nothing is
+ * actually simulated, only the setup cost is measured.
+ */
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+public class AgentRosterBenchmark {
+  private static final int AGENTS_PER_SIDE = 200;
+  private static final int CHANGED_PER_FRAME = 10;
+
+  @State(Scope.Thread)
+  public static class MyState {
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+    JBWAPIAgentFactory pooledFactory = new JBWAPIAgentFactory(null, true);
+    Simulator simulator = new Builder().build();
+    AgentRoster roster = new AgentRoster(new Builder().build());
+    int frame;
+
+    @Setup
+    public void setup() {
+      for (int i = 0; i < AGENTS_PER_SIDE; i++) {
+        roster.getOrAddA(i, this::marine);
+        roster.getOrAddB(-i - 1, this::hydralisk);
+      }
+    }
+
+    Agent marine(Object key) {
+      return marine(factory, (Integer) key);
+    }
+
+    Agent hydralisk(Object key) {
+      return hydralisk(factory, -(Integer) key - 1);
+    }
+
+    static Agent marine(JBWAPIAgentFactory factory, int i) {
+      return factory.of(UnitType.Terran_Marine).setX(i % 20 * 16).setY(i / 20 * 16);
+    }
+
+    static Agent hydralisk(JBWAPIAgentFactory factory, int i) {
+      return factory.of(UnitType.Zerg_Hydralisk).setX(i % 20 * 16).setY(400 + i / 20 * 16);
+    }
+  }
+
+  @Benchmark
+  public int resetAndAddAll(MyState state) {
+    Simulator simulator = state.simulator;
+    simulator.reset();
+    for (int i = 0; i < AGENTS_PER_SIDE; i++) {
+      simulator.addAgentA(state.marine(i));
+      simulator.addAgentB(state.hydralisk(-i - 1));
+    }
+    return simulator.simulate(0);
+  }
+
+  @Benchmark
+  public int resetAndAddAllPooled(MyState state) {
+    Simulator simulator = state.simulator;
+    JBWAPIAgentFactory factory = state.pooledFactory;
+    factory.recycleAgents();
+    simulator.reset();
+    for (int i = 0; i < AGENTS_PER_SIDE; i++) {
+      simulator.addAgentA(MyState.marine(factory, i));
+      simulator.addAgentB(MyState.hydralisk(factory, i));
+    }
+    return simulator.simulate(0);
+  }
+
+  @Benchmark
+  public int rosterUpdateChanged(MyState state) {
+    AgentRoster roster = state.roster;
+    int frame = state.frame++;
+    for (int i = 0; i < CHANGED_PER_FRAME; i++) {
+      roster.getOrAddA((frame * CHANGED_PER_FRAME + i) % AGENTS_PER_SIDE, state::marine)
+          .setHealth(20 + frame % 20);
+    }
+    return roster.simulate(0);
+  }
+}
@@ -0,0 +1,54 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import org.bk.ass.sim.AgentUtil;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.Simulator;
+import org.bk.ass.sim.Simulator.Builder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reuses many simulators on one thread, as done when evaluating lots of engagements per frame. Run
+ * with {@code -prof gc} for allocation rates and {@code -prof perfnorm} for cache misses.
+ */
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+public class CollisionMapBenchmark {
+
+  @State(Scope.Thread)
+  public static class MyState {
+    @Param({"1", "32"})
+    int simulatorCount;
+
+    Simulator[] simulators;
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+
+    @Setup
+    public void setup() {
+      simulators = new Simulator[simulatorCount];
+      for (int i = 0; i < simulatorCount; i++) {
+        simulators[i] = new Builder().build();
+      }
+    }
+  }
+
+  @Benchmark
+  public int resetAndSimulate(MyState state) {
+    int result = 0;
+    for (Simulator simulator : state.simulators) {
+      simulator.reset();
+      for (int i = 0; i < 20; i++) {
+        simulator.addAgentA(state.factory.of(UnitType.Terran_Marine).setX(i * 16).setY(0));
+        simulator.addAgentB(state.factory.of(UnitType.Protoss_Zealot).setX(i * 16).setY(160));
+      }
+      result += simulator.simulate(24);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,51 @@
+package org.bk.ass;
+
+import java.util.List;
+import org.bk.ass.EvaluatorAccuracyBenchmark.Matchup;
+import org.bk.ass.sim.CombatPredictor;
+import org.bk.ass.sim.CombatPredictor.Prediction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+public class CombatPredictorBenchmark {
+
+  @State(Scope.Thread)
+  public static class MyState {
+
+    CombatPredictor predictor = new CombatPredictor.Builder().build();
+    CombatPredictor alwaysSimulate =
+        new CombatPredictor.Builder().withConfidenceBounds(0.0, 1.0).build();
+    List<Matchup> matchups;
+    int next;
+
+    @Setup
+    public void setup() {
+      matchups =
+          EvaluatorAccuracyBenchmark.matchups(
+              EvaluatorAccuracyBenchmark.SEED, EvaluatorAccuracyBenchmark.MATCHUPS);
+    }
+
+    Matchup nextMatchup() {
+      next = (next + 1) % matchups.size();
+      return matchups.get(next);
+    }
+  }
+
+  @Benchmark
+  public Prediction predict(MyState state) {
+    Matchup matchup = state.nextMatchup();
+    return state.predictor.predict(matchup.agentsA, matchup.agentsB);
+  }
+
+  @Benchmark
+  public Prediction alwaysSimulate(MyState state) {
+    Matchup matchup = state.nextMatchup();
+    return state.alwaysSimulate.predict(matchup.agentsA, matchup.agentsB);
+  }
+}
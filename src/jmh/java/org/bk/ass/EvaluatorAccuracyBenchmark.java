@@ -0,0 +1,152 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.bk.ass.sim.Agent;
+import org.bk.ass.sim.AgentUtil;
+import org.bk.ass.sim.Evaluator;
+import org.bk.ass.sim.Evaluator.MutableEvaluationResult;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.LanchesterSolver;
+import org.bk.ass.sim.Simulator;
+import org.bk.ass.sim.Simulator.Builder;
+import org.bk.ass.sim.SimulatorSnapshot;
+import org.bk.ass.sim.SquadSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost per call of the {@link Evaluator}, the {@link LanchesterSolver} and of the {@link Simulator}
+ * (until one side is dead) on randomized matchups. See {@link EvaluatorAccuracyReport} for how
+ * often they agree.
+ */
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EvaluatorAccuracyBenchmark {
+  static final long SEED = 4711;
+  static final int MATCHUPS = 2000;
+  /** Every unit type can attack ground and air, so simulating until one side is dead will end. */
+  private static final UnitType[] UNIT_TYPES = {
+    UnitType.Terran_Marine,
+    UnitType.Terran_Ghost,
+    UnitType.Terran_Goliath,
+    UnitType.Terran_Wraith,
+    UnitType.Protoss_Dragoon,
+    UnitType.Protoss_Archon,
+    UnitType.Protoss_Scout,
+    UnitType.Zerg_Hydralisk,
+    UnitType.Zerg_Mutalisk
+  };
+
+  /** Generates the same randomized matchups for the same seed. */
+  static List<Matchup> matchups(long seed, int count) {
+    SplittableRandom rnd = new SplittableRandom(seed);
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+    List<Matchup> matchups = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      List<Agent> agentsA = randomAgents(factory, rnd);
+      List<Agent> agentsB = randomAgents(factory, rnd);
+      AgentUtil.randomizePositions(agentsA, 900, 900, 1100, 1100);
+      AgentUtil.randomizePositions(agentsB, 1200, 900, 1400, 1100);
+      matchups.add(new Matchup(agentsA, agentsB));
+    }
+    return matchups;
+  }
+
+  private static List<Agent> randomAgents(JBWAPIAgentFactory factory, SplittableRandom rnd) {
+    List<Agent> agents = new ArrayList<>();
+    int types = rnd.nextInt(1, 4);
+    for (int i = 0; i < types; i++) {
+      UnitType type = UNIT_TYPES[rnd.nextInt(UNIT_TYPES.length)];
+      int amount = rnd.nextInt(1, 9);
+      for (int j = 0; j < amount; j++) {
+        agents.add(factory.of(type));
+      }
+    }
+    return agents;
+  }
+
+  static final class Matchup {
+    final List<Agent> agentsA;
+    final List<Agent> agentsB;
+
+    Matchup(List<Agent> agentsA, List<Agent> agentsB) {
+      this.agentsA = agentsA;
+      this.agentsB = agentsB;
+    }
+
+    /** Adds copies of the agents to the given simulator, which is reset first. */
+    void addTo(Simulator simulator) {
+      simulator.reset();
+      agentsA.forEach(a -> simulator.addAgentA(new Agent(a)));
+      agentsB.forEach(b -> simulator.addAgentB(new Agent(b)));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class MyState {
+
+    Evaluator evaluator = new Evaluator();
+    MutableEvaluationResult result = new MutableEvaluationResult();
+    LanchesterSolver solver = new LanchesterSolver();
+    SquadSimulator squadSimulator = new SquadSimulator();
+    Simulator simulator = new Builder().build();
+    List<Matchup> matchups;
+    SimulatorSnapshot[] snapshots;
+    int next;
+
+    @Setup
+    public void setup() {
+      matchups = matchups(SEED, MATCHUPS);
+      snapshots = new SimulatorSnapshot[MATCHUPS];
+      for (int i = 0; i < MATCHUPS; i++) {
+        matchups.get(i).addTo(simulator);
+        snapshots[i] = simulator.snapshot();
+      }
+    }
+
+    int nextMatchup() {
+      next = (next + 1) % MATCHUPS;
+      return next;
+    }
+  }
+
+  @Benchmark
+  public MutableEvaluationResult evaluate(MyState state) {
+    Matchup matchup = state.matchups.get(state.nextMatchup());
+    return state.evaluator.evaluate(matchup.agentsA, matchup.agentsB, state.result);
+  }
+
+  @Benchmark
+  public LanchesterSolver.Result solve(MyState state) {
+    Matchup matchup = state.matchups.get(state.nextMatchup());
+    return state.solver.solve(matchup.agentsA, matchup.agentsB);
+  }
+
+  /** Includes aggregating both sides into squads. */
+  @Benchmark
+  public SquadSimulator.Engagement engageSquads(MyState state) {
+    Matchup matchup = state.matchups.get(state.nextMatchup());
+    return state.squadSimulator.engage(
+        new SquadSimulator.Squad(matchup.agentsA), new SquadSimulator.Squad(matchup.agentsB));
+  }
+
+  /** Includes restoring the matchup from a snapshot, which is small compared to simulating. */
+  @Benchmark
+  public int simulateUntilOneSideIsDead(MyState state) {
+    state.simulator.restore(state.snapshots[state.nextMatchup()]);
+    return state.simulator.simulate(-1);
+  }
+}
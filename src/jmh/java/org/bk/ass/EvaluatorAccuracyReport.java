@@ -0,0 +1,119 @@
+package org.bk.ass;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import org.bk.ass.EvaluatorAccuracyBenchmark.Matchup;
+import org.bk.ass.sim.Evaluator;
+import org.bk.ass.sim.LanchesterSolver;
+import org.bk.ass.sim.Simulator;
+import org.bk.ass.sim.Simulator.Builder;
+import org.bk.ass.sim.SquadSimulator;
+import org.bk.ass.sim.SquadSimulator.Squad;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reports how often the {@link Evaluator}, the {@link LanchesterSolver} and the {@link
+ * SquadSimulator} predict the winner determined by the {@link Simulator} and runs the {@link
+ * EvaluatorAccuracyBenchmark} to report the cost of each.
+ *
+ * <p>Arguments (all optional): <code>[report file] [jmh options]</code>
+ */
+public class EvaluatorAccuracyReport {
+
+  public static void main(String[] args) throws Exception {
+    Path reportFile = Paths.get(args.length > 0 ? args[0] : "build/reports/evaluator-accuracy.txt");
+    StringWriter report = new StringWriter();
+    PrintWriter out = new PrintWriter(report);
+
+    List<Matchup> matchups =
+        EvaluatorAccuracyBenchmark.matchups(
+            EvaluatorAccuracyBenchmark.SEED, EvaluatorAccuracyBenchmark.MATCHUPS);
+    Evaluator evaluator = new Evaluator();
+    LanchesterSolver solver = new LanchesterSolver();
+    SquadSimulator squadSimulator = new SquadSimulator();
+    Simulator simulator = new Builder().build();
+    int winsA = 0;
+    int winsB = 0;
+    int agreed = 0;
+    int solverAgreed = 0;
+    int squadAgreed = 0;
+    for (Matchup matchup : matchups) {
+      double value = evaluator.evaluate(matchup.agentsA, matchup.agentsB).value;
+      double solverValue = solver.solve(matchup.agentsA, matchup.agentsB).value;
+      double squadValue =
+          squadSimulator.engage(new Squad(matchup.agentsA), new Squad(matchup.agentsB)).value;
+      matchup.addTo(simulator);
+      simulator.simulate(-1);
+      if (simulator.getAgentsB().isEmpty() && !simulator.getAgentsA().isEmpty()) {
+        winsA++;
+        if (value > 0.5) {
+          agreed++;
+        }
+        if (solverValue > 0.5) {
+          solverAgreed++;
+        }
+        if (squadValue > 0.5) {
+          squadAgreed++;
+        }
+      } else if (simulator.getAgentsA().isEmpty() && !simulator.getAgentsB().isEmpty()) {
+        winsB++;
+        if (value < 0.5) {
+          agreed++;
+        }
+        if (solverValue < 0.5) {
+          solverAgreed++;
+        }
+        if (squadValue < 0.5) {
+          squadAgreed++;
+        }
+      }
+    }
+    int decided = winsA + winsB;
+    out.printf(
+        "Matchups: %d (A won %d, B won %d, draws %d)%n",
+        matchups.size(), winsA, winsB, matchups.size() - decided);
+    out.printf(
+        "Evaluator agrees with Simulator.simulate(-1) on the winner: %d/%d (%.1f%%)%n",
+        agreed, decided, decided == 0 ? 0.0 : 100.0 * agreed / decided);
+    out.printf(
+        "LanchesterSolver agrees with Simulator.simulate(-1) on the winner: %d/%d (%.1f%%)%n",
+        solverAgreed, decided, decided == 0 ? 0.0 : 100.0 * solverAgreed / decided);
+    out.printf(
+        "SquadSimulator agrees with Simulator.simulate(-1) on the winner: %d/%d (%.1f%%)%n",
+        squadAgreed, decided, decided == 0 ? 0.0 : 100.0 * squadAgreed / decided);
+
+    String[] jmhArgs = new String[Math.max(0, args.length - 1)];
+    System.arraycopy(args, Math.min(1, args.length), jmhArgs, 0, jmhArgs.length);
+    Collection<RunResult> results =
+        new Runner(
+                new OptionsBuilder()
+                    .parent(new CommandLineOptions(jmhArgs))
+                    .include(EvaluatorAccuracyBenchmark.class.getSimpleName())
+                    .build())
+            .run();
+    for (RunResult result : results) {
+      out.printf(
+          "%s: %.0f %s%n",
+          result.getParams().getBenchmark(),
+          result.getPrimaryResult().getScore(),
+          result.getPrimaryResult().getScoreUnit());
+    }
+    out.flush();
+
+    System.out.println();
+    System.out.print(report);
+    if (reportFile.getParent() != null) {
+      Files.createDirectories(reportFile.getParent());
+    }
+    Files.write(reportFile, report.toString().getBytes(StandardCharsets.UTF_8));
+  }
+}
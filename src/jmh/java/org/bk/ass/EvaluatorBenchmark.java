@@ -5,7 +5,10 @@ import java.util.ArrayList;
 import java.util.List;
 import org.bk.ass.sim.Agent;
 import org.bk.ass.sim.Evaluator;
+import org.bk.ass.sim.Evaluator.EvalWithAgents;
 import org.bk.ass.sim.Evaluator.EvaluationResult;
+import org.bk.ass.sim.Evaluator.IncrementalEvaluation;
+import org.bk.ass.sim.Evaluator.MutableEvaluationResult;
 import org.bk.ass.sim.JBWAPIAgentFactory;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
@@ -22,6 +25,7 @@ public class EvaluatorBenchmark {
   public static class MyState {
 
     Evaluator evaluator = new Evaluator();
+    MutableEvaluationResult result = new MutableEvaluationResult();
     JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
     private List<Agent> agentsA = new ArrayList<>();
     private List<Agent> agentsB = new ArrayList<>();
@@ -37,8 +41,127 @@ public class EvaluatorBenchmark {
     }
   }
 
+  @State(Scope.Thread)
+  public static class LargeArmiesState {
+
+    Evaluator evaluator = new Evaluator();
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+    private List<Agent> agentsA = new ArrayList<>();
+    private List<Agent> agentsB = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+      for (int i = 0; i < 100; i++) {
+        agentsA.add(factory.of(UnitType.Zerg_Mutalisk));
+        agentsA.add(factory.of(UnitType.Zerg_Zergling));
+        agentsA.add(factory.of(UnitType.Zerg_Overlord));
+      }
+      for (int i = 0; i < 100; i++) {
+        agentsB.add(factory.of(UnitType.Terran_Marine));
+        agentsB.add(factory.of(UnitType.Terran_Medic));
+        agentsB.add(factory.of(UnitType.Terran_Vulture));
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class CandidatesState {
+
+    Evaluator evaluator = new Evaluator();
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+    private List<Agent> enemies = new ArrayList<>();
+    private List<List<Agent>> candidates = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+      for (int i = 0; i < 50; i++) {
+        enemies.add(factory.of(UnitType.Terran_Marine));
+        enemies.add(factory.of(UnitType.Terran_Medic));
+      }
+      for (int i = 0; i < 32; i++) {
+        List<Agent> candidate = new ArrayList<>();
+        for (int j = 0; j <= i % 12; j++) {
+          candidate.add(factory.of(UnitType.Zerg_Mutalisk));
+          candidate.add(factory.of(UnitType.Zerg_Zergling));
+        }
+        candidates.add(candidate);
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class HomogeneousArmiesState {
+
+    Evaluator evaluator = new Evaluator();
+    IncrementalEvaluation evaluation = evaluator.newIncrementalEvaluation();
+    MutableEvaluationResult result = new MutableEvaluationResult();
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+    private Agent hydralisk;
+    private Agent marine;
+    private List<Agent> agentsA = new ArrayList<>();
+    private List<Agent> agentsB = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+      hydralisk = factory.of(UnitType.Zerg_Hydralisk);
+      marine = factory.of(UnitType.Terran_Marine);
+      for (int i = 0; i < 200; i++) {
+        agentsA.add(factory.of(UnitType.Zerg_Hydralisk));
+        agentsB.add(factory.of(UnitType.Terran_Marine));
+      }
+    }
+  }
+
   @Benchmark
   public EvaluationResult _7MutasVs8Hydras(MyState state) {
     return state.evaluator.evaluate(state.agentsA, state.agentsB);
   }
+
+  @Benchmark
+  public MutableEvaluationResult _7MutasVs8Hydras_reusableResult(MyState state) {
+    return state.evaluator.evaluate(state.agentsA, state.agentsB, state.result);
+  }
+
+  @Benchmark
+  public EvalWithAgents optimizeEval_300Vs300(LargeArmiesState state) {
+    return state.evaluator.optimizeEval(state.agentsA, state.agentsB);
+  }
+
+  @Benchmark
+  public EvalWithAgents optimizeEvalByAdding_300Vs300(LargeArmiesState state) {
+    return state.evaluator.optimizeEvalByAdding(state.agentsA, state.agentsB);
+  }
+
+  @Benchmark
+  public double[] evaluateEach_32CandidatesVs100(CandidatesState state) {
+    double[] values = new double[state.candidates.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = state.evaluator.evaluate(state.candidates.get(i), state.enemies).value;
+    }
+    return values;
+  }
+
+  @Benchmark
+  public double[] evaluateMany_32CandidatesVs100(CandidatesState state) {
+    return state.evaluator.evaluateMany(state.enemies, state.candidates);
+  }
+
+  @Benchmark
+  public double[] evaluateManyParallel_32CandidatesVs100(CandidatesState state) {
+    return state.evaluator.evaluateMany(state.enemies, state.candidates, true);
+  }
+
+  @Benchmark
+  public MutableEvaluationResult _200HydrasVs200Marines(HomogeneousArmiesState state) {
+    return state.evaluator.evaluate(state.agentsA, state.agentsB, state.result);
+  }
+
+  @Benchmark
+  public MutableEvaluationResult _200HydrasVs200Marines_byType(HomogeneousArmiesState state) {
+    IncrementalEvaluation evaluation = state.evaluation;
+    evaluation.clear();
+    evaluation.addA(state.hydralisk, 200);
+    evaluation.addB(state.marine, 200);
+    return evaluation.evaluate(state.result);
+  }
 }
@@ -0,0 +1,70 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.bk.ass.sim.Agent;
+import org.bk.ass.sim.AgentUtil;
+import org.bk.ass.sim.IntEvaluation;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.SimulationBatch;
+import org.bk.ass.sim.SimulationBatch.Scenario;
+import org.bk.ass.sim.Simulator.Builder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+public class SimulationBatchBenchmark {
+
+  @State(Scope.Thread)
+  public static class MyState {
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    ForkJoinPool pool;
+    SimulationBatch batch;
+    List<Scenario> scenarios = new ArrayList<>();
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+
+    @Setup
+    public void setup() {
+      pool = new ForkJoinPool(parallelism);
+      batch =
+          new SimulationBatch(
+              pool, () -> new Builder().build(), agent -> agent.getHealth() + agent.getShields());
+
+      // Candidate engagements: different subsets of our army vs the same enemies
+      for (int i = 0; i < 32; i++) {
+        List<Agent> agentsA = new ArrayList<>();
+        List<Agent> agentsB = new ArrayList<>();
+        for (int j = 0; j < 10 + i % 10; j++) {
+          agentsA.add(factory.of(UnitType.Zerg_Mutalisk));
+        }
+        for (int j = 0; j < 15; j++) {
+          agentsB.add(factory.of(UnitType.Zerg_Hydralisk));
+        }
+        AgentUtil.randomizePositions(agentsA, 0, 0, 128, 128);
+        AgentUtil.randomizePositions(agentsB, 128, 0, 256, 128);
+        scenarios.add(new Scenario(agentsA, agentsB, 240));
+      }
+    }
+
+    @TearDown
+    public void tearDown() {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public IntEvaluation[] _32Scenarios(MyState state) {
+    return state.batch.simulate(state.scenarios);
+  }
+}
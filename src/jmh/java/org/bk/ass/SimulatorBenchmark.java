@@ -6,6 +6,7 @@ import org.bk.ass.sim.ApproxAttackBehavior;
 import org.bk.ass.sim.JBWAPIAgentFactory;
 import org.bk.ass.sim.Simulator;
 import org.bk.ass.sim.Simulator.Builder;
+import org.bk.ass.sim.Simulator.StopCondition;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
@@ -24,23 +25,31 @@ public class SimulatorBenchmark {
     Simulator simulator;
     Simulator simulatorFS4;
     Simulator approxSim;
+    Simulator simulatorSoA;
+    Simulator simulatorFS4SoA;
     JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
 
     @Setup(Level.Invocation)
     public void setup() {
       simulator = new Builder().build();
       simulatorFS4 = new Builder().withFrameSkip(4).build();
+      simulatorSoA = new Builder().withStructureOfArrays(true).build();
+      simulatorFS4SoA = new Builder().withFrameSkip(4).withStructureOfArrays(true).build();
       approxSim = new Builder().withFrameSkip(37).withPlayerABehavior(new ApproxAttackBehavior()).withPlayerABehavior(new ApproxAttackBehavior()).build();
 
       for (int i = 0; i < 30; i++) {
         simulator.addAgentA(factory.of(UnitType.Zerg_Mutalisk));
         simulatorFS4.addAgentA(factory.of(UnitType.Zerg_Mutalisk));
         approxSim.addAgentA(factory.of(UnitType.Zerg_Mutalisk));
+        simulatorSoA.addAgentA(factory.of(UnitType.Zerg_Mutalisk));
+        simulatorFS4SoA.addAgentA(factory.of(UnitType.Zerg_Mutalisk));
       }
       for (int i = 0; i < 30; i++) {
         simulator.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
         simulatorFS4.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
         approxSim.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
+        simulatorSoA.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
+        simulatorFS4SoA.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
       }
 
       AgentUtil.randomizePositions(approxSim.getAgentsA(), 0, 0, 32, 32);
@@ -58,6 +67,22 @@ public class SimulatorBenchmark {
     return state.simulatorFS4.simulate(-1);
   }
 
+  @Benchmark
+  public int _30MutasVs30Hydras_soa(MyState state) {
+    return state.simulatorSoA.simulate(-1);
+  }
+
+  @Benchmark
+  public int _30MutasVs30Hydras_fs4_soa(MyState state) {
+    return state.simulatorFS4SoA.simulate(-1);
+  }
+
+  @Benchmark
+  public int _30MutasVs30Hydras_stopWhenSideLostHalf(MyState state) {
+    return state.simulator.simulate(
+        -1, StopCondition.sideLost(0.5, Simulator.HEALTH_AND_HALFED_SHIELD), 4);
+  }
+
   @Benchmark
   public int _30MutasVs30Hydras_approx(MyState state) {
     return state.approxSim.simulate(-1);
@@ -0,0 +1,55 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import org.bk.ass.sim.AgentUtil;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.Simulator;
+import org.bk.ass.sim.Simulator.Builder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+public class SimulatorScalingBenchmark {
+
+  @State(Scope.Thread)
+  public static class MyState {
+    @Param({"10", "50", "100", "250", "500"})
+    int agentsPerSide;
+
+    @Param({"false", "true"})
+    boolean spatialIndex;
+
+    @Param({"false", "true"})
+    boolean parallelStep;
+
+    Simulator simulator;
+    JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+
+    @Setup(Level.Invocation)
+    public void setup() {
+      simulator =
+          new Builder().withSpatialIndex(spatialIndex).withParallelStep(parallelStep).build();
+
+      for (int i = 0; i < agentsPerSide; i++) {
+        simulator.addAgentA(factory.of(UnitType.Terran_Marine));
+        simulator.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
+      }
+      // Keep the density roughly constant, spreading the armies over a larger area
+      int extent = 64 + (int) (Math.sqrt(agentsPerSide) * 64);
+      AgentUtil.randomizePositions(simulator.getAgentsA(), 0, 0, extent, extent);
+      AgentUtil.randomizePositions(simulator.getAgentsB(), extent / 2, 0, extent * 3 / 2, extent);
+    }
+  }
+
+  @Benchmark
+  public int marinesVsHydras(MyState state) {
+    return state.simulator.simulate(60);
+  }
+}
@@ -0,0 +1,99 @@
+package org.bk.ass;
+
+import bwapi.UnitType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.bk.ass.sim.Agent;
+import org.bk.ass.sim.AgentUtil;
+import org.bk.ass.sim.JBWAPIAgentFactory;
+import org.bk.ass.sim.SquadSimulator;
+import org.bk.ass.sim.SquadSimulator.Engagement;
+import org.bk.ass.sim.SquadSimulator.Squad;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Map wide what-if analysis: Every squad of A is evaluated against every squad of B. Includes
+ * aggregating the agents into squads.
+ */
+@Measurement(iterations = 5, time = 5)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SquadSimulatorBenchmark {
+  private static final int AGENTS_PER_SQUAD = 12;
+  private static final UnitType[] UNIT_TYPES = {
+    UnitType.Terran_Marine,
+    UnitType.Terran_Vulture,
+    UnitType.Terran_Goliath,
+    UnitType.Zerg_Zergling,
+    UnitType.Zerg_Hydralisk,
+    UnitType.Zerg_Mutalisk,
+    UnitType.Protoss_Zealot,
+    UnitType.Protoss_Dragoon,
+    UnitType.Protoss_Photon_Cannon
+  };
+
+  @State(Scope.Thread)
+  public static class MyState {
+    @Param({"10", "30"})
+    int squadsPerSide;
+
+    SquadSimulator squadSimulator = new SquadSimulator();
+    List<List<Agent>> agentsA;
+    List<List<Agent>> agentsB;
+
+    @Setup
+    public void setup() {
+      SplittableRandom rnd = new SplittableRandom(4711);
+      JBWAPIAgentFactory factory = new JBWAPIAgentFactory(null);
+      agentsA = squads(factory, rnd, 0);
+      agentsB = squads(factory, rnd, 4000);
+    }
+
+    private List<List<Agent>> squads(JBWAPIAgentFactory factory, SplittableRandom rnd, int y) {
+      List<List<Agent>> squads = new ArrayList<>();
+      for (int i = 0; i < squadsPerSide; i++) {
+        List<Agent> agents = new ArrayList<>();
+        for (int j = 0; j < AGENTS_PER_SQUAD; j++) {
+          agents.add(factory.of(UNIT_TYPES[rnd.nextInt(UNIT_TYPES.length)]));
+        }
+        int x = i * 8000 / squadsPerSide;
+        AgentUtil.randomizePositions(agents, x, y, x + 200, y + 200);
+        squads.add(agents);
+      }
+      return squads;
+    }
+  }
+
+  @Benchmark
+  public List<Engagement> engageAll(MyState state) {
+    return state.squadSimulator.engageAll(squads(state.agentsA), squads(state.agentsB));
+  }
+
+  /** Also simulates the most favorable engagement for 4 seconds. */
+  @Benchmark
+  public Engagement engageAllAndRefineBest(MyState state) {
+    List<Engagement> engagements =
+        state.squadSimulator.engageAll(squads(state.agentsA), squads(state.agentsB));
+    return state.squadSimulator.refine(engagements.get(0), 96);
+  }
+
+  private static List<Squad> squads(List<List<Agent>> agents) {
+    List<Squad> squads = new ArrayList<>(agents.size());
+    for (List<Agent> squadAgents : agents) {
+      squads.add(new Squad(squadAgents));
+    }
+    return squads;
+  }
+}
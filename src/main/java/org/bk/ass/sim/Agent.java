@@ -16,13 +16,14 @@ public class Agent {
         Agent carrier = context.deadUnit;
         context.removeAgents(carrier.interceptors);
       };
+  static final Consumer<UnitDeathContext> NO_DEATH_HANDLER = ignored -> {};
   // Retrieved from OpenBW
-  private static final int STIM_TIMER = 37;
-  private static final int STIM_HEALTH_COST_SHIFTED = 10 << 8;
+  static final int STIM_TIMER = 37;
+  static final int STIM_HEALTH_COST_SHIFTED = 10 << 8;
   private static final int ENSNARE_TIMER = 75;
   private static final int ENSNARE_ENERGY_COST_SHIFTED = 75 << 8;
 
-  private final String name;
+  final String name;
   TargetingPriority attackTargetPriority = TargetingPriority.HIGHEST;
   int armorShifted;
   int shieldUpgrades;
@@ -37,8 +38,8 @@ public class Agent {
   float baseSpeed;
   int speedSquared;
   float speed;
-  private float speedFactor = 1;
-  private boolean scout;
+  float speedFactor = 1;
+  boolean scout;
 
   // Velocity (pixel per frame) for this frame to apply
   int vx;
@@ -104,8 +105,10 @@ public class Agent {
   List<Agent> interceptors = Collections.emptyList();
 
   // Allow replacement of units on death (for example bunker -> marines)
-  Consumer<UnitDeathContext> onDeathHandler = (ignored1) -> {
-  };
+  Consumer<UnitDeathContext> onDeathHandler = NO_DEATH_HANDLER;
+
+  // Context of the simulator this agent is simulated by, null if not simulated
+  SimulationContext context;
 
   public Agent(String name) {
     this.name = name;
@@ -122,6 +125,14 @@ public class Agent {
    */
   public Agent(Agent other) {
     this.name = other.name;
+    copyFrom(other);
+  }
+
+  /**
+   * Copies all state except the name, same as the copy constructor. References to other agents are
+   * cleared.
+   */
+  void copyFrom(Agent other) {
     this.attackTargetPriority = other.attackTargetPriority;
     this.armorShifted = other.armorShifted;
     this.shieldUpgrades = other.shieldUpgrades;
@@ -135,6 +146,7 @@ public class Agent {
     this.baseSpeed = other.baseSpeed;
     this.speedSquared = other.speedSquared;
     this.speed = other.speed;
+    this.speedFactor = other.speedFactor;
     this.scout = other.scout;
     this.vx = other.vx;
     this.vy = other.vy;
@@ -171,8 +183,14 @@ public class Agent {
     this.isMelee = other.isMelee;
     this.airWeapon = other.airWeapon;
     this.groundWeapon = other.groundWeapon;
+    this.seekableTarget = other.seekableTarget;
+    this.groundSeekRangeSquared = other.groundSeekRangeSquared;
     this.onDeathHandler = other.onDeathHandler;
     this.attackCounter = other.attackCounter;
+    this.attackTarget = null;
+    this.restoreTarget = null;
+    this.interceptors = Collections.emptyList();
+    this.context = null;
   }
 
   public Agent setUserObject(Object userObject) {
@@ -325,27 +343,16 @@ public class Agent {
   }
 
   void updateSpeed() {
-    speed = baseSpeed;
-    int mod = 0;
-    if (stimTimer > 0) mod++;
-    if (speedUpgrade) mod++;
-    if (ensnareTimer > 0) mod--;
-    if (mod < 0) speed /= 2f;
-    if (mod > 0) {
-      if (scout) {
-        speed = 6 + 2 / 3f;
-      } else {
-        speed *= 1.5f;
-        float minSpeed = 3 + 1 / 3f;
-        if (speed < minSpeed) {
-          speed = minSpeed;
-        }
-      }
-    }
-    speed *= speedFactor;
+    speed = computeSpeed();
     this.speedSquared = Math.round(speed * speed);
   }
 
+  /** The speed {@link #updateSpeed()} would set, without modifying this agent. */
+  float computeSpeed() {
+    return AgentUtil.speed(
+        baseSpeed, stimTimer > 0, speedUpgrade, ensnareTimer > 0, scout, speedFactor);
+  }
+
   public Agent setHealth(int health) {
     this.healthShifted = health << 8;
     return this;
@@ -0,0 +1,351 @@
+package org.bk.ass.sim;
+
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import org.bk.ass.collection.UnorderedCollection;
+
+/**
+ * Structure-of-arrays storage of the agents of one side of a {@link Simulator}. Only the state
+ * which is modified or read often while simulating is held in primitive arrays. The {@link Agent}
+ * objects are only touched when loading and when writing results back.
+ *
+ * <p>Order and removal semantics are identical to {@link UnorderedCollection}: Removing an agent
+ * moves the last agent into its slot.
+ */
+final class AgentArrays {
+  static final int FLYER = 1;
+  static final int DETECTED = 1 << 1;
+  static final int BURROWED = 1 << 2;
+  static final int BURROWED_ATTACKER = 1 << 3;
+  static final int MELEE = 1 << 4;
+  static final int KITER = 1 << 5;
+  static final int CAN_STIM = 1 << 6;
+  static final int REGENERATES_HEALTH = 1 << 7;
+  static final int PROTECTED_BY_DARK_SWARM = 1 << 8;
+  static final int COOLDOWN_UPGRADE = 1 << 9;
+  static final int SPEED_UPGRADE = 1 << 10;
+  static final int SCOUT = 1 << 11;
+
+  // Bits of targetable: Whether an agent can currently be targeted by ground or air weapons
+  static final int TARGETABLE_BY_GROUND_WEAPON = 1;
+  static final int TARGETABLE_BY_AIR_WEAPON = 1 << 1;
+  static final int TARGETABLE_MASK = TARGETABLE_BY_GROUND_WEAPON | TARGETABLE_BY_AIR_WEAPON;
+  static final int PRIORITY_SHIFT = 2;
+
+  final SimulationContext context;
+  Agent[] agents;
+  int size;
+
+  int[] flags;
+  // Condensed state used for target selection: Targetable bits | priority << PRIORITY_SHIFT
+  int[] targetable;
+  // Bits of the kind of targets this agent's weapons can damage, same bits as in targetable
+  int[] targetMask;
+  int[] x;
+  int[] y;
+  int[] vx;
+  int[] vy;
+  int[] healthShifted;
+  int[] maxHealthShifted;
+  int[] shieldsShifted;
+  int[] maxShieldsShifted;
+  int[] shieldUpgrades;
+  int[] armorShifted;
+  int[] energyShifted;
+  int[] cooldown;
+  int[] sleepTimer;
+  int[] stopFrames;
+  int[] stasisTimer;
+  int[] stimTimer;
+  int[] ensnareTimer;
+  int[] plagueDamagePerFrameShifted;
+  int[] elevationLevel;
+  int[] attackCounter;
+  int[] attackTargetPriority;
+  UnitSize[] unitSize;
+  // Index of the current target in the enemy arrays, -1 if none
+  int[] attackTarget;
+  float[] baseSpeed;
+  float[] speedFactor;
+  float[] speed;
+
+  Weapon[] airWeapon;
+  Weapon[] groundWeapon;
+  int[] airMinRangeSquared;
+  int[] airMaxRangeSquared;
+  int[] airDamageShifted;
+  int[] groundMinRangeSquared;
+  int[] groundMaxRangeSquared;
+  int[] groundDamageShifted;
+
+  AgentArrays(SimulationContext context) {
+    this.context = context;
+    ensureCapacity(16);
+  }
+
+  /** Returns true, if the given agent can be simulated using arrays only. */
+  static boolean isSupported(Agent agent) {
+    return !agent.isHealer
+        && !agent.isRepairer
+        && !agent.isSuicider
+        && agent.onDeathHandler == Agent.NO_DEATH_HANDLER;
+  }
+
+  void load(UnorderedCollection<Agent> source) {
+    int n = source.size();
+    ensureCapacity(n);
+    size = n;
+    for (int i = 0; i < n; i++) {
+      Agent agent = source.get(i);
+      agents[i] = agent;
+      flags[i] =
+          (agent.isFlyer ? FLYER : 0)
+              | (agent.detected ? DETECTED : 0)
+              | (agent.burrowed ? BURROWED : 0)
+              | (agent.burrowedAttacker ? BURROWED_ATTACKER : 0)
+              | (agent.isMelee ? MELEE : 0)
+              | (agent.isKiter ? KITER : 0)
+              | (agent.canStim ? CAN_STIM : 0)
+              | (agent.regeneratesHealth ? REGENERATES_HEALTH : 0)
+              | (agent.protectedByDarkSwarm ? PROTECTED_BY_DARK_SWARM : 0)
+              | (agent.cooldownUpgrade ? COOLDOWN_UPGRADE : 0)
+              | (agent.speedUpgrade ? SPEED_UPGRADE : 0)
+              | (agent.scout ? SCOUT : 0);
+      x[i] = agent.x;
+      y[i] = agent.y;
+      vx[i] = agent.vx;
+      vy[i] = agent.vy;
+      healthShifted[i] = agent.healthShifted;
+      maxHealthShifted[i] = agent.maxHealthShifted;
+      shieldsShifted[i] = agent.shieldsShifted;
+      maxShieldsShifted[i] = agent.maxShieldsShifted;
+      shieldUpgrades[i] = agent.shieldUpgrades;
+      armorShifted[i] = agent.armorShifted;
+      energyShifted[i] = agent.energyShifted;
+      cooldown[i] = agent.cooldown;
+      sleepTimer[i] = agent.sleepTimer;
+      stopFrames[i] = agent.stopFrames;
+      stasisTimer[i] = agent.stasisTimer;
+      stimTimer[i] = agent.stimTimer;
+      ensnareTimer[i] = agent.ensnareTimer;
+      plagueDamagePerFrameShifted[i] = agent.plagueDamagePerFrameShifted;
+      elevationLevel[i] = agent.elevationLevel;
+      attackCounter[i] = agent.attackCounter;
+      attackTargetPriority[i] = agent.attackTargetPriority.ordinal();
+      unitSize[i] = agent.size;
+      attackTarget[i] = -1;
+      baseSpeed[i] = agent.baseSpeed;
+      speedFactor[i] = agent.speedFactor;
+      speed[i] = agent.speed;
+      airWeapon[i] = agent.airWeapon;
+      groundWeapon[i] = agent.groundWeapon;
+      airMinRangeSquared[i] = agent.airWeapon.minRangeSquared;
+      airMaxRangeSquared[i] = agent.airWeapon.maxRangeSquared;
+      airDamageShifted[i] = agent.airWeapon.damageShifted;
+      groundMinRangeSquared[i] = agent.groundWeapon.minRangeSquared;
+      groundMaxRangeSquared[i] = agent.groundWeapon.maxRangeSquared;
+      groundDamageShifted[i] = agent.groundWeapon.damageShifted;
+      targetMask[i] =
+          (groundDamageShifted[i] != 0 ? TARGETABLE_BY_GROUND_WEAPON : 0)
+              | (airDamageShifted[i] != 0 ? TARGETABLE_BY_AIR_WEAPON : 0);
+      updateTargetable(i);
+    }
+  }
+
+  /**
+   * Must be called whenever health, stasis or detection of the agent at the given index changed.
+   */
+  void updateTargetable(int i) {
+    int bits = 0;
+    if (healthShifted[i] > 0 && (flags[i] & DETECTED) != 0 && stasisTimer[i] <= 0) {
+      bits = (flags[i] & FLYER) != 0 ? TARGETABLE_BY_AIR_WEAPON : TARGETABLE_BY_GROUND_WEAPON;
+    }
+    targetable[i] = bits | attackTargetPriority[i] << PRIORITY_SHIFT;
+  }
+
+  /**
+   * Resolves the current attack targets. Must be called after both sides have been loaded with
+   * {@link #load(UnorderedCollection)}.
+   */
+  void resolveTargets(AgentArrays enemies) {
+    for (int i = 0; i < size; i++) {
+      Agent target = agents[i].attackTarget;
+      if (target != null) {
+        for (int j = 0; j < enemies.size; j++) {
+          if (enemies.agents[j] == target) {
+            attackTarget[i] = j;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /** Writes the state at the given index back into the {@link Agent}. */
+  void store(int i, AgentArrays enemies) {
+    Agent agent = agents[i];
+    agent.detected = (flags[i] & DETECTED) != 0;
+    agent.x = x[i];
+    agent.y = y[i];
+    agent.vx = vx[i];
+    agent.vy = vy[i];
+    agent.healthShifted = healthShifted[i];
+    agent.shieldsShifted = shieldsShifted[i];
+    agent.energyShifted = energyShifted[i];
+    agent.cooldown = cooldown[i];
+    agent.sleepTimer = sleepTimer[i];
+    agent.stasisTimer = stasisTimer[i];
+    agent.stimTimer = stimTimer[i];
+    agent.ensnareTimer = ensnareTimer[i];
+    agent.attackCounter = attackCounter[i];
+    agent.speed = speed[i];
+    agent.speedSquared = Math.round(speed[i] * speed[i]);
+    agent.attackTarget = attackTarget[i] >= 0 ? enemies.agents[attackTarget[i]] : null;
+  }
+
+  /**
+   * Removes the agent at the given index by moving the last agent into its place. Target indices
+   * of the enemies are updated accordingly.
+   */
+  Agent removeAt(int i, AgentArrays enemies) {
+    Agent removed = agents[i];
+    int last = --size;
+    for (int j = enemies.size - 1; j >= 0; j--) {
+      int target = enemies.attackTarget[j];
+      if (target == i) {
+        enemies.attackTarget[j] = -1;
+      } else if (target == last) {
+        enemies.attackTarget[j] = i;
+      }
+    }
+    agents[i] = agents[last];
+    agents[last] = null;
+    flags[i] = flags[last];
+    targetable[i] = targetable[last];
+    targetMask[i] = targetMask[last];
+    x[i] = x[last];
+    y[i] = y[last];
+    vx[i] = vx[last];
+    vy[i] = vy[last];
+    healthShifted[i] = healthShifted[last];
+    maxHealthShifted[i] = maxHealthShifted[last];
+    shieldsShifted[i] = shieldsShifted[last];
+    maxShieldsShifted[i] = maxShieldsShifted[last];
+    shieldUpgrades[i] = shieldUpgrades[last];
+    armorShifted[i] = armorShifted[last];
+    energyShifted[i] = energyShifted[last];
+    cooldown[i] = cooldown[last];
+    sleepTimer[i] = sleepTimer[last];
+    stopFrames[i] = stopFrames[last];
+    stasisTimer[i] = stasisTimer[last];
+    stimTimer[i] = stimTimer[last];
+    ensnareTimer[i] = ensnareTimer[last];
+    plagueDamagePerFrameShifted[i] = plagueDamagePerFrameShifted[last];
+    elevationLevel[i] = elevationLevel[last];
+    attackCounter[i] = attackCounter[last];
+    attackTargetPriority[i] = attackTargetPriority[last];
+    unitSize[i] = unitSize[last];
+    attackTarget[i] = attackTarget[last];
+    baseSpeed[i] = baseSpeed[last];
+    speedFactor[i] = speedFactor[last];
+    speed[i] = speed[last];
+    airWeapon[i] = airWeapon[last];
+    groundWeapon[i] = groundWeapon[last];
+    airMinRangeSquared[i] = airMinRangeSquared[last];
+    airMaxRangeSquared[i] = airMaxRangeSquared[last];
+    airDamageShifted[i] = airDamageShifted[last];
+    groundMinRangeSquared[i] = groundMinRangeSquared[last];
+    groundMaxRangeSquared[i] = groundMaxRangeSquared[last];
+    groundDamageShifted[i] = groundDamageShifted[last];
+    return removed;
+  }
+
+  /** Clears all references to agents, so they can be garbage collected. */
+  void clearReferences() {
+    Arrays.fill(agents, null);
+    Arrays.fill(airWeapon, null);
+    Arrays.fill(groundWeapon, null);
+    size = 0;
+  }
+
+  boolean is(int i, int flag) {
+    return (flags[i] & flag) != 0;
+  }
+
+  boolean isStasised(int i) {
+    return stasisTimer[i] > 0;
+  }
+
+  int distanceSquared(int i, AgentArrays other, int j) {
+    int dx = x[i] - other.x[j];
+    int dy = y[i] - other.y[j];
+    return dx * dx + dy * dy;
+  }
+
+  void updateSpeed(int i) {
+    speed[i] = computeSpeed(i);
+  }
+
+  /** The speed {@link #updateSpeed(int)} would set, without modifying the agent. */
+  float computeSpeed(int i) {
+    return AgentUtil.speed(
+        baseSpeed[i],
+        stimTimer[i] > 0,
+        is(i, SPEED_UPGRADE),
+        ensnareTimer[i] > 0,
+        is(i, SCOUT),
+        speedFactor[i]);
+  }
+
+  void stim(int i) {
+    stimTimer[i] = Agent.STIM_TIMER;
+    healthShifted[i] = min(healthShifted[i], maxHealthShifted[i]) - Agent.STIM_HEALTH_COST_SHIFTED;
+    updateTargetable(i);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (agents != null && agents.length >= capacity) {
+      return;
+    }
+    int newCapacity = agents == null ? capacity : Math.max(capacity, agents.length * 7 / 4);
+    agents = new Agent[newCapacity];
+    flags = new int[newCapacity];
+    targetable = new int[newCapacity];
+    targetMask = new int[newCapacity];
+    x = new int[newCapacity];
+    y = new int[newCapacity];
+    vx = new int[newCapacity];
+    vy = new int[newCapacity];
+    healthShifted = new int[newCapacity];
+    maxHealthShifted = new int[newCapacity];
+    shieldsShifted = new int[newCapacity];
+    maxShieldsShifted = new int[newCapacity];
+    shieldUpgrades = new int[newCapacity];
+    armorShifted = new int[newCapacity];
+    energyShifted = new int[newCapacity];
+    cooldown = new int[newCapacity];
+    sleepTimer = new int[newCapacity];
+    stopFrames = new int[newCapacity];
+    stasisTimer = new int[newCapacity];
+    stimTimer = new int[newCapacity];
+    ensnareTimer = new int[newCapacity];
+    plagueDamagePerFrameShifted = new int[newCapacity];
+    elevationLevel = new int[newCapacity];
+    attackCounter = new int[newCapacity];
+    attackTargetPriority = new int[newCapacity];
+    unitSize = new UnitSize[newCapacity];
+    attackTarget = new int[newCapacity];
+    baseSpeed = new float[newCapacity];
+    speedFactor = new float[newCapacity];
+    speed = new float[newCapacity];
+    airWeapon = new Weapon[newCapacity];
+    groundWeapon = new Weapon[newCapacity];
+    airMinRangeSquared = new int[newCapacity];
+    airMaxRangeSquared = new int[newCapacity];
+    airDamageShifted = new int[newCapacity];
+    groundMinRangeSquared = new int[newCapacity];
+    groundMaxRangeSquared = new int[newCapacity];
+    groundDamageShifted = new int[newCapacity];
+  }
+}
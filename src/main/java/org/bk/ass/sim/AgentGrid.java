@@ -0,0 +1,126 @@
+package org.bk.ass.sim;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.Arrays;
+import java.util.function.BiPredicate;
+import org.bk.ass.collection.UnorderedCollection;
+
+/**
+ * Uniform grid (bucket) index over the agents of one side. It is rebuilt by the {@link Simulator}
+ * at the start of every step, while agents don't move. Buckets are linked lists of indices into
+ * the indexed {@link UnorderedCollection}. Only touched buckets are cleared on rebuild.
+ *
+ * <p>Queries search cells in growing rings around an agent and stop as soon as no closer agent
+ * can be found.
+ */
+final class AgentGrid {
+  private static final int CELL_SHIFT = 6;
+  private static final int DIMENSION = 8192 >> CELL_SHIFT;
+  /**
+   * Radius used by behaviors to search for targets nearby. If there are none, they fall back to
+   * looking at all agents.
+   */
+  static final int SEARCH_RADIUS = 1024;
+
+  private final int[] head = new int[DIMENSION * DIMENSION];
+  private int[] next = new int[16];
+  private int[] touched = new int[16];
+  private int touchedCount;
+  private UnorderedCollection<Agent> agents;
+  private int maxRange;
+
+  AgentGrid() {
+    Arrays.fill(head, -1);
+  }
+
+  /** Returns the index of the given collection, or null if there is none. */
+  static AgentGrid of(UnorderedCollection<Agent> agents) {
+    return agents instanceof IndexedAgents ? ((IndexedAgents) agents).grid : null;
+  }
+
+  void rebuild(UnorderedCollection<Agent> agents) {
+    this.agents = agents;
+    for (int i = 0; i < touchedCount; i++) {
+      head[touched[i]] = -1;
+    }
+    touchedCount = 0;
+    maxRange = 0;
+    int size = agents.size();
+    if (next.length < size) {
+      next = new int[size * 7 / 4];
+    }
+    for (int i = 0; i < size; i++) {
+      Agent agent = agents.get(i);
+      int cell = cellOf(agent.y) * DIMENSION + cellOf(agent.x);
+      if (head[cell] < 0) {
+        if (touchedCount == touched.length) {
+          touched = Arrays.copyOf(touched, touchedCount * 7 / 4);
+        }
+        touched[touchedCount++] = cell;
+      }
+      next[i] = head[cell];
+      head[cell] = i;
+      maxRange = max(maxRange, max(agent.groundWeapon.maxRange, agent.airWeapon.maxRange));
+    }
+  }
+
+  /** The maximum weapon range of all indexed agents. */
+  int getMaxRange() {
+    return maxRange;
+  }
+
+  /**
+   * Returns the indexed agent nearest to the given agent, which is accepted by the filter and at
+   * most maxDistance away. Returns null if there is none.
+   */
+  Agent nearest(Agent agent, int maxDistance, BiPredicate<Agent, Agent> filter) {
+    Agent selected = null;
+    long selectedDistanceSquared = (long) maxDistance * maxDistance + 1;
+    int centerX = cellOf(agent.x);
+    int centerY = cellOf(agent.y);
+    int maxRing = (maxDistance >> CELL_SHIFT) + 1;
+    for (int ring = 0; ring <= maxRing; ring++) {
+      // Everything in this ring or further out is at least (ring - 1) cells away
+      long minDistance = (long) (ring - 1) << CELL_SHIFT;
+      if (ring > 1 && minDistance * minDistance >= selectedDistanceSquared) {
+        break;
+      }
+      int minY = max(0, centerY - ring);
+      int maxY = min(DIMENSION - 1, centerY + ring);
+      int minX = max(0, centerX - ring);
+      int maxX = min(DIMENSION - 1, centerX + ring);
+      for (int cy = minY; cy <= maxY; cy++) {
+        boolean edgeRow = cy == centerY - ring || cy == centerY + ring;
+        int step = edgeRow ? 1 : 2 * ring;
+        for (int cx = edgeRow ? minX : centerX - ring; cx <= maxX; cx += step) {
+          if (cx < 0) {
+            continue;
+          }
+          for (int i = head[cy * DIMENSION + cx]; i >= 0; i = next[i]) {
+            Agent candidate = agents.get(i);
+            if (filter.test(agent, candidate)) {
+              int distanceSq = AgentUtil.distanceSquared(agent, candidate);
+              if (distanceSq < selectedDistanceSquared) {
+                selectedDistanceSquared = distanceSq;
+                selected = candidate;
+              }
+            }
+          }
+        }
+      }
+    }
+    return selected;
+  }
+
+  /** Returns the cell coordinate of the given position coordinate, clamped to the map. */
+  private static int cellOf(int position) {
+    return min(DIMENSION - 1, max(0, position >> CELL_SHIFT));
+  }
+
+  /** Agent collection used by the {@link Simulator}, which carries the spatial index, if any. */
+  static final class IndexedAgents extends UnorderedCollection<Agent> {
+    AgentGrid grid;
+  }
+}
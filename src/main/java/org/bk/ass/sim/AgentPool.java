@@ -0,0 +1,45 @@
+package org.bk.ass.sim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agents handed out by an agent factory, by unit type. After {@link #recycle()}, the same instances
+ * are handed out again, reset to the state of the given template. Not thread safe.
+ */
+final class AgentPool<T> {
+  private final Map<T, Slot> slots = new HashMap<>();
+  private final List<Slot> allSlots = new ArrayList<>();
+
+  Agent acquire(T unitType, Agent template) {
+    Slot slot = slots.get(unitType);
+    if (slot == null) {
+      slot = new Slot();
+      slots.put(unitType, slot);
+      allSlots.add(slot);
+    }
+    Agent agent;
+    if (slot.used < slot.agents.size()) {
+      agent = slot.agents.get(slot.used);
+      agent.copyFrom(template);
+    } else {
+      agent = new Agent(template);
+      slot.agents.add(agent);
+    }
+    slot.used++;
+    return agent;
+  }
+
+  void recycle() {
+    for (int i = 0; i < allSlots.size(); i++) {
+      allSlots.get(i).used = 0;
+    }
+  }
+
+  private static final class Slot {
+    final List<Agent> agents = new ArrayList<>();
+    int used;
+  }
+}
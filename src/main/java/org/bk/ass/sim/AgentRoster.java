@@ -0,0 +1,135 @@
+package org.bk.ass.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Keeps agents of a {@link Simulator} across multiple frames, keyed by their user object (ie. the
+ * unit or its id). Instead of resetting the simulator and creating all agents every frame, only
+ * agents of new units need to be created, changed units updated and dead units removed.
+ *
+ * <p>The state of all agents before the last simulation is restored automatically when accessing
+ * or simulating again. So {@link #getOrAddA(Object, Function)} always returns the agent as it was
+ * last updated, not as the simulation left it. The simulator itself must not be reset or modified
+ * directly while used by a roster.
+ *
+ * <p>Usage on each frame:
+ *
+ * <ol>
+ *   <li>Update all changed units: <code>roster.getOrAddA(unit, factory::of).setHealth(...)</code>
+ *   <li>Remove dead units: <code>roster.remove(unit)</code>
+ *   <li>Simulate and evaluate: <code>roster.simulate(96)</code>, <code>
+ *       roster.getSimulator().evalToInt(...)</code>
+ * </ol>
+ */
+public class AgentRoster {
+  private final Simulator simulator;
+  private final SimulatorSnapshot snapshot = new SimulatorSnapshot();
+  private final Map<Object, Agent> agentsA = new HashMap<>();
+  private final Map<Object, Agent> agentsB = new HashMap<>();
+  private boolean simulated;
+
+  /** Creates a roster using the given simulator, which will be reset. */
+  public AgentRoster(Simulator simulator) {
+    this.simulator = Objects.requireNonNull(simulator, "simulator must be set");
+    simulator.reset();
+  }
+
+  /**
+   * Returns the agent of player A with the given key. If there is none, it will be created using
+   * the given factory and added. The key is set as user object of the created agent.
+   */
+  public Agent getOrAddA(Object key, Function<Object, Agent> factory) {
+    restore();
+    Agent agent = agentsA.get(key);
+    if (agent == null) {
+      agent = factory.apply(key).setUserObject(key);
+      agentsA.put(key, agent);
+      simulator.addAgentA(agent);
+    }
+    return agent;
+  }
+
+  /**
+   * Returns the agent of player B with the given key. If there is none, it will be created using
+   * the given factory and added. The key is set as user object of the created agent.
+   */
+  public Agent getOrAddB(Object key, Function<Object, Agent> factory) {
+    restore();
+    Agent agent = agentsB.get(key);
+    if (agent == null) {
+      agent = factory.apply(key).setUserObject(key);
+      agentsB.put(key, agent);
+      simulator.addAgentB(agent);
+    }
+    return agent;
+  }
+
+  /** Returns the agent with the given key or null, if there is none. */
+  public Agent get(Object key) {
+    restore();
+    Agent agent = agentsA.get(key);
+    return agent != null ? agent : agentsB.get(key);
+  }
+
+  /**
+   * Removes the agent with the given key, ie. if the unit died.
+   *
+   * @return true, if an agent was removed
+   */
+  public boolean remove(Object key) {
+    restore();
+    Agent agent = agentsA.remove(key);
+    if (agent != null) {
+      simulator.removeAgentA(agent);
+    } else {
+      agent = agentsB.remove(key);
+      if (agent == null) {
+        return false;
+      }
+      simulator.removeAgentB(agent);
+    }
+    clearReferencesTo(agent, simulator.getAgentsA());
+    clearReferencesTo(agent, simulator.getAgentsB());
+    return true;
+  }
+
+  public int size() {
+    return agentsA.size() + agentsB.size();
+  }
+
+  /**
+   * Simulates all agents, see {@link Simulator#simulate(int)}. The simulator will contain the
+   * result afterwards, until the roster is accessed again.
+   */
+  public int simulate(int frames) {
+    restore();
+    simulator.snapshot(snapshot);
+    simulated = true;
+    return simulator.simulate(frames);
+  }
+
+  public Simulator getSimulator() {
+    return simulator;
+  }
+
+  private void restore() {
+    if (simulated) {
+      simulator.restore(snapshot);
+      simulated = false;
+    }
+  }
+
+  private static void clearReferencesTo(Agent removed, Iterable<Agent> agents) {
+    for (Agent agent : agents) {
+      if (agent.attackTarget == removed) {
+        agent.attackTarget = null;
+      }
+      if (agent.restoreTarget == removed) {
+        agent.restoreTarget = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package org.bk.ass.sim;
+
+/**
+ * Agents by unit type and upgrades, used by agent factories as templates to copy new agents from.
+ * Templates are created on first use. Not thread safe.
+ */
+final class AgentTemplates {
+  /** Returned by {@link #key(int, int, int, int, boolean, boolean, boolean)} for unusual values. */
+  static final int NO_KEY = -1;
+
+  private final Entry[] entries;
+
+  AgentTemplates(int unitTypes) {
+    entries = new Entry[unitTypes];
+  }
+
+  static int key(
+      int groundWeaponUpgrades,
+      int airWeaponUpgrades,
+      int groundWeaponRangeUpgrade,
+      int airWeaponRangeUpgrade,
+      boolean speedUpgrade,
+      boolean energyUpgrade,
+      boolean cooldownUpgrade) {
+    if ((groundWeaponUpgrades
+                | airWeaponUpgrades
+                | groundWeaponRangeUpgrade
+                | airWeaponRangeUpgrade)
+            < 0
+        || groundWeaponUpgrades > 0xF
+        || airWeaponUpgrades > 0xF
+        || groundWeaponRangeUpgrade > 0x3FF
+        || airWeaponRangeUpgrade > 0x3FF) {
+      return NO_KEY;
+    }
+    return groundWeaponUpgrades
+        | airWeaponUpgrades << 4
+        | groundWeaponRangeUpgrade << 8
+        | airWeaponRangeUpgrade << 18
+        | (speedUpgrade ? 1 << 28 : 0)
+        | (energyUpgrade ? 1 << 29 : 0)
+        | (cooldownUpgrade ? 1 << 30 : 0);
+  }
+
+  static int groundWeaponUpgrades(int key) {
+    return key & 0xF;
+  }
+
+  static int airWeaponUpgrades(int key) {
+    return key >>> 4 & 0xF;
+  }
+
+  static int groundWeaponRangeUpgrade(int key) {
+    return key >>> 8 & 0x3FF;
+  }
+
+  static int airWeaponRangeUpgrade(int key) {
+    return key >>> 18 & 0x3FF;
+  }
+
+  static boolean speedUpgrade(int key) {
+    return (key & 1 << 28) != 0;
+  }
+
+  static boolean energyUpgrade(int key) {
+    return (key & 1 << 29) != 0;
+  }
+
+  static boolean cooldownUpgrade(int key) {
+    return (key & 1 << 30) != 0;
+  }
+
+  /** Returns the template or null, if there is none yet. */
+  Agent get(int unitType, int key) {
+    for (Entry entry = entries[unitType]; entry != null; entry = entry.next) {
+      if (entry.key == key) {
+        return entry.template;
+      }
+    }
+    return null;
+  }
+
+  void put(int unitType, int key, Agent template) {
+    entries[unitType] = new Entry(key, template, entries[unitType]);
+  }
+
+  private static final class Entry {
+    final int key;
+    final Agent template;
+    final Entry next;
+
+    Entry(int key, Agent template, Entry next) {
+      this.key = key;
+      this.template = template;
+      this.next = next;
+    }
+  }
+}
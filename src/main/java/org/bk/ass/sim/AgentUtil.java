@@ -9,6 +9,7 @@ import java.util.Collection;
 import java.util.SplittableRandom;
 
 public class AgentUtil {
+  // Used by agents which are not simulated by a Simulator
   private static final SplittableRandom rnd = new SplittableRandom();
 
   // Retrieved from OpenBW
@@ -21,7 +22,10 @@ public class AgentUtil {
   }
 
   public static void moveToward(int frames, Agent agent, Agent target, float distance) {
-    agent.updateSpeed();
+    // Parallel steps update the speed of all agents before any decides, see Simulator
+    if (!defersDamage(agent.context)) {
+      agent.updateSpeed();
+    }
     float travelled = frames * agent.speed;
     if (distance <= travelled) {
       agent.vx = target.x - agent.x;
@@ -33,10 +37,13 @@ public class AgentUtil {
   }
 
   public static void moveAwayFrom(int frames, Agent agent, Agent target, float distance) {
-    agent.updateSpeed();
+    // Parallel steps update the speed of all agents before any decides, see Simulator
+    if (!defersDamage(agent.context)) {
+      agent.updateSpeed();
+    }
     float travelled = frames * agent.speed;
     if (distance == 0) {
-      double a = rnd.nextDouble(Math.PI * 2);
+      double a = (agent.context != null ? agent.context.rnd : rnd).nextDouble(Math.PI * 2);
       agent.vx = (int) (cos(a) * travelled);
       agent.vy = (int) (sin(a) * travelled);
     } else {
@@ -45,6 +52,35 @@ public class AgentUtil {
     }
   }
 
+  static void moveToward(int frames, AgentArrays agents, int i, AgentArrays targets, int t, float distance) {
+    agents.updateSpeed(i);
+    float travelled = frames * agents.speed[i];
+    if (distance <= travelled) {
+      agents.vx[i] = targets.x[t] - agents.x[i];
+      agents.vy[i] = targets.y[t] - agents.y[i];
+    } else {
+      agents.vx[i] = (int) ((targets.x[t] - agents.x[i]) * travelled / distance);
+      agents.vy[i] = (int) ((targets.y[t] - agents.y[i]) * travelled / distance);
+    }
+  }
+
+  static void moveAwayFrom(int frames, AgentArrays agents, int i, AgentArrays targets, int t, float distance) {
+    agents.updateSpeed(i);
+    float travelled = frames * agents.speed[i];
+    if (distance == 0) {
+      double a = agents.context.rnd.nextDouble(Math.PI * 2);
+      agents.vx[i] = (int) (cos(a) * travelled);
+      agents.vy[i] = (int) (sin(a) * travelled);
+    } else {
+      agents.vx[i] = (int) ((agents.x[i] - targets.x[t]) * travelled / distance);
+      agents.vy[i] = (int) ((agents.y[i] - targets.y[t]) * travelled / distance);
+    }
+  }
+
+  private static boolean defersDamage(SimulationContext context) {
+    return context != null && context.deferredDamage != null;
+  }
+
   public static int distanceSquared(Agent a, Agent b) {
     return (a.x - b.x) * (a.x - b.x) + (a.y - b.y) * (a.y - b.y);
   }
@@ -56,16 +92,113 @@ public class AgentUtil {
       // https://liquipedia.net/starcraft/Dark_Swarm
       if (target.protectedByDarkSwarm) return;
 
-      // http://www.starcraftai.com/wiki/Chance_to_Hit
-      if ((agent.elevationLevel >= 0 && agent.elevationLevel < target.elevationLevel)
-          || (target.elevationLevel & 1) == 1) {
-        remainingDamage = remainingDamage * 136 / 256;
+      remainingDamage =
+          applyHitChance(
+              agent.context,
+              remainingDamage,
+              isUphill(agent.elevationLevel, target.elevationLevel));
+      if (remainingDamage < 0) {
+        agent.attackCounter++;
+        return;
       }
-      remainingDamage = remainingDamage * 255 / 256;
     }
 
     agent.attackCounter++;
-    applyDamage(target, wpn.damageType, remainingDamage, wpn.hits);
+    applyDamage(agent.context, target, wpn.damageType, remainingDamage, wpn.hits);
+  }
+
+  static void dealDamage(AgentArrays agents, int i, Weapon wpn, AgentArrays targets, int t) {
+    int remainingDamage = wpn.damageShifted;
+
+    if (!agents.is(i, AgentArrays.MELEE)) {
+      if (targets.is(t, AgentArrays.PROTECTED_BY_DARK_SWARM)) return;
+
+      remainingDamage =
+          applyHitChance(
+              agents.context,
+              remainingDamage,
+              isUphill(agents.elevationLevel[i], targets.elevationLevel[t]));
+      if (remainingDamage < 0) {
+        agents.attackCounter[i]++;
+        return;
+      }
+    }
+
+    agents.attackCounter[i]++;
+    applyDamage(targets, t, wpn.damageType, remainingDamage, wpn.hits);
+  }
+
+  // http://www.starcraftai.com/wiki/Chance_to_Hit
+  private static boolean isUphill(int elevationLevel, int targetElevationLevel) {
+    return (elevationLevel >= 0 && elevationLevel < targetElevationLevel)
+        || (targetElevationLevel & 1) == 1;
+  }
+
+  /**
+   * Returns the damage reduced by the chance to hit. If the context rolls hits, either returns the
+   * full damage or -1 for a miss instead.
+   */
+  private static int applyHitChance(
+      SimulationContext context, int damageShifted, boolean uphill) {
+    if (context != null && context.rollHits) {
+      int hitChance = uphill ? 136 * 255 : 256 * 255;
+      return context.rnd.nextInt(256 * 256) < hitChance ? damageShifted : -1;
+    }
+    if (uphill) {
+      damageShifted = damageShifted * 136 / 256;
+    }
+    return damageShifted * 255 / 256;
+  }
+
+  static void applyDamage(AgentArrays targets, int t, DamageType damageType, int damage, int hits) {
+    int shields =
+        min(targets.maxShieldsShifted[t], targets.shieldsShifted[t])
+            - damage
+            + targets.shieldUpgrades[t];
+    if (shields > 0) {
+      targets.shieldsShifted[t] = shields;
+      return;
+    } else if (shields < 0) {
+      damage = -shields;
+      targets.shieldsShifted[t] = 0;
+    }
+
+    if (damage == 0) {
+      return;
+    }
+
+    targets.healthShifted[t] =
+        min(targets.healthShifted[t], targets.maxHealthShifted[t])
+            - healthDamage(targets.unitSize[t], targets.armorShifted[t], damageType, damage, hits);
+    if (targets.healthShifted[t] <= 0) {
+      targets.updateTargetable(t);
+    }
+  }
+
+  /**
+   * Applies the damage to the target, or records it if the given context defers damage (see {@link
+   * Simulator.Builder#withParallelStep(boolean)}).
+   */
+  static void applyDamage(
+      SimulationContext context, Agent target, DamageType damageType, int damage, int hits) {
+    if (defersDamage(context)) {
+      context.deferredDamage.add(target, damageType, damage, hits);
+      return;
+    }
+    applyDamage(target, damageType, damage, hits);
+  }
+
+  /**
+   * Stims the agent. If its context defers damage, the health cost is recorded as well, as other
+   * agents might look at the health of this agent while deciding.
+   */
+  static void stim(Agent agent) {
+    if (defersDamage(agent.context)) {
+      agent.stimTimer = Agent.STIM_TIMER;
+      agent.context.deferredDamage.addHealthCost(agent, Agent.STIM_HEALTH_COST_SHIFTED);
+      return;
+    }
+    agent.stim();
   }
 
   public static void applyDamage(Agent target, DamageType damageType, int damage, int hits) {
@@ -81,31 +214,84 @@ public class AgentUtil {
     if (damage == 0) {
       return;
     }
-    damage =
-        reduceDamageByTargetSizeAndDamageType(
-            target, damageType, damage - target.armorShifted * hits);
 
-    target.consumeHealth(max(128, damage));
+    target.consumeHealth(healthDamage(target.size, target.armorShifted, damageType, damage, hits));
+  }
+
+  /** Damage dealt to the health of a target, after armor and size modifiers. At least 0.5. */
+  private static int healthDamage(
+      UnitSize size, int armorShifted, DamageType damageType, int damage, int hits) {
+    return max(
+        128, reduceDamageBySizeAndDamageType(size, damageType, damage - armorShifted * hits));
   }
 
   public static int reduceDamageByTargetSizeAndDamageType(
       Agent target, DamageType damageType, int damageShifted) {
+    return reduceDamageBySizeAndDamageType(target.size, damageType, damageShifted);
+  }
+
+  static int reduceDamageBySizeAndDamageType(
+      UnitSize size, DamageType damageType, int damageShifted) {
     if (damageType == DamageType.CONCUSSIVE) {
-      if (target.size == UnitSize.MEDIUM) {
+      if (size == UnitSize.MEDIUM) {
         damageShifted /= 2;
-      } else if (target.size == UnitSize.LARGE) {
+      } else if (size == UnitSize.LARGE) {
         damageShifted /= 4;
       }
     } else if (damageType == DamageType.EXPLOSIVE) {
-      if (target.size == UnitSize.SMALL) {
+      if (size == UnitSize.SMALL) {
         damageShifted /= 2;
-      } else if (target.size == UnitSize.MEDIUM) {
+      } else if (size == UnitSize.MEDIUM) {
         damageShifted /= 4;
       }
     }
     return damageShifted;
   }
 
+  /** Speed after stim, speed upgrade and ensnare modifiers. */
+  static float speed(
+      float baseSpeed,
+      boolean stimmed,
+      boolean speedUpgrade,
+      boolean ensnared,
+      boolean scout,
+      float speedFactor) {
+    float speed = baseSpeed;
+    int mod = 0;
+    if (stimmed) mod++;
+    if (speedUpgrade) mod++;
+    if (ensnared) mod--;
+    if (mod < 0) speed /= 2f;
+    if (mod > 0) {
+      if (scout) {
+        speed = 6 + 2 / 3f;
+      } else {
+        speed *= 1.5f;
+        float minSpeed = 3 + 1 / 3f;
+        if (speed < minSpeed) {
+          speed = minSpeed;
+        }
+      }
+    }
+    return speed * speedFactor;
+  }
+
+  /** Weapon cooldown after stim, cooldown upgrade and ensnare modifiers. */
+  static int cooldown(
+      int weaponCooldown, boolean stimmed, boolean cooldownUpgrade, boolean ensnared) {
+    int mod = 0;
+    if (stimmed) mod++;
+    if (cooldownUpgrade) mod++;
+    if (ensnared) mod--;
+    if (mod < 0) {
+      return max(5, weaponCooldown * 5 / 4);
+    }
+    if (mod > 0) {
+      return weaponCooldown / 2;
+    }
+    return weaponCooldown;
+  }
+
   /**
    * Sets random positions for the given agents within the given rectangle.
    * The positions are <em>stable</em>: Calling this with the same arguments twice will not change any position
@@ -1,7 +1,6 @@
 package org.bk.ass.sim;
 
 import static java.lang.Math.abs;
-import static java.lang.Math.max;
 import static java.lang.Math.sqrt;
 import static org.bk.ass.sim.AgentUtil.applyDamage;
 import static org.bk.ass.sim.AgentUtil.dealDamage;
@@ -14,6 +13,7 @@ import org.bk.ass.collection.UnorderedCollection;
 import org.bk.ass.sim.Simulator.Behavior;
 
 public class AttackerBehavior implements Behavior {
+  private static final int HIGHEST_PRIORITY = Agent.TargetingPriority.HIGHEST.ordinal();
 
   @Override
   public boolean simUnit(
@@ -34,6 +34,18 @@ public class AttackerBehavior implements Behavior {
       }
     }
 
+    if (selectedEnemy == null) {
+      AgentGrid grid = AgentGrid.of(enemies);
+      if (grid != null) {
+        selectedEnemy =
+            grid.nearest(agent, AgentGrid.SEARCH_RADIUS, AttackerBehavior::isPreferredTarget);
+        if (selectedEnemy != null) {
+          selectedWeapon = agent.weaponVs(selectedEnemy);
+          selectedDistanceSquared = distanceSquared(agent, selectedEnemy);
+        }
+      }
+    }
+
     if (selectedEnemy == null) {
       for (int i = enemies.size() - 1; i >= 0; i--) {
         Agent enemy = enemies.get(i);
@@ -85,6 +97,16 @@ public class AttackerBehavior implements Behavior {
     return true;
   }
 
+  private static boolean isPreferredTarget(Agent agent, Agent enemy) {
+    Weapon wpn = agent.weaponVs(enemy);
+    return enemy.healthShifted > 0
+        && wpn.damageShifted != 0
+        && enemy.detected
+        && !enemy.isStasised()
+        && enemy.attackTargetPriority == Agent.TargetingPriority.HIGHEST
+        && distanceSquared(agent, enemy) >= wpn.minRangeSquared;
+  }
+
   private void simAttack(
       Agent agent,
       UnorderedCollection<Agent> allies,
@@ -94,7 +116,7 @@ public class AttackerBehavior implements Behavior {
     if (agent.canStim
         && agent.stimTimer <= 0
         && agent.healthShifted >= agent.maxHealthShifted / 2) {
-      agent.stim();
+      AgentUtil.stim(agent);
     }
 
     attack(agent, selectedWeapon, selectedEnemy, allies, enemies);
@@ -110,31 +132,23 @@ public class AttackerBehavior implements Behavior {
     dealDamage(agent, weapon, selectedEnemy);
     switch (weapon.splashType) {
       case BOUNCE:
-        dealBounceDamage(weapon, selectedEnemy, enemies);
+        dealBounceDamage(agent.context, weapon, selectedEnemy, enemies);
         break;
       case RADIAL_SPLASH:
-        dealRadialSplashDamage(weapon, selectedEnemy, allies, enemies);
+        dealRadialSplashDamage(agent.context, weapon, selectedEnemy, allies, enemies);
         break;
       case RADIAL_ENEMY_SPLASH:
-        dealRadialSplashDamage(weapon, selectedEnemy, enemies);
+        dealRadialSplashDamage(agent.context, weapon, selectedEnemy, enemies);
         break;
       case LINE_SPLASH:
-        dealLineSplashDamage(agent, weapon, selectedEnemy, enemies);
+        dealLineSplashDamage(agent.context, agent, weapon, selectedEnemy, enemies);
         break;
       default:
         // No splash
     }
-    agent.cooldown = weapon.cooldown;
-    int mod = 0;
-    if (agent.stimTimer > 0) mod++;
-    if (agent.cooldownUpgrade) mod++;
-    if (agent.ensnareTimer > 0) mod--;
-    if (mod < 0) {
-      agent.cooldown = max(5, agent.cooldown * 5 / 4);
-    }
-    if (mod > 0) {
-      agent.cooldown /= 2;
-    }
+    agent.cooldown =
+        AgentUtil.cooldown(
+            weapon.cooldown, agent.stimTimer > 0, agent.cooldownUpgrade, agent.ensnareTimer > 0);
   }
 
   /** Deal splash damage to enemies and allies */
@@ -143,29 +157,41 @@ public class AttackerBehavior implements Behavior {
       Agent mainTarget,
       UnorderedCollection<Agent> allies,
       UnorderedCollection<Agent> enemies) {
+    dealRadialSplashDamage(null, weapon, mainTarget, allies, enemies);
+  }
+
+  static void dealRadialSplashDamage(
+      SimulationContext context,
+      Weapon weapon,
+      Agent mainTarget,
+      UnorderedCollection<Agent> allies,
+      UnorderedCollection<Agent> enemies) {
     for (int i = allies.size() - 1; i >= 0; i--) {
       Agent ally = allies.get(i);
-      applySplashDamage(weapon, mainTarget, ally);
+      applySplashDamage(context, weapon, mainTarget, ally);
     }
     for (int i = enemies.size() - 1; i >= 0; i--) {
       Agent enemy = enemies.get(i);
-      applySplashDamage(weapon, mainTarget, enemy);
+      applySplashDamage(context, weapon, mainTarget, enemy);
     }
   }
 
-  private static void applySplashDamage(Weapon weapon, Agent mainTarget, Agent splashTarget) {
+  private static void applySplashDamage(
+      SimulationContext context, Weapon weapon, Agent mainTarget, Agent splashTarget) {
     if (splashTarget == mainTarget || splashTarget.isFlyer != mainTarget.isFlyer) {
       return;
     }
 
     int distanceSquared = distanceSquared(splashTarget, mainTarget);
     if (distanceSquared <= weapon.innerSplashRadiusSquared) {
-      applyDamage(splashTarget, weapon.damageType, weapon.damageShifted, weapon.hits);
+      applyDamage(context, splashTarget, weapon.damageType, weapon.damageShifted, weapon.hits);
     } else if (!splashTarget.burrowed) {
       if (distanceSquared <= weapon.medianSplashRadiusSquared) {
-        applyDamage(splashTarget, weapon.damageType, weapon.damageShifted / 2, weapon.hits);
+        applyDamage(
+            context, splashTarget, weapon.damageType, weapon.damageShifted / 2, weapon.hits);
       } else if (distanceSquared <= weapon.outerSplashRadiusSquared) {
-        applyDamage(splashTarget, weapon.damageType, weapon.damageShifted / 4, weapon.hits);
+        applyDamage(
+            context, splashTarget, weapon.damageType, weapon.damageShifted / 4, weapon.hits);
       }
     }
   }
@@ -173,14 +199,31 @@ public class AttackerBehavior implements Behavior {
   /** Deal splash damage to enemies only */
   public static void dealRadialSplashDamage(
       Weapon weapon, Agent mainTarget, UnorderedCollection<Agent> enemies) {
+    dealRadialSplashDamage(null, weapon, mainTarget, enemies);
+  }
+
+  static void dealRadialSplashDamage(
+      SimulationContext context,
+      Weapon weapon,
+      Agent mainTarget,
+      UnorderedCollection<Agent> enemies) {
     for (int i = enemies.size() - 1; i >= 0; i--) {
       Agent enemy = enemies.get(i);
-      applySplashDamage(weapon, mainTarget, enemy);
+      applySplashDamage(context, weapon, mainTarget, enemy);
     }
   }
 
   public static void dealLineSplashDamage(
       Agent source, Weapon weapon, Agent mainTarget, UnorderedCollection<Agent> enemies) {
+    dealLineSplashDamage(null, source, weapon, mainTarget, enemies);
+  }
+
+  static void dealLineSplashDamage(
+      SimulationContext context,
+      Agent source,
+      Weapon weapon,
+      Agent mainTarget,
+      UnorderedCollection<Agent> enemies) {
     int dx = mainTarget.x - source.x;
     int dy = mainTarget.y - source.y;
     // Same spot, chose "random" direction
@@ -205,7 +248,7 @@ public class AttackerBehavior implements Behavior {
           int projdy = source.y + dot * dy / dxDistSq - enemy.y;
           int projDistSq = projdx * projdx + projdy * projdy;
           if (projDistSq <= weapon.innerSplashRadiusSquared) {
-            applyDamage(enemy, weapon.damageType, weapon.damageShifted, weapon.hits);
+            applyDamage(context, enemy, weapon.damageType, weapon.damageShifted, weapon.hits);
           }
         }
       }
@@ -214,6 +257,14 @@ public class AttackerBehavior implements Behavior {
 
   public static void dealBounceDamage(
       Weapon weapon, Agent lastTarget, UnorderedCollection<Agent> enemies) {
+    dealBounceDamage(null, weapon, lastTarget, enemies);
+  }
+
+  static void dealBounceDamage(
+      SimulationContext context,
+      Weapon weapon,
+      Agent lastTarget,
+      UnorderedCollection<Agent> enemies) {
     int remainingBounces = 2;
     int damage = weapon.damageShifted / 3;
     for (int i = enemies.size() - 1; i >= 0 && remainingBounces > 0; i--) {
@@ -223,13 +274,235 @@ public class AttackerBehavior implements Behavior {
           && abs(enemy.x - lastTarget.x) <= 96
           && abs(enemy.y - lastTarget.y) <= 96) {
         lastTarget = enemy;
-        applyDamage(enemy, weapon.damageType, damage, weapon.hits);
+        applyDamage(context, enemy, weapon.damageType, damage, weapon.hits);
         damage /= 3;
         remainingBounces--;
       }
     }
   }
 
+  /**
+   * Structure-of-arrays variant of {@link #simUnit(int, Agent, UnorderedCollection,
+   * UnorderedCollection)}, used by the {@link Simulator} if all agents are plain attackers.
+   */
+  static boolean simUnit(int frameSkip, AgentArrays allies, int i, AgentArrays enemies) {
+    int selectedEnemy = -1;
+    boolean selectedAir = false;
+    int selectedDistanceSquared = Integer.MAX_VALUE;
+
+    int attackTarget = allies.attackTarget[i];
+    if (attackTarget >= 0 && enemies.healthShifted[attackTarget] > 0) {
+      int dstSq = allies.distanceSquared(i, enemies, attackTarget);
+      boolean air = enemies.is(attackTarget, AgentArrays.FLYER);
+      if (dstSq >= minRangeSquared(allies, i, air) && dstSq <= maxRangeSquared(allies, i, air)) {
+        selectedEnemy = attackTarget;
+        selectedAir = air;
+        selectedDistanceSquared = dstSq;
+      }
+    }
+
+    if (selectedEnemy < 0) {
+      int ax = allies.x[i];
+      int ay = allies.y[i];
+      int targetMask = allies.targetMask[i];
+      int airMinRangeSquared = allies.airMinRangeSquared[i];
+      int groundMinRangeSquared = allies.groundMinRangeSquared[i];
+      int airMaxRangeSquared = allies.airMaxRangeSquared[i];
+      int groundMaxRangeSquared = allies.groundMaxRangeSquared[i];
+      int[] enemyTargetable = enemies.targetable;
+      int[] enemyX = enemies.x;
+      int[] enemyY = enemies.y;
+      int selectedPriority = -1;
+      for (int j = enemies.size - 1; j >= 0; j--) {
+        int targetable = enemyTargetable[j];
+        int priority = targetable >>> AgentArrays.PRIORITY_SHIFT;
+        if ((targetable & targetMask) != 0 && priority >= selectedPriority) {
+          boolean air = (targetable & AgentArrays.TARGETABLE_BY_AIR_WEAPON) != 0;
+          int dx = ax - enemyX[j];
+          int dy = ay - enemyY[j];
+          int distanceSq = dx * dx + dy * dy;
+          if (distanceSq >= (air ? airMinRangeSquared : groundMinRangeSquared)
+              && (distanceSq < selectedDistanceSquared || priority > selectedPriority)) {
+            selectedDistanceSquared = distanceSq;
+            selectedEnemy = j;
+            selectedAir = air;
+            selectedPriority = priority;
+
+            // If we can hit it this frame, we're done searching
+            if (selectedDistanceSquared <= (air ? airMaxRangeSquared : groundMaxRangeSquared)
+                && priority == HIGHEST_PRIORITY) {
+              break;
+            }
+          }
+        }
+      }
+    }
+    allies.attackTarget[i] = selectedEnemy;
+
+    boolean burrowed = allies.is(i, AgentArrays.BURROWED);
+    if (selectedEnemy < 0) {
+      return !burrowed && RetreatBehavior.simFlee(frameSkip, allies, i, enemies);
+    }
+
+    Weapon selectedWeapon = selectedAir ? allies.airWeapon[i] : allies.groundWeapon[i];
+    if (!burrowed) {
+      simCombatMove(
+          frameSkip, allies, i, enemies, selectedEnemy, selectedDistanceSquared, selectedWeapon);
+    }
+
+    if (allies.is(i, AgentArrays.BURROWED_ATTACKER) != burrowed) {
+      return false;
+    }
+
+    if (allies.cooldown[i] <= 0 && selectedDistanceSquared <= selectedWeapon.maxRangeSquared) {
+      if (allies.is(i, AgentArrays.CAN_STIM)
+          && allies.stimTimer[i] <= 0
+          && allies.healthShifted[i] >= allies.maxHealthShifted[i] / 2) {
+        allies.stim(i);
+      }
+      attack(allies, i, selectedWeapon, enemies, selectedEnemy);
+    }
+
+    return true;
+  }
+
+  private static int minRangeSquared(AgentArrays agents, int i, boolean air) {
+    return air ? agents.airMinRangeSquared[i] : agents.groundMinRangeSquared[i];
+  }
+
+  private static int maxRangeSquared(AgentArrays agents, int i, boolean air) {
+    return air ? agents.airMaxRangeSquared[i] : agents.groundMaxRangeSquared[i];
+  }
+
+  private static void attack(
+      AgentArrays allies, int i, Weapon weapon, AgentArrays enemies, int selectedEnemy) {
+    allies.sleepTimer[i] = allies.stopFrames[i];
+    AgentUtil.dealDamage(allies, i, weapon, enemies, selectedEnemy);
+    switch (weapon.splashType) {
+      case BOUNCE:
+        dealBounceDamage(weapon, enemies, selectedEnemy);
+        break;
+      case RADIAL_SPLASH:
+        dealRadialSplashDamage(weapon, enemies, selectedEnemy, allies);
+        dealRadialSplashDamage(weapon, enemies, selectedEnemy, enemies);
+        break;
+      case RADIAL_ENEMY_SPLASH:
+        dealRadialSplashDamage(weapon, enemies, selectedEnemy, enemies);
+        break;
+      case LINE_SPLASH:
+        dealLineSplashDamage(allies, i, weapon, enemies, selectedEnemy);
+        break;
+      default:
+        // No splash
+    }
+    allies.cooldown[i] =
+        AgentUtil.cooldown(
+            weapon.cooldown,
+            allies.stimTimer[i] > 0,
+            allies.is(i, AgentArrays.COOLDOWN_UPGRADE),
+            allies.ensnareTimer[i] > 0);
+  }
+
+  private static void dealRadialSplashDamage(
+      Weapon weapon, AgentArrays mainTargets, int mainTarget, AgentArrays splashTargets) {
+    boolean mainTargetIsFlyer = mainTargets.is(mainTarget, AgentArrays.FLYER);
+    for (int j = splashTargets.size - 1; j >= 0; j--) {
+      if (splashTargets == mainTargets && j == mainTarget
+          || splashTargets.is(j, AgentArrays.FLYER) != mainTargetIsFlyer) {
+        continue;
+      }
+      int distanceSquared = splashTargets.distanceSquared(j, mainTargets, mainTarget);
+      if (distanceSquared <= weapon.innerSplashRadiusSquared) {
+        AgentUtil.applyDamage(
+            splashTargets, j, weapon.damageType, weapon.damageShifted, weapon.hits);
+      } else if (!splashTargets.is(j, AgentArrays.BURROWED)) {
+        if (distanceSquared <= weapon.medianSplashRadiusSquared) {
+          AgentUtil.applyDamage(
+              splashTargets, j, weapon.damageType, weapon.damageShifted / 2, weapon.hits);
+        } else if (distanceSquared <= weapon.outerSplashRadiusSquared) {
+          AgentUtil.applyDamage(
+              splashTargets, j, weapon.damageType, weapon.damageShifted / 4, weapon.hits);
+        }
+      }
+    }
+  }
+
+  private static void dealLineSplashDamage(
+      AgentArrays sources, int source, Weapon weapon, AgentArrays enemies, int mainTarget) {
+    int sx = sources.x[source];
+    int sy = sources.y[source];
+    int dx = enemies.x[mainTarget] - sx;
+    int dy = enemies.y[mainTarget] - sy;
+    // Same spot, chose "random" direction
+    if (dx == 0 && dy == 0) {
+      dx = 1;
+    }
+    int dxDistSq = dx * dx + dy * dy;
+    int rangeWithSplashSquared =
+        weapon.maxRangeSquared
+            + 2 * weapon.maxRange * weapon.innerSplashRadius
+            + weapon.innerSplashRadiusSquared;
+    boolean mainTargetIsFlyer = enemies.is(mainTarget, AgentArrays.FLYER);
+    for (int j = enemies.size - 1; j >= 0; j--) {
+      if (j == mainTarget || enemies.is(j, AgentArrays.FLYER) != mainTargetIsFlyer) {
+        continue;
+      }
+      int enemyDistSq = enemies.distanceSquared(j, sources, source);
+      if (enemyDistSq <= rangeWithSplashSquared) {
+        int dot = (enemies.x[j] - sx) * dx + (enemies.y[j] - sy) * dy;
+        if (dot >= 0) {
+          int projdx = sx + dot * dx / dxDistSq - enemies.x[j];
+          int projdy = sy + dot * dy / dxDistSq - enemies.y[j];
+          int projDistSq = projdx * projdx + projdy * projdy;
+          if (projDistSq <= weapon.innerSplashRadiusSquared) {
+            AgentUtil.applyDamage(
+                enemies, j, weapon.damageType, weapon.damageShifted, weapon.hits);
+          }
+        }
+      }
+    }
+  }
+
+  private static void dealBounceDamage(Weapon weapon, AgentArrays enemies, int lastTarget) {
+    int remainingBounces = 2;
+    int damage = weapon.damageShifted / 3;
+    for (int j = enemies.size - 1; j >= 0 && remainingBounces > 0; j--) {
+      if (j != lastTarget
+          && enemies.healthShifted[j] > 0
+          && abs(enemies.x[j] - enemies.x[lastTarget]) <= 96
+          && abs(enemies.y[j] - enemies.y[lastTarget]) <= 96) {
+        lastTarget = j;
+        AgentUtil.applyDamage(enemies, j, weapon.damageType, damage, weapon.hits);
+        damage /= 3;
+        remainingBounces--;
+      }
+    }
+  }
+
+  private static void simCombatMove(
+      int frameSkip,
+      AgentArrays agents,
+      int i,
+      AgentArrays enemies,
+      int selectedEnemy,
+      int selectedDistanceSquared,
+      Weapon selectedWeapon) {
+    boolean shouldKite =
+        agents.is(i, AgentArrays.KITER)
+            && agents.cooldown[i] > 0
+            && minRangeSquared(enemies, selectedEnemy, agents.is(i, AgentArrays.FLYER))
+                <= selectedDistanceSquared
+            && enemies.speed[selectedEnemy] < agents.speed[i];
+    float distance = (float) sqrt(selectedDistanceSquared);
+    if (shouldKite) {
+      if (distance + agents.speed[i] * frameSkip <= selectedWeapon.maxRange) {
+        AgentUtil.moveAwayFrom(frameSkip, agents, i, enemies, selectedEnemy, distance);
+      }
+    } else {
+      AgentUtil.moveToward(frameSkip, agents, i, enemies, selectedEnemy, distance);
+    }
+  }
+
   private void simCombatMove(
       int frameSkip,
       Agent agent,
@@ -43,9 +43,21 @@ public class BWAPI4JAgentFactory {
       };
 
   private final BWMap map;
+  private final AgentPool<UnitType> agentPool;
+  private final WeaponCache weaponCache = new WeaponCache();
+  private final AgentTemplates templates = new AgentTemplates(UnitType.values().length);
 
   public BWAPI4JAgentFactory(BWMap map) {
+    this(map, false);
+  }
+
+  /**
+   * @param pooled if true, agents are reused after {@link #recycleAgents()} is called. Weapons of
+   *     agents are always shared between agents with equal unit type and upgrades.
+   */
+  public BWAPI4JAgentFactory(BWMap map, boolean pooled) {
     this.map = map;
+    this.agentPool = pooled ? new AgentPool<>() : null;
   }
 
   public BWAPI4JAgentFactory() {
@@ -66,20 +78,58 @@ public class BWAPI4JAgentFactory {
       boolean energyUpgrade,
       boolean cooldownUpgrade) {
     return fromUnitType(
-            unitType,
+        unitType,
+        groundWeaponUpgrades,
+        airWeaponUpgrades,
+        groundWeaponRangeUpgrade,
+        airWeaponRangeUpgrade,
+        speedUpgrade,
+        energyUpgrade,
+        cooldownUpgrade);
+  }
+
+  /**
+   * Copies the template for the given unit type and upgrades. Templates are created once and only
+   * then query the unit and weapon types.
+   */
+  private Agent fromUnitType(
+      UnitType unitType,
+      int groundWeaponUpgrades,
+      int airWeaponUpgrades,
+      int groundWeaponRangeUpgrade,
+      int airWeaponRangeUpgrade,
+      boolean speedUpgrade,
+      boolean energyUpgrade,
+      boolean cooldownUpgrade) {
+    int key =
+        AgentTemplates.key(
             groundWeaponUpgrades,
             airWeaponUpgrades,
             groundWeaponRangeUpgrade,
             airWeaponRangeUpgrade,
             speedUpgrade,
             energyUpgrade,
-            cooldownUpgrade)
-        .setHealth(unitType.maxHitPoints())
-        .setShields(unitType.maxShields())
-        .setEnergy(unitType.maxEnergy());
+            cooldownUpgrade);
+    Agent template = key != AgentTemplates.NO_KEY ? templates.get(unitType.ordinal(), key) : null;
+    if (template == null) {
+      template =
+          template(
+              unitType,
+              groundWeaponUpgrades,
+              airWeaponUpgrades,
+              groundWeaponRangeUpgrade,
+              airWeaponRangeUpgrade,
+              speedUpgrade,
+              energyUpgrade,
+              cooldownUpgrade);
+      if (key != AgentTemplates.NO_KEY) {
+        templates.put(unitType.ordinal(), key, template);
+      }
+    }
+    return agentPool != null ? agentPool.acquire(unitType, template) : new Agent(template);
   }
 
-  private Agent fromUnitType(
+  private Agent template(
       UnitType unitType,
       int groundWeaponUpgrades,
       int airWeaponUpgrades,
@@ -167,7 +217,10 @@ public class BWAPI4JAgentFactory {
             .setMechanic(unitType.isMechanical())
             .setMelee(groundWeapon.damageAmount() > 0 && groundWeapon.maxRange() <= 32)
             .setGroundSeekRange(unitType == UnitType.Terran_Vulture_Spider_Mine ? unitType.seekRange() : 0)
-            .setSeekableTarget(!unitType.isWorker() && !unitType.isBuilding() && !unitType.isFlyer());
+            .setSeekableTarget(!unitType.isWorker() && !unitType.isBuilding() && !unitType.isFlyer())
+            .setHealth(unitType.maxHitPoints())
+            .setShields(unitType.maxShields())
+            .setEnergy(unitType.maxEnergy());
 
     if (unitType == UnitType.Terran_Bunker) {
       agent.setOnDeathHandler(bunkerDeathHandler);
@@ -179,6 +232,17 @@ public class BWAPI4JAgentFactory {
     return agent;
   }
 
+  /**
+   * Only for pooled factories: All agents created so far will be reused by subsequent calls. Call
+   * this once per frame before creating agents, after the last simulation using them is done. Does
+   * nothing if this factory is not pooled.
+   */
+  public void recycleAgents() {
+    if (agentPool != null) {
+      agentPool.recycle();
+    }
+  }
+
   private Weapon weapon(
       int weaponUpgrades,
       int rangeExtension,
@@ -186,6 +250,26 @@ public class BWAPI4JAgentFactory {
       WeaponType weapon,
       int maxHits,
       int cooldown) {
+    long key =
+        WeaponCache.key(
+            weapon.ordinal(), weaponUpgrades, rangeExtension, hitsFactor, maxHits, cooldown);
+    Weapon result = key != WeaponCache.NO_KEY ? weaponCache.get(key) : null;
+    if (result == null) {
+      result = newWeapon(weaponUpgrades, rangeExtension, hitsFactor, weapon, maxHits, cooldown);
+      if (key != WeaponCache.NO_KEY) {
+        weaponCache.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  private Weapon newWeapon(
+      int weaponUpgrades,
+      int rangeExtension,
+      int hitsFactor,
+      WeaponType weapon,
+      int maxHits,
+      int cooldown) {
     return new Weapon()
         .setMaxRange(weapon.maxRange() + rangeExtension)
         .setMinRange(weapon.minRange())
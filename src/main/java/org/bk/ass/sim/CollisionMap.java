@@ -0,0 +1,89 @@
+package org.bk.ass.sim;
+
+import java.util.Arrays;
+
+/**
+ * Number of ground agents per 16x16 pixel cell. Cells are grouped into tiles of 16x16 cells, which
+ * are only allocated once an agent enters them. Tiles that were modified are tracked, so clearing
+ * only needs to touch those. Usually a battle only covers a handful of tiles, instead of the full
+ * 512x512 cells of the largest maps.
+ */
+final class CollisionMap {
+  static final int CELL_SIZE = 16;
+  private static final int DIMENSION = 8192 / CELL_SIZE;
+  private static final int DIMENSION_SHIFT = 9;
+  private static final int TILE_SHIFT = 4;
+  private static final int TILE_MASK = (1 << TILE_SHIFT) - 1;
+  private static final int TILES_PER_ROW = DIMENSION >> TILE_SHIFT;
+
+  private final byte[][] tiles = new byte[TILES_PER_ROW * TILES_PER_ROW][];
+  private final boolean[] dirty = new boolean[tiles.length];
+  private int[] dirtyTiles = new int[8];
+  private int dirtyCount;
+
+  /** Returns the index of the cell containing the given position. */
+  static int index(int x, int y) {
+    return y / CELL_SIZE * DIMENSION + x / CELL_SIZE;
+  }
+
+  int get(int index) {
+    byte[] tile = tiles[tileOf(index)];
+    return tile == null ? 0 : tile[offsetOf(index)];
+  }
+
+  void increment(int index) {
+    tileForWriting(index)[offsetOf(index)]++;
+  }
+
+  void decrement(int index) {
+    tileForWriting(index)[offsetOf(index)]--;
+  }
+
+  /** Sets all cells to 0. Allocated tiles are kept for reuse. */
+  void clear() {
+    for (int i = 0; i < dirtyCount; i++) {
+      int tile = dirtyTiles[i];
+      Arrays.fill(tiles[tile], (byte) 0);
+      dirty[tile] = false;
+    }
+    dirtyCount = 0;
+  }
+
+  /** Returns a copy of all cells, row by row. Intended for testing. */
+  byte[] toArray() {
+    byte[] result = new byte[DIMENSION * DIMENSION];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (byte) get(i);
+    }
+    return result;
+  }
+
+  private byte[] tileForWriting(int index) {
+    int tileIndex = tileOf(index);
+    byte[] tile = tiles[tileIndex];
+    if (tile == null) {
+      tile = new byte[1 << (2 * TILE_SHIFT)];
+      tiles[tileIndex] = tile;
+    }
+    if (!dirty[tileIndex]) {
+      dirty[tileIndex] = true;
+      if (dirtyCount == dirtyTiles.length) {
+        dirtyTiles = Arrays.copyOf(dirtyTiles, dirtyCount * 2);
+      }
+      dirtyTiles[dirtyCount++] = tileIndex;
+    }
+    return tile;
+  }
+
+  private static int tileOf(int index) {
+    int cx = index & (DIMENSION - 1);
+    int cy = index >> DIMENSION_SHIFT;
+    return (cy >> TILE_SHIFT) * TILES_PER_ROW + (cx >> TILE_SHIFT);
+  }
+
+  private static int offsetOf(int index) {
+    int cx = index & TILE_MASK;
+    int cy = (index >> DIMENSION_SHIFT) & TILE_MASK;
+    return (cy << TILE_SHIFT) | cx;
+  }
+}
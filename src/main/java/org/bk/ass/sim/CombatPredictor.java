@@ -0,0 +1,190 @@
+package org.bk.ass.sim;
+
+import java.util.Collection;
+import java.util.function.ToIntFunction;
+import org.bk.ass.sim.Evaluator.MutableEvaluationResult;
+
+/**
+ * Predicts combat outcome by asking the {@link Evaluator} first. Only if its estimate is within the
+ * confidence bounds (ie. the fight is close), the {@link Simulator} is used as well. Keeps metrics
+ * on how often the simulation was skipped and how long both took.
+ *
+ * <p>Not thread safe.
+ */
+public class CombatPredictor {
+  // Frame skip used by the default simulator while no agent is able to attack
+  private static final int MAX_FRAME_SKIP = 37;
+
+  private final Evaluator evaluator;
+  final Simulator simulator;
+  private final double lowerBound;
+  private final double upperBound;
+  private final int frames;
+  private final ToIntFunction<Agent> agentEval;
+  private final MutableEvaluationResult evaluation = new MutableEvaluationResult();
+
+  private long predictions;
+  private long simulations;
+  private long evaluatorNanos;
+  private long simulatorNanos;
+
+  private CombatPredictor(
+      Evaluator evaluator,
+      Simulator simulator,
+      double lowerBound,
+      double upperBound,
+      int frames,
+      ToIntFunction<Agent> agentEval) {
+    this.evaluator = evaluator;
+    this.simulator = simulator;
+    this.lowerBound = lowerBound;
+    this.upperBound = upperBound;
+    this.frames = frames;
+    this.agentEval = agentEval;
+  }
+
+  /**
+   * Predicts the outcome of agentsA fighting agentsB. The agents are not modified, the simulator
+   * works on copies.
+   */
+  public Prediction predict(Collection<Agent> agentsA, Collection<Agent> agentsB) {
+    predictions++;
+    long start = System.nanoTime();
+    evaluator.evaluate(agentsA, agentsB, evaluation);
+    evaluatorNanos += System.nanoTime() - start;
+    if (evaluation.noCombat || evaluation.value <= lowerBound || evaluation.value >= upperBound) {
+      return new Prediction(evaluation.value, false);
+    }
+
+    simulations++;
+    start = System.nanoTime();
+    simulator.reset();
+    for (Agent agent : agentsA) {
+      simulator.addAgentA(new Agent(agent));
+    }
+    for (Agent agent : agentsB) {
+      simulator.addAgentB(new Agent(agent));
+    }
+    IntEvaluation before = simulator.evalToInt(agentEval);
+    simulator.simulate(frames);
+    IntEvaluation after = simulator.evalToInt(agentEval);
+    simulator.reset();
+    simulatorNanos += System.nanoTime() - start;
+
+    double remainingA = before.evalA == 0 ? 0 : after.evalA / (double) before.evalA;
+    double remainingB = before.evalB == 0 ? 0 : after.evalB / (double) before.evalB;
+    double value = remainingA + remainingB == 0 ? 0.5 : remainingA / (remainingA + remainingB);
+    return new Prediction(value, true);
+  }
+
+  public long getPredictions() {
+    return predictions;
+  }
+
+  public long getSimulations() {
+    return simulations;
+  }
+
+  /** Fraction of predictions which were decided by the evaluator alone. */
+  public double getEvaluatorHitRate() {
+    return predictions == 0 ? 0 : (predictions - simulations) / (double) predictions;
+  }
+
+  /** Mean time in nanoseconds spent in the evaluator per prediction. */
+  public double getMeanEvaluatorNanos() {
+    return predictions == 0 ? 0 : evaluatorNanos / (double) predictions;
+  }
+
+  /** Mean time in nanoseconds spent simulating per simulated prediction. */
+  public double getMeanSimulatorNanos() {
+    return simulations == 0 ? 0 : simulatorNanos / (double) simulations;
+  }
+
+  public void resetMetrics() {
+    predictions = 0;
+    simulations = 0;
+    evaluatorNanos = 0;
+    simulatorNanos = 0;
+  }
+
+  /**
+   * Predicted outcome. The value is in the [0..1] range, same as {@link
+   * Evaluator.EvaluationResult#value}. If simulated, it is the remaining fraction of A relative to
+   * the remaining fractions of A and B.
+   */
+  public static final class Prediction {
+    public final double value;
+    /** True, if the evaluator was not confident enough and the simulator was used. */
+    public final boolean simulated;
+
+    Prediction(double value, boolean simulated) {
+      this.value = value;
+      this.simulated = simulated;
+    }
+
+    @Override
+    public String toString() {
+      return "Prediction{" + "value=" + value + ", simulated=" + simulated + '}';
+    }
+  }
+
+  public static final class Builder {
+    private Evaluator evaluator;
+    private Simulator simulator;
+    private double lowerBound = 0.3;
+    private double upperBound = 0.7;
+    private int frames = 96;
+    private ToIntFunction<Agent> agentEval = Simulator.HEALTH_AND_HALFED_SHIELD;
+
+    public Builder withEvaluator(Evaluator evaluator) {
+      this.evaluator = evaluator;
+      return this;
+    }
+
+    /**
+     * The simulator to use for close fights. It will be reset before and after each use. Defaults
+     * to a simulator with {@link Simulator.Builder#withAdaptiveFrameSkip(int) adaptive frame skip}.
+     */
+    public Builder withSimulator(Simulator simulator) {
+      this.simulator = simulator;
+      return this;
+    }
+
+    /**
+     * Evaluations at or below the lower bound or at or above the upper bound are considered
+     * decided, no simulation is done. Defaults to 0.3 and 0.7.
+     */
+    public Builder withConfidenceBounds(double lowerBound, double upperBound) {
+      if (lowerBound > upperBound) {
+        throw new IllegalArgumentException("lowerBound must not be greater than upperBound");
+      }
+      this.lowerBound = lowerBound;
+      this.upperBound = upperBound;
+      return this;
+    }
+
+    /** Number of frames to simulate, see {@link Simulator#simulate(int)}. Defaults to 96. */
+    public Builder withFrames(int frames) {
+      this.frames = frames;
+      return this;
+    }
+
+    /** Evaluation of agents used to compare simulation outcomes. */
+    public Builder withAgentEval(ToIntFunction<Agent> agentEval) {
+      this.agentEval = agentEval;
+      return this;
+    }
+
+    public CombatPredictor build() {
+      return new CombatPredictor(
+          evaluator != null ? evaluator : new Evaluator(),
+          simulator != null
+              ? simulator
+              : new Simulator.Builder().withAdaptiveFrameSkip(MAX_FRAME_SKIP).build(),
+          lowerBound,
+          upperBound,
+          frames,
+          agentEval);
+    }
+  }
+}
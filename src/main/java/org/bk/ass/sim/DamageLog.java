@@ -0,0 +1,48 @@
+package org.bk.ass.sim;
+
+import java.util.Arrays;
+
+/**
+ * Damage recorded instead of being applied immediately, so that all agents of a step can decide on
+ * the same state. Applied in the order it was recorded.
+ */
+final class DamageLog {
+  private Agent[] targets = new Agent[16];
+  private DamageType[] damageTypes = new DamageType[16];
+  private int[] damage = new int[16];
+  private int[] hits = new int[16];
+  private int size;
+
+  /** Records health consumed by the target itself, which is not reduced by shields or armor. */
+  void addHealthCost(Agent target, int amountShifted) {
+    add(target, null, amountShifted, 0);
+  }
+
+  void add(Agent target, DamageType damageType, int damage, int hits) {
+    if (size == targets.length) {
+      int capacity = size * 2;
+      targets = Arrays.copyOf(targets, capacity);
+      damageTypes = Arrays.copyOf(damageTypes, capacity);
+      this.damage = Arrays.copyOf(this.damage, capacity);
+      this.hits = Arrays.copyOf(this.hits, capacity);
+    }
+    targets[size] = target;
+    damageTypes[size] = damageType;
+    this.damage[size] = damage;
+    this.hits[size] = hits;
+    size++;
+  }
+
+  /** Applies all recorded damage and clears this log. */
+  void apply() {
+    for (int i = 0; i < size; i++) {
+      if (damageTypes[i] == null) {
+        targets[i].consumeHealth(damage[i]);
+      } else {
+        AgentUtil.applyDamage(targets[i], damageTypes[i], damage[i], hits[i]);
+      }
+      targets[i] = null;
+    }
+    size = 0;
+  }
+}
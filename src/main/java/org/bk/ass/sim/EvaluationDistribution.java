@@ -0,0 +1,56 @@
+package org.bk.ass.sim;
+
+/**
+ * Mean and variance of evaluations of multiple simulation runs, see {@link
+ * Simulator#simulateDistribution(int, long, int, java.util.function.ToIntFunction)}.
+ */
+public class EvaluationDistribution {
+
+  public final int runs;
+  public final double meanA;
+  public final double meanB;
+  public final double varianceA;
+  public final double varianceB;
+
+  EvaluationDistribution(IntEvaluation[] evaluations) {
+    runs = evaluations.length;
+    double sumA = 0;
+    double sumB = 0;
+    for (IntEvaluation evaluation : evaluations) {
+      sumA += evaluation.evalA;
+      sumB += evaluation.evalB;
+    }
+    meanA = runs == 0 ? 0 : sumA / runs;
+    meanB = runs == 0 ? 0 : sumB / runs;
+    double squaredDeltaSumA = 0;
+    double squaredDeltaSumB = 0;
+    for (IntEvaluation evaluation : evaluations) {
+      squaredDeltaSumA += (evaluation.evalA - meanA) * (evaluation.evalA - meanA);
+      squaredDeltaSumB += (evaluation.evalB - meanB) * (evaluation.evalB - meanB);
+    }
+    varianceA = runs < 2 ? 0 : squaredDeltaSumA / (runs - 1);
+    varianceB = runs < 2 ? 0 : squaredDeltaSumB / (runs - 1);
+  }
+
+  public double standardDeviationA() {
+    return Math.sqrt(varianceA);
+  }
+
+  public double standardDeviationB() {
+    return Math.sqrt(varianceB);
+  }
+
+  @Override
+  public String toString() {
+    return "A: "
+        + meanA
+        + " (sd: "
+        + standardDeviationA()
+        + "), B: "
+        + meanB
+        + " (sd: "
+        + standardDeviationB()
+        + "), runs: "
+        + runs;
+  }
+}
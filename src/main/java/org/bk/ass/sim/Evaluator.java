@@ -3,10 +3,13 @@ package org.bk.ass.sim;
 import static java.lang.Math.max;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Used to get a rough guess for combat outcome. Doesn't provide as much detail as the {@link
@@ -24,8 +27,7 @@ public class Evaluator {
         }
       };
   private final Parameters parameters;
-  private SplittableRandom prng = new SplittableRandom();
-  private EvaluatorDeathContext deathContext = new EvaluatorDeathContext();
+  private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
 
   public Evaluator(Parameters parameters) {
     this.parameters = parameters;
@@ -40,49 +42,282 @@ public class Evaluator {
    *     obliterated. Exactly 0.5 means no damage will be done by either side.
    */
   public EvaluationResult evaluate(Collection<Agent> agentsA, Collection<Agent> agentsB) {
-    List<Agent> finalAgentsA = new ArrayList<>();
-    deathContext.target = finalAgentsA;
-    agentsA.forEach(a -> {
-      deathContext.deadUnit = a;
-      a.onDeathHandler.accept(deathContext);
-    });
-    List<Agent> finalAgentsB = new ArrayList<>();
-    deathContext.target = finalAgentsB;
-    agentsB.forEach(a -> {
-      deathContext.deadUnit = a;
-      a.onDeathHandler.accept(deathContext);
-    });
-    finalAgentsA.addAll(agentsA);
-    finalAgentsA.forEach(Agent::updateSpeed);
-    finalAgentsB.addAll(agentsB);
-    finalAgentsB.forEach(Agent::updateSpeed);
-    double damageToA = new DamageBoard(finalAgentsB).sumDamageTo(finalAgentsA);
-    double damageToB = new DamageBoard(finalAgentsA).sumDamageTo(finalAgentsB);
-
-    int regenToA = regeneration(finalAgentsA);
-    int regenToB = regeneration(finalAgentsB);
-    damageToA -= regenToA;
+    MutableEvaluationResult result = evaluate(agentsA, agentsB, scratch.get().result);
+    return result.noCombat ? EVAL_NO_COMBAT : new EvaluationResult(result.value);
+  }
+
+  /**
+   * Same as {@link #evaluate(Collection, Collection)}, but writes the result into the given holder
+   * instead of creating a new one. This does not allocate, all intermediate state is kept in
+   * thread local buffers. Use this if evaluating very often.
+   *
+   * @return the given result holder
+   */
+  public MutableEvaluationResult evaluate(
+      Collection<Agent> agentsA, Collection<Agent> agentsB, MutableEvaluationResult result) {
+    IncrementalEvaluation evaluation = scratch.get().evaluation;
+    try {
+      for (Agent agent : agentsA) {
+        evaluation.addA(agent);
+      }
+      for (Agent agent : agentsB) {
+        evaluation.addB(agent);
+      }
+      return evaluation.evaluate(result);
+    } finally {
+      // Don't keep references to the agents around
+      evaluation.clear();
+    }
+  }
+
+  /**
+   * Evaluates each of the candidates against the same enemies, same as calling {@link
+   * #evaluate(Collection, Collection)} for each candidate as agentsA. The sums of the enemies are
+   * only computed once.
+   *
+   * @return the evaluation values, in the order of the candidates
+   */
+  public double[] evaluateMany(
+      Collection<Agent> enemies, List<? extends Collection<Agent>> candidates) {
+    return evaluateMany(enemies, candidates, false);
+  }
+
+  /**
+   * Same as {@link #evaluateMany(Collection, List)}, but the candidates can be evaluated in
+   * parallel using the common {@link java.util.concurrent.ForkJoinPool}. Candidates can share
+   * agents.
+   */
+  public double[] evaluateMany(
+      Collection<Agent> enemies, List<? extends Collection<Agent>> candidates, boolean parallel) {
+    IncrementalEvaluation enemyEvaluation = newIncrementalEvaluation();
+    for (Agent enemy : enemies) {
+      enemyEvaluation.addB(enemy);
+    }
+    Side enemySide = enemyEvaluation.sideB;
+    double[] values = new double[candidates.size()];
+    IntConsumer evaluateCandidate =
+        i -> {
+          Scratch scratch = this.scratch.get();
+          IncrementalEvaluation evaluation = scratch.evaluation;
+          try {
+            for (Agent agent : candidates.get(i)) {
+              evaluation.addA(agent);
+            }
+            values[i] =
+                evaluate(evaluation.sideA, enemySide, evaluation.prng, scratch.result).value;
+          } finally {
+            evaluation.clear();
+          }
+        };
+    IntStream indices = IntStream.range(0, values.length);
+    if (parallel) {
+      indices = indices.parallel();
+    }
+    indices.forEach(evaluateCandidate);
+    return values;
+  }
+
+  /**
+   * Returns a new, empty {@link IncrementalEvaluation} using the parameters of this evaluator.
+   */
+  public IncrementalEvaluation newIncrementalEvaluation() {
+    return new IncrementalEvaluation();
+  }
+
+  /**
+   * Tries to find a subset of agentsA with a better evaluation against agentsB, by removing each
+   * agent of A once and keeping it removed if that improves the evaluation. Runs in O(n).
+   */
+  public EvalWithAgents optimizeEval(Collection<Agent> agentsA, Collection<Agent> agentsB) {
+    IncrementalEvaluation evaluation = newIncrementalEvaluation();
+    MutableEvaluationResult eval = new MutableEvaluationResult();
+    Agent[] candidates = agentsA.toArray(new Agent[0]);
+    for (Agent a : candidates) {
+      evaluation.addA(a);
+    }
+    for (Agent b : agentsB) {
+      evaluation.addB(b);
+    }
+    evaluation.evaluate(eval);
+    double valueToBeat = eval.value;
+    boolean noCombatToBeat = eval.noCombat;
+    boolean[] removed = new boolean[candidates.length];
+    for (int i = 0; i < candidates.length; i++) {
+      evaluation.removeA(candidates[i]);
+      evaluation.evaluate(eval);
+      if (eval.value > valueToBeat || eval.value == valueToBeat && noCombatToBeat) {
+        valueToBeat = eval.value;
+        noCombatToBeat = eval.noCombat;
+        removed[i] = true;
+      } else {
+        evaluation.addA(candidates[i]);
+      }
+    }
+
+    List<Agent> agentsToBeat = new ArrayList<>(candidates.length);
+    for (int i = 0; i < candidates.length; i++) {
+      if (!removed[i]) {
+        agentsToBeat.add(candidates[i]);
+      }
+    }
+    return new EvalWithAgents(valueToBeat, agentsToBeat);
+  }
+
+  /**
+   * Tries to find a subset of agentsA with a good evaluation against agentsB, by adding agents of A
+   * one at a time. Agents are added in order of their individual evaluation against agentsB, best
+   * first. The best of these prefixes is returned. Runs in O(n log n).
+   */
+  public EvalWithAgents optimizeEvalByAdding(
+      Collection<Agent> agentsA, Collection<Agent> agentsB) {
+    IncrementalEvaluation evaluation = newIncrementalEvaluation();
+    MutableEvaluationResult eval = new MutableEvaluationResult();
+    for (Agent b : agentsB) {
+      evaluation.addB(b);
+    }
+    Agent[] candidates = agentsA.toArray(new Agent[0]);
+    double[] soloValues = new double[candidates.length];
+    Integer[] order = new Integer[candidates.length];
+    for (int i = 0; i < candidates.length; i++) {
+      evaluation.addA(candidates[i]);
+      soloValues[i] = evaluation.evaluate(eval).value;
+      evaluation.removeA(candidates[i]);
+      order[i] = i;
+    }
+    Arrays.sort(order, (x, y) -> Double.compare(soloValues[y], soloValues[x]));
+
+    evaluation.evaluate(eval);
+    double bestValue = eval.value;
+    int bestCount = 0;
+    for (int i = 0; i < candidates.length; i++) {
+      evaluation.addA(candidates[order[i]]);
+      evaluation.evaluate(eval);
+      if (eval.value > bestValue) {
+        bestValue = eval.value;
+        bestCount = i + 1;
+      }
+    }
+
+    List<Agent> bestAgents = new ArrayList<>(bestCount);
+    for (int i = 0; i < bestCount; i++) {
+      bestAgents.add(candidates[order[i]]);
+    }
+    return new EvalWithAgents(bestValue, bestAgents);
+  }
+
+  /**
+   * Evaluation state which is updated one agent (or one kind of agent) at a time. All values used
+   * by the {@link Evaluator} are sums over the agents of a side, so adding or removing agents only
+   * adds or subtracts their contribution. Both that and evaluating don't depend on the number of
+   * agents.
+   *
+   * <p>Agents must not be modified while they are part of the evaluation. Agents created by the
+   * death handler of an agent are included, the handler is invoked again when removing the agent.
+   * Not thread safe.
+   */
+  public final class IncrementalEvaluation {
+    private final Side sideA = new Side();
+    private final Side sideB = new Side();
+    private final SplittableRandom prng = new SplittableRandom();
+    private final EvaluatorDeathContext deathContext = new EvaluatorDeathContext();
+    private final List<Agent> spawned = new ArrayList<>();
+
+    private IncrementalEvaluation() {
+      deathContext.target = spawned;
+    }
+
+    public void addA(Agent agent) {
+      update(sideA, agent, 1);
+    }
+
+    /**
+     * Adds count agents with the same state as the given agent in constant time. Large armies of
+     * few unit types can be evaluated cheaply by adding one agent per type.
+     */
+    public void addA(Agent agent, int count) {
+      update(sideA, agent, count);
+    }
+
+    public void removeA(Agent agent) {
+      update(sideA, agent, -1);
+    }
+
+    /** Reverts {@link #addA(Agent, int)}. */
+    public void removeA(Agent agent, int count) {
+      update(sideA, agent, -count);
+    }
+
+    public void addB(Agent agent) {
+      update(sideB, agent, 1);
+    }
+
+    /** Same as {@link #addA(Agent, int)}, but for side B. */
+    public void addB(Agent agent, int count) {
+      update(sideB, agent, count);
+    }
+
+    public void removeB(Agent agent) {
+      update(sideB, agent, -1);
+    }
+
+    /** Reverts {@link #addB(Agent, int)}. */
+    public void removeB(Agent agent, int count) {
+      update(sideB, agent, -count);
+    }
+
+    /** Removes all agents. */
+    public void clear() {
+      sideA.clear();
+      sideB.clear();
+    }
+
+    private void update(Side side, Agent agent, int count) {
+      deathContext.deadUnit = agent;
+      agent.onDeathHandler.accept(deathContext);
+      deathContext.deadUnit = null;
+      for (int i = 0; i < spawned.size(); i++) {
+        Agent spawnedAgent = spawned.get(i);
+        spawnedAgent.updateSpeed();
+        side.update(spawnedAgent, count);
+      }
+      spawned.clear();
+      agent.updateSpeed();
+      side.update(agent, count);
+    }
+
+    /** Same as {@link Evaluator#evaluate(Collection, Collection)} for the current agents. */
+    public EvaluationResult evaluate() {
+      MutableEvaluationResult result = evaluate(new MutableEvaluationResult());
+      return result.noCombat ? EVAL_NO_COMBAT : new EvaluationResult(result.value);
+    }
+
+    /**
+     * Same as {@link Evaluator#evaluate(Collection, Collection, MutableEvaluationResult)} for the
+     * current agents.
+     *
+     * @return the given result holder
+     */
+    public MutableEvaluationResult evaluate(MutableEvaluationResult result) {
+      return Evaluator.this.evaluate(sideA, sideB, prng, result);
+    }
+  }
+
+  private MutableEvaluationResult evaluate(
+      Side sideA, Side sideB, SplittableRandom prng, MutableEvaluationResult result) {
+    double damageToA = sideA.damageTakenFrom(sideB.board) - sideA.regeneration();
     if (damageToA < 0) {
       damageToA = 0;
     }
-    damageToB -= regenToB;
+    double damageToB = sideB.damageTakenFrom(sideA.board) - sideB.regeneration();
     if (damageToB < 0) {
       damageToB = 0;
     }
-    double evalA =
-        finalAgentsA.stream()
-                .filter(it -> it.groundWeapon.damageShifted > 0 || it.airWeapon.damageShifted > 0)
-                .mapToDouble(a -> a.getHealth() + a.getShields() * parameters.shieldScale)
-                .sum()
-            * damageToB;
-    double evalB =
-        finalAgentsB.stream()
-                .filter(it -> it.groundWeapon.damageShifted > 0 || it.airWeapon.damageShifted > 0)
-                .mapToDouble(a -> a.getHealth() + a.getShields() * parameters.shieldScale)
-                .sum()
-            * damageToA;
+    double evalA = sideA.attackerHitPoints * damageToB;
+    double evalB = sideB.attackerHitPoints * damageToA;
     if (evalA == 0 && evalB == 0) {
-      return EVAL_NO_COMBAT;
+      result.value = EVAL_NO_COMBAT.value;
+      result.noCombat = true;
+      return result;
     }
 
     // eval is a rough factor on how many units survived
@@ -97,41 +332,90 @@ public class Evaluator {
       skewA = 0;
       skewB = skew;
     }
-    evalA *= finalAgentsA.size() + skewA;
-    evalB *= finalAgentsB.size() + skewB;
-    return new EvaluationResult((evalA + EPS) / (evalA + evalB + 2 * EPS));
+    evalA *= sideA.agents + skewA;
+    evalB *= sideB.agents + skewB;
+    result.value = (evalA + EPS) / (evalA + evalB + 2 * EPS);
+    result.noCombat = false;
+    return result;
   }
 
-  public EvalWithAgents optimizeEval(Collection<Agent> agentsA, Collection<Agent> agentsB) {
-    EvaluationResult evalToBeat = evaluate(agentsA, agentsB);
-    List<Agent> agentsToBeat = new ArrayList<>(agentsA);
-    for (Agent a : agentsA) {
-      agentsToBeat.remove(a);
-      EvaluationResult eval = evaluate(agentsToBeat, agentsB);
-      if (eval.value > evalToBeat.value
-          || eval.value == evalToBeat.value && evalToBeat == EVAL_NO_COMBAT) {
-        evalToBeat = eval;
-      } else {
-        agentsToBeat.add(a);
+  /**
+   * Sums of one side. Targets are grouped by the properties which determine the damage they take,
+   * there are only a few such groups.
+   */
+  private final class Side {
+    final DamageBoard board = new DamageBoard();
+    double attackerHitPoints;
+    int agents;
+    int organics;
+    int healers;
+    Agent[] targetGroups = new Agent[8];
+    int[] targetGroupSizes = new int[8];
+    int targetGroupCount;
+
+    void update(Agent agent, int count) {
+      board.update(agent, count);
+      if (agent.groundWeapon.damageShifted > 0 || agent.airWeapon.damageShifted > 0) {
+        attackerHitPoints +=
+            count * (agent.getHealth() + agent.getShields() * parameters.shieldScale);
+      }
+      agents += count;
+      if (agent.isOrganic) {
+        organics += count;
+      }
+      if (agent.isHealer) {
+        healers += count;
+      }
+      if (agent.detected) {
+        targetGroupSizes[targetGroupOf(agent)] += count;
       }
     }
 
-    return new EvalWithAgents(evalToBeat.value, agentsToBeat);
-  }
+    private int targetGroupOf(Agent agent) {
+      for (int i = 0; i < targetGroupCount; i++) {
+        Agent group = targetGroups[i];
+        if (group.isFlyer == agent.isFlyer
+            && group.seekableTarget == agent.seekableTarget
+            && group.armorShifted == agent.armorShifted
+            && group.size == agent.size) {
+          return i;
+        }
+      }
+      if (targetGroupCount == targetGroups.length) {
+        targetGroups = Arrays.copyOf(targetGroups, targetGroupCount * 2);
+        targetGroupSizes = Arrays.copyOf(targetGroupSizes, targetGroupCount * 2);
+      }
+      targetGroups[targetGroupCount] = agent;
+      return targetGroupCount++;
+    }
 
-  private int regeneration(Collection<Agent> agents) {
-    // Subtract 1 to prevent counting selfheal
-    int healables = (int) (agents.stream().filter(it -> it.isOrganic).count() - 1);
-    return agents.stream()
-        .mapToInt(
-            a -> {
-              int healed = 0;
-              if (a.isHealer) {
-                healed += healables * parameters.heal;
-              }
-              return healed;
-            })
-        .sum();
+    double damageTakenFrom(DamageBoard attackers) {
+      double damageSum = 0;
+      for (int i = 0; i < targetGroupCount; i++) {
+        int size = targetGroupSizes[i];
+        if (size > 0) {
+          damageSum += size * (double) attackers.damageTakenBy(targetGroups[i]);
+        }
+      }
+      return damageSum;
+    }
+
+    int regeneration() {
+      // Subtract 1 to prevent counting selfheal
+      int healables = organics - 1;
+      return healers * (int) (healables * parameters.heal);
+    }
+
+    void clear() {
+      board.clear();
+      attackerHitPoints = 0;
+      agents = 0;
+      organics = 0;
+      healers = 0;
+      Arrays.fill(targetGroups, 0, targetGroupCount, null);
+      Arrays.fill(targetGroupSizes, 0, targetGroupCount, 0);
+      targetGroupCount = 0;
+    }
   }
 
   private class DamageBoard {
@@ -151,45 +435,63 @@ public class Evaluator {
     private int groundSeekingExplosiveHits;
     private int groundSeekingExplosiveDamage;
 
-    DamageBoard(Collection<Agent> attackers) {
-      for (Agent agent : attackers) {
-        sumAirDamage(agent);
-        sumGroundDamage(agent);
-      }
+    void clear() {
+      airDamageNormal = 0;
+      airConcussiveDamage = 0;
+      airExplosiveDamage = 0;
+      airConcussiveHits = 0;
+      airExplosiveHits = 0;
+      airNormalHits = 0;
+      groundDamageNormal = 0;
+      groundConcussiveDamage = 0;
+      groundExplosiveDamage = 0;
+      groundConcussiveHits = 0;
+      groundExplosiveHits = 0;
+      groundNormalHits = 0;
+      groundSeekingExplosiveHits = 0;
+      groundSeekingExplosiveDamage = 0;
     }
 
-    private void sumGroundDamage(Agent agent) {
+    /** Adds the damage of count attackers like the given one, a negative count removes it. */
+    void update(Agent agent, int count) {
+      updateAirDamage(agent, count);
+      updateGroundDamage(agent, count);
+    }
+
+    private void updateGroundDamage(Agent agent, int count) {
       Weapon weapon = agent.groundWeapon;
-      double damageToApply = calculateDamage(agent, weapon);
+      int damageToApply = count * (int) calculateDamage(agent, weapon);
+      int hits = count * weapon.hits;
       if (weapon.damageType == DamageType.CONCUSSIVE) {
-        groundConcussiveHits += weapon.hits;
-        groundConcussiveDamage += (int) damageToApply;
+        groundConcussiveHits += hits;
+        groundConcussiveDamage += damageToApply;
       } else if (weapon.damageType == DamageType.EXPLOSIVE) {
         if (agent.groundSeekRangeSquared == 0) {
-          groundExplosiveHits += weapon.hits;
+          groundExplosiveHits += hits;
           groundExplosiveDamage += damageToApply;
         } else {
-          groundSeekingExplosiveHits += weapon.hits;
+          groundSeekingExplosiveHits += hits;
           groundSeekingExplosiveDamage += damageToApply;
         }
       } else {
-        groundNormalHits += weapon.hits;
-        groundDamageNormal += (int) damageToApply;
+        groundNormalHits += hits;
+        groundDamageNormal += damageToApply;
       }
     }
 
-    private void sumAirDamage(Agent agent) {
+    private void updateAirDamage(Agent agent, int count) {
       Weapon weapon = agent.airWeapon;
-      double damageToApply = calculateDamage(agent, weapon);
+      int damageToApply = count * (int) calculateDamage(agent, weapon);
+      int hits = count * weapon.hits;
       if (weapon.damageType == DamageType.CONCUSSIVE) {
         airConcussiveDamage += damageToApply;
-        airConcussiveHits += weapon.hits;
+        airConcussiveHits += hits;
       } else if (weapon.damageType == DamageType.EXPLOSIVE) {
         airExplosiveDamage += damageToApply;
-        airExplosiveHits += weapon.hits;
+        airExplosiveHits += hits;
       } else {
-        airDamageNormal += (int) damageToApply;
-        airNormalHits += weapon.hits;
+        airDamageNormal += damageToApply;
+        airNormalHits += hits;
       }
     }
 
@@ -218,40 +520,32 @@ public class Evaluator {
           / max(attacker.groundWeapon.cooldown, attacker.airWeapon.cooldown);
     }
 
-    double sumDamageTo(Collection<Agent> targets) {
-      double damageSum = 0;
-      for (Agent target : targets) {
-        if (!target.detected) {
-          continue;
-        }
-        if (target.isFlyer) {
-          damageSum +=
-              damageTakenBy(
-                  target,
-                  airConcussiveDamage,
-                  airConcussiveHits,
-                  airExplosiveDamage,
-                  airExplosiveHits,
-                  airDamageNormal,
-                  airNormalHits);
-        } else {
-          damageSum +=
-              damageTakenBy(
-                  target,
-                  groundConcussiveDamage,
-                  groundConcussiveHits,
-                  groundExplosiveDamage,
-                  groundExplosiveHits,
-                  groundDamageNormal,
-                  groundNormalHits);
-          if (target.seekableTarget) {
-            damageSum +=
-                damageTakenBy(
-                    target, 0, 0, groundSeekingExplosiveDamage, groundSeekingExplosiveHits, 0, 0);
-          }
-        }
+    int damageTakenBy(Agent target) {
+      if (target.isFlyer) {
+        return damageTakenBy(
+            target,
+            airConcussiveDamage,
+            airConcussiveHits,
+            airExplosiveDamage,
+            airExplosiveHits,
+            airDamageNormal,
+            airNormalHits);
       }
-      return damageSum;
+      int damage =
+          damageTakenBy(
+              target,
+              groundConcussiveDamage,
+              groundConcussiveHits,
+              groundExplosiveDamage,
+              groundExplosiveHits,
+              groundDamageNormal,
+              groundNormalHits);
+      if (target.seekableTarget) {
+        damage +=
+            damageTakenBy(
+                target, 0, 0, groundSeekingExplosiveDamage, groundSeekingExplosiveHits, 0, 0);
+      }
+      return damage;
     }
 
     private int damageTakenBy(
@@ -294,6 +588,23 @@ public class Evaluator {
     }
   }
 
+  /**
+   * Reusable result of {@link #evaluate(Collection, Collection, MutableEvaluationResult)}. The
+   * value has the same meaning as {@link EvaluationResult#value}.
+   */
+  public static final class MutableEvaluationResult {
+    public double value;
+    /** True, if no damage will be done by either side. */
+    public boolean noCombat;
+
+    @Override
+    public String toString() {
+      return noCombat
+          ? "MutableEvaluationResult{NO COMBAT}"
+          : "MutableEvaluationResult{" + "value=" + value + '}';
+    }
+  }
+
   public static class EvalWithAgents {
 
     public final double eval;
@@ -305,6 +616,12 @@ public class Evaluator {
     }
   }
 
+  /** Per thread buffers, so that evaluating does not allocate. */
+  private final class Scratch {
+    final IncrementalEvaluation evaluation = new IncrementalEvaluation();
+    final MutableEvaluationResult result = new MutableEvaluationResult();
+  }
+
   private static final class EvaluatorDeathContext extends UnitDeathContext {
 
     Collection<Agent> target;
@@ -30,6 +30,16 @@ public class HealerBehavior implements Behavior {
       }
     }
 
+    if (selectedAlly == null) {
+      AgentGrid grid = AgentGrid.of(allies);
+      if (grid != null) {
+        selectedAlly = grid.nearest(agent, AgentGrid.SEARCH_RADIUS, HealerBehavior::isHealable);
+        if (selectedAlly != null) {
+          selectedDistanceSquared = distanceSquared(agent, selectedAlly);
+        }
+      }
+    }
+
     if (selectedAlly == null) {
       for (int i = allies.size() - 1; i >= 0; i--) {
         Agent ally = allies.get(i);
@@ -67,4 +77,12 @@ public class HealerBehavior implements Behavior {
     selectedAlly.heal(150 * frameSkip);
     return true;
   }
+
+  private static boolean isHealable(Agent agent, Agent ally) {
+    return ally.isOrganic
+        && !ally.isStasised()
+        && ally.healthShifted < ally.maxHealthShifted
+        && !agent.healedThisFrame
+        && ally != agent;
+  }
 }
@@ -13,7 +13,11 @@ import bwapi.UnitSizeType;
 import bwapi.UnitType;
 import bwapi.UpgradeType;
 import bwapi.WeaponType;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import org.bk.ass.info.BWMirrorUnitInfo;
@@ -37,6 +41,11 @@ public class JBWAPIAgentFactory {
           UnitType.Zerg_Mutalisk,
           UnitType.Protoss_Dragoon);
 
+  private static final UnitType[] UNIT_TYPES = UnitType.values();
+  // Not yet queried, distinct from AgentTemplates.NO_KEY which is memoized like any other key
+  private static final int UNKNOWN = -2;
+  private static final int STIM_SLOT = UNIT_TYPES.length;
+
   private Consumer<UnitDeathContext> bunkerReplacer =
       context -> {
         Agent bunker = context.deadUnit;
@@ -47,9 +56,23 @@ public class JBWAPIAgentFactory {
       };
 
   private final Game game;
+  private final AgentPool<UnitType> agentPool;
+  private final WeaponCache weaponCache = new WeaponCache();
+  final AgentTemplates templates = new AgentTemplates(UNIT_TYPES.length);
+  // Per player: Template keys by unit type, and whether stim is researched at STIM_SLOT
+  private final Map<Player, int[]> playerUpgrades = new HashMap<>();
 
   public JBWAPIAgentFactory(Game game) {
+    this(game, false);
+  }
+
+  /**
+   * @param pooled if true, agents are reused after {@link #recycleAgents()} is called. Weapons of
+   *     agents are always shared between agents with equal unit type and upgrades.
+   */
+  public JBWAPIAgentFactory(Game game, boolean pooled) {
     this.game = game;
+    this.agentPool = pooled ? new AgentPool<>() : null;
   }
 
   public JBWAPIAgentFactory() {
@@ -70,6 +93,44 @@ public class JBWAPIAgentFactory {
       boolean energyUpgrade,
       boolean cooldownUpgrade) {
     return fromUnitType(
+        unitType,
+        groundWeaponUpgrades,
+        airWeaponUpgrades,
+        groundWeaponRangeUpgrade,
+        airWeaponRangeUpgrade,
+        speedUpgrade,
+        energyUpgrade,
+        cooldownUpgrade);
+  }
+
+  /**
+   * Copies the template for the given unit type and upgrades. Templates are created once and only
+   * then query the unit and weapon types.
+   */
+  private Agent fromUnitType(
+      UnitType unitType,
+      int groundWeaponUpgrades,
+      int airWeaponUpgrades,
+      int groundWeaponRangeUpgrade,
+      int airWeaponRangeUpgrade,
+      boolean speedUpgrade,
+      boolean energyUpgrade,
+      boolean cooldownUpgrade) {
+    int key =
+        AgentTemplates.key(
+            groundWeaponUpgrades,
+            airWeaponUpgrades,
+            groundWeaponRangeUpgrade,
+            airWeaponRangeUpgrade,
+            speedUpgrade,
+            energyUpgrade,
+            cooldownUpgrade);
+    if (key != AgentTemplates.NO_KEY) {
+      return fromUnitType(unitType, key);
+    }
+    return copyOf(
+        unitType,
+        template(
             unitType,
             groundWeaponUpgrades,
             airWeaponUpgrades,
@@ -77,13 +138,32 @@ public class JBWAPIAgentFactory {
             airWeaponRangeUpgrade,
             speedUpgrade,
             energyUpgrade,
-            cooldownUpgrade)
-        .setHealth(unitType.maxHitPoints())
-        .setShields(unitType.maxShields())
-        .setEnergy(unitType.maxEnergy());
+            cooldownUpgrade));
   }
 
-  private Agent fromUnitType(
+  private Agent fromUnitType(UnitType unitType, int key) {
+    Agent template = templates.get(unitType.ordinal(), key);
+    if (template == null) {
+      template =
+          template(
+              unitType,
+              AgentTemplates.groundWeaponUpgrades(key),
+              AgentTemplates.airWeaponUpgrades(key),
+              AgentTemplates.groundWeaponRangeUpgrade(key),
+              AgentTemplates.airWeaponRangeUpgrade(key),
+              AgentTemplates.speedUpgrade(key),
+              AgentTemplates.energyUpgrade(key),
+              AgentTemplates.cooldownUpgrade(key));
+      templates.put(unitType.ordinal(), key, template);
+    }
+    return copyOf(unitType, template);
+  }
+
+  private Agent copyOf(UnitType unitType, Agent template) {
+    return agentPool != null ? agentPool.acquire(unitType, template) : new Agent(template);
+  }
+
+  private Agent template(
       UnitType unitType,
       int groundWeaponUpgrades,
       int airWeaponUpgrades,
@@ -173,7 +253,10 @@ public class JBWAPIAgentFactory {
             .setGroundSeekRange(
                 unitType == UnitType.Terran_Vulture_Spider_Mine ? unitType.seekRange() : 0)
             .setSeekableTarget(
-                !unitType.isWorker() && !unitType.isBuilding() && !unitType.isFlyer());
+                !unitType.isWorker() && !unitType.isBuilding() && !unitType.isFlyer())
+            .setHealth(unitType.maxHitPoints())
+            .setShields(unitType.maxShields())
+            .setEnergy(unitType.maxEnergy());
 
     if (unitType == UnitType.Terran_Bunker) {
       agent.setOnDeathHandler(bunkerReplacer);
@@ -185,6 +268,17 @@ public class JBWAPIAgentFactory {
     return agent;
   }
 
+  /**
+   * Only for pooled factories: All agents created so far will be reused by subsequent calls. Call
+   * this once per frame before creating agents, after the last simulation using them is done. Does
+   * nothing if this factory is not pooled.
+   */
+  public void recycleAgents() {
+    if (agentPool != null) {
+      agentPool.recycle();
+    }
+  }
+
   private Weapon weapon(
       int weaponUpgrades,
       int rangeExtension,
@@ -192,6 +286,26 @@ public class JBWAPIAgentFactory {
       WeaponType weapon,
       int maxHits,
       int cooldown) {
+    long key =
+        WeaponCache.key(
+            weapon.ordinal(), weaponUpgrades, rangeExtension, hitsFactor, maxHits, cooldown);
+    Weapon result = key != WeaponCache.NO_KEY ? weaponCache.get(key) : null;
+    if (result == null) {
+      result = newWeapon(weaponUpgrades, rangeExtension, hitsFactor, weapon, maxHits, cooldown);
+      if (key != WeaponCache.NO_KEY) {
+        weaponCache.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  private Weapon newWeapon(
+      int weaponUpgrades,
+      int rangeExtension,
+      int hitsFactor,
+      WeaponType weapon,
+      int maxHits,
+      int cooldown) {
     return new Weapon()
         .setMaxRange(weapon.maxRange() + rangeExtension)
         .setMinRange(weapon.minRange())
@@ -283,6 +397,143 @@ public class JBWAPIAgentFactory {
     return agent;
   }
 
+  /**
+   * Reads the state of all given units into the buffer, replacing its previous content. Upgrades
+   * and research are only queried once per player and unit type. Use {@link #of(UnitStateBuffer,
+   * int)} to create the agents.
+   */
+  public void read(Collection<Unit> units, UnitStateBuffer buffer) {
+    for (int[] upgrades : playerUpgrades.values()) {
+      Arrays.fill(upgrades, UNKNOWN);
+    }
+    buffer.clear();
+    buffer.ensureCapacity(units.size());
+    int i = 0;
+    for (Unit unit : units) {
+      UnitType unitType = unit.getType();
+      Player player = unit.getPlayer();
+      int[] upgrades = playerUpgrades.get(player);
+      if (upgrades == null) {
+        upgrades = new int[UNIT_TYPES.length + 1];
+        Arrays.fill(upgrades, UNKNOWN);
+        playerUpgrades.put(player, upgrades);
+      }
+      int key = upgrades[unitType.ordinal()];
+      if (key == UNKNOWN) {
+        key = upgradesKey(unitType, player);
+        upgrades[unitType.ordinal()] = key;
+      }
+      boolean flying = unit.isFlying();
+      int flags =
+          (unit.isDetected() ? UnitStateBuffer.DETECTED : 0)
+              | (unit.isBurrowed() ? UnitStateBuffer.BURROWED : 0)
+              | (unit.isPlagued() ? UnitStateBuffer.PLAGUED : 0)
+              | (unit.isPowered() ? UnitStateBuffer.POWERED : 0)
+              | (flying ? UnitStateBuffer.FLYING : 0);
+      if (game != null && !flying) {
+        buffer.elevationLevel[i] = game.getGroundHeight(unit.getTilePosition());
+        flags |= unit.isUnderDarkSwarm() ? UnitStateBuffer.PROTECTED_BY_DARK_SWARM : 0;
+      }
+      if (unitType == UnitType.Terran_Marine || unitType == UnitType.Terran_Firebat) {
+        if (upgrades[STIM_SLOT] == UNKNOWN) {
+          upgrades[STIM_SLOT] = player.hasResearched(TechType.Stim_Packs) ? 1 : 0;
+        }
+        flags |= upgrades[STIM_SLOT] != 0 ? UnitStateBuffer.CAN_STIM : 0;
+        buffer.stimTimer[i] = unit.getStimTimer();
+      } else {
+        buffer.stimTimer[i] = 0;
+      }
+      buffer.unit[i] = unit;
+      buffer.playerId[i] = player.getID();
+      buffer.unitType[i] = unitType.ordinal();
+      buffer.upgrades[i] = key;
+      buffer.flags[i] = flags;
+      buffer.x[i] = unit.getX();
+      buffer.y[i] = unit.getY();
+      buffer.hitPoints[i] = unit.getHitPoints();
+      buffer.shields[i] = unit.getShields();
+      buffer.energy[i] = unitType.isSpellcaster() ? unit.getEnergy() : 0;
+      buffer.stasisTimer[i] = unit.getStasisTimer();
+      buffer.lockDownTimer[i] = unit.getLockdownTimer();
+      buffer.ensnareTimer[i] = unit.getEnsnareTimer();
+      buffer.remainingBuildTime[i] = unit.getRemainingBuildTime();
+      i++;
+    }
+    buffer.size = i;
+  }
+
+  /**
+   * Creates an agent from the state read by {@link #read(Collection, UnitStateBuffer)}. The result
+   * is the same as {@link #of(Unit)} for the unit at that time, without accessing the unit again.
+   * Only upgrade levels too high to be cached are queried from the player of the unit again.
+   */
+  public Agent of(UnitStateBuffer buffer, int index) {
+    UnitType unitType = UNIT_TYPES[buffer.unitType[index]];
+    int key = buffer.upgrades[index];
+    Agent agent =
+        (key != AgentTemplates.NO_KEY
+                ? fromUnitType(unitType, key)
+                : fromUpgradesOf(unitType, ((Unit) buffer.unit[index]).getPlayer()))
+            .setHealth(buffer.hitPoints[index])
+            .setShields(buffer.shields[index])
+            .setEnergy(buffer.energy[index])
+            .setX(buffer.x[index])
+            .setY(buffer.y[index])
+            .setDetected(buffer.is(index, UnitStateBuffer.DETECTED))
+            .setUserObject(buffer.unit[index])
+            .setBurrowed(buffer.is(index, UnitStateBuffer.BURROWED))
+            .setStasisTimer(buffer.stasisTimer[index])
+            .setLockDownTimer(buffer.lockDownTimer[index])
+            .setPlagueDamage(
+                buffer.is(index, UnitStateBuffer.PLAGUED) ? WeaponType.Plague.damageAmount() : 0)
+            .setEnsnareTimer(buffer.ensnareTimer[index]);
+    agent.setSleepTimer(max(agent.getSleepTimer(), buffer.remainingBuildTime[index]));
+    if (!buffer.is(index, UnitStateBuffer.POWERED)) {
+      agent.setPassive(true);
+    }
+    if (game != null && !buffer.is(index, UnitStateBuffer.FLYING)) {
+      agent.setElevationLevel(buffer.elevationLevel[index]);
+      agent.setProtectedByDarkSwarm(buffer.is(index, UnitStateBuffer.PROTECTED_BY_DARK_SWARM));
+    }
+    if (unitType == UnitType.Terran_Marine || unitType == UnitType.Terran_Firebat) {
+      agent.setCanStim(buffer.is(index, UnitStateBuffer.CAN_STIM));
+      agent.setStimTimer(buffer.stimTimer[index]);
+    }
+    return agent;
+  }
+
+  /** Used for upgrades which don't fit into a template key, they are queried from the player. */
+  private Agent fromUpgradesOf(UnitType unitType, Player player) {
+    WeaponType airWeapon =
+        unitType != UnitType.Terran_Bunker ? unitType.airWeapon() : WeaponType.Gauss_Rifle;
+    WeaponType groundWeapon =
+        unitType != UnitType.Terran_Bunker ? unitType.groundWeapon() : WeaponType.Gauss_Rifle;
+    return fromUnitType(
+        unitType,
+        player.getUpgradeLevel(groundWeapon.upgradeType()),
+        player.getUpgradeLevel(airWeapon.upgradeType()),
+        rangeUpgrade(groundWeapon, player),
+        rangeUpgrade(airWeapon, player),
+        hasSpeedUpgrade(unitType, player),
+        hasEnergyUpgrade(unitType, player),
+        hasCooldownUpgrade(unitType, player));
+  }
+
+  private int upgradesKey(UnitType unitType, Player player) {
+    WeaponType airWeapon =
+        unitType != UnitType.Terran_Bunker ? unitType.airWeapon() : WeaponType.Gauss_Rifle;
+    WeaponType groundWeapon =
+        unitType != UnitType.Terran_Bunker ? unitType.groundWeapon() : WeaponType.Gauss_Rifle;
+    return AgentTemplates.key(
+        player.getUpgradeLevel(groundWeapon.upgradeType()),
+        player.getUpgradeLevel(airWeapon.upgradeType()),
+        rangeUpgrade(groundWeapon, player),
+        rangeUpgrade(airWeapon, player),
+        hasSpeedUpgrade(unitType, player),
+        hasEnergyUpgrade(unitType, player),
+        hasCooldownUpgrade(unitType, player));
+  }
+
   private int rangeUpgrade(WeaponType weaponType, Player player) {
     if (weaponType == WeaponType.Gauss_Rifle
         && player.getUpgradeLevel(UpgradeType.U_238_Shells) > 0) {
@@ -0,0 +1,332 @@
+package org.bk.ass.sim;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Predicts combat outcome by integrating Lanchester's square law instead of simulating single
+ * agents. Agents with equal stats are merged into groups; each group fires at all enemy groups it
+ * can damage, split by their remaining unit count. Damage per frame takes armor, shields, damage
+ * type and unit size into account, the same way {@link AgentUtil#applyDamage(Agent, DamageType,
+ * int, int)} does. The firepower of a group declines with its remaining health.
+ *
+ * <p>Positions, range, speed, splash and abilities are ignored. Healers and suiciders are only
+ * considered as targets. Cost is in the range of microseconds, in between the {@link Evaluator}
+ * and the {@link Simulator}.
+ */
+public class LanchesterSolver {
+  private static final double EPS = 1E-9;
+  /**
+   * Maximum fraction of a group's initial hit points removed per integration step. Smaller values
+   * are more precise, but take more steps.
+   */
+  private static final double STEP_FRACTION = 1 / 16.0;
+
+  /** Solves until one side is dead, see {@link #solve(Collection, Collection, int)}. */
+  public Result solve(Collection<Agent> agentsA, Collection<Agent> agentsB) {
+    return solve(agentsA, agentsB, -1);
+  }
+
+  /**
+   * Estimates the outcome of agentsA fighting agentsB. The agents are not modified.
+   *
+   * @param frames the maximum number of frames to fight, -1 to fight until one side is dead or no
+   *     more damage can be done.
+   */
+  public Result solve(Collection<Agent> agentsA, Collection<Agent> agentsB, int frames) {
+    List<Group> groupsA = groupsOf(agentsA);
+    List<Group> groupsB = groupsOf(agentsB);
+    prepareRates(groupsA, groupsB);
+    prepareRates(groupsB, groupsA);
+
+    double maxFrames = frames < 0 ? Double.MAX_VALUE : frames;
+    double elapsed = 0;
+    boolean noCombat = true;
+    while (elapsed < maxFrames && isAlive(groupsA) && isAlive(groupsB)) {
+      clearIncoming(groupsA);
+      clearIncoming(groupsB);
+      addIncoming(groupsA, groupsB);
+      addIncoming(groupsB, groupsA);
+      double dt = min(min(maxStep(groupsA), maxStep(groupsB)), maxFrames - elapsed);
+      if (dt == Double.MAX_VALUE) {
+        break;
+      }
+      noCombat = false;
+      applyIncoming(groupsA, dt);
+      applyIncoming(groupsB, dt);
+      elapsed += dt;
+    }
+
+    double remainingA = remaining(groupsA);
+    double remainingB = remaining(groupsB);
+    return new Result(
+        noCombat || remainingA + remainingB == 0 ? 0.5 : remainingA / (remainingA + remainingB),
+        noCombat,
+        remainingA,
+        remainingB,
+        survivors(groupsA),
+        survivors(groupsB),
+        (int) Math.ceil(elapsed));
+  }
+
+  private static List<Group> groupsOf(Collection<Agent> agents) {
+    List<Group> groups = new ArrayList<>();
+    for (Agent agent : agents) {
+      if (agent.healthShifted <= 0) {
+        continue;
+      }
+      Group group = null;
+      for (Group candidate : groups) {
+        if (candidate.accepts(agent)) {
+          group = candidate;
+          break;
+        }
+      }
+      if (group == null) {
+        group = new Group(agent);
+        groups.add(group);
+      }
+      group.add(agent);
+    }
+    for (Group group : groups) {
+      group.initialPool = group.healthPool + group.shieldPool;
+      group.initialValue = group.value();
+    }
+    return groups;
+  }
+
+  private static void prepareRates(List<Group> attackers, List<Group> targets) {
+    for (Group attacker : attackers) {
+      attacker.shieldRates = new double[targets.size()];
+      attacker.healthRates = new double[targets.size()];
+      if (attacker.agent.isHealer || attacker.agent.isSuicider) {
+        continue;
+      }
+      for (int i = 0; i < targets.size(); i++) {
+        Agent target = targets.get(i).agent;
+        Weapon weapon = attacker.agent.weaponVs(target);
+        if (!target.detected || weapon == null || weapon.damageShifted == 0) {
+          continue;
+        }
+        int cooldown = max(1, weapon.cooldown);
+        attacker.shieldRates[i] =
+            max(0, weapon.damageShifted - target.shieldUpgrades) / (double) cooldown;
+        attacker.healthRates[i] =
+            max(
+                    128,
+                    AgentUtil.reduceDamageByTargetSizeAndDamageType(
+                        target,
+                        weapon.damageType,
+                        weapon.damageShifted - target.armorShifted * weapon.hits))
+                / (double) cooldown;
+      }
+    }
+  }
+
+  private static void clearIncoming(List<Group> groups) {
+    for (Group group : groups) {
+      group.incomingShieldDamage = 0;
+      group.incomingHealthDamage = 0;
+    }
+  }
+
+  private static void addIncoming(List<Group> attackers, List<Group> targets) {
+    for (Group attacker : attackers) {
+      double units = attacker.units();
+      if (units <= 0) {
+        continue;
+      }
+      double targetUnits = 0;
+      for (int i = 0; i < targets.size(); i++) {
+        if (attacker.healthRates[i] > 0) {
+          targetUnits += targets.get(i).units();
+        }
+      }
+      if (targetUnits <= 0) {
+        continue;
+      }
+      for (int i = 0; i < targets.size(); i++) {
+        Group target = targets.get(i);
+        double share = units * target.units() / targetUnits;
+        target.incomingShieldDamage += share * attacker.shieldRates[i];
+        target.incomingHealthDamage += share * attacker.healthRates[i];
+      }
+    }
+  }
+
+  private static double maxStep(List<Group> groups) {
+    double dt = Double.MAX_VALUE;
+    for (Group group : groups) {
+      double rate =
+          group.shieldPool > 0 && group.incomingShieldDamage > 0
+              ? group.incomingShieldDamage
+              : group.incomingHealthDamage;
+      if (rate > 0) {
+        dt = min(dt, max(group.initialPool * STEP_FRACTION, EPS) / rate);
+      }
+    }
+    return dt;
+  }
+
+  private static void applyIncoming(List<Group> groups, double dt) {
+    for (Group group : groups) {
+      double healthFrames = dt;
+      if (group.shieldPool > 0 && group.incomingShieldDamage > 0) {
+        double shieldDamage = group.incomingShieldDamage * dt;
+        if (shieldDamage < group.shieldPool) {
+          group.shieldPool -= shieldDamage;
+          continue;
+        }
+        healthFrames -= group.shieldPool / group.incomingShieldDamage;
+        group.shieldPool = 0;
+      }
+      group.healthPool = max(0, group.healthPool - group.incomingHealthDamage * healthFrames);
+      if (group.healthPool < EPS * group.initialPool) {
+        group.healthPool = 0;
+        group.shieldPool = 0;
+      }
+    }
+  }
+
+  private static boolean isAlive(List<Group> groups) {
+    for (Group group : groups) {
+      if (group.healthPool > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static double remaining(List<Group> groups) {
+    double initial = 0;
+    double left = 0;
+    for (Group group : groups) {
+      initial += group.initialValue;
+      left += group.value();
+    }
+    return initial == 0 ? 0 : left / initial;
+  }
+
+  private static int survivors(List<Group> groups) {
+    int survivors = 0;
+    for (Group group : groups) {
+      survivors += min(group.count, (int) Math.ceil(group.units() - EPS));
+    }
+    return survivors;
+  }
+
+  private static final class Group {
+    final Agent agent;
+    int count;
+    double healthPool;
+    double shieldPool;
+    double initialPool;
+    double initialValue;
+    double[] shieldRates;
+    double[] healthRates;
+    double incomingShieldDamage;
+    double incomingHealthDamage;
+
+    Group(Agent agent) {
+      this.agent = agent;
+    }
+
+    void add(Agent agent) {
+      count++;
+      healthPool += min(agent.healthShifted, agent.maxHealthShifted);
+      shieldPool += max(0, min(agent.shieldsShifted, agent.maxShieldsShifted));
+    }
+
+    /** Remaining units, fractional if damaged. */
+    double units() {
+      return agent.maxHealthShifted == 0 ? 0 : healthPool / agent.maxHealthShifted;
+    }
+
+    /** Same as {@link Simulator#HEALTH_AND_HALFED_SHIELD}. */
+    double value() {
+      return healthPool + shieldPool / 2;
+    }
+
+    boolean accepts(Agent other) {
+      return agent.isFlyer == other.isFlyer
+          && agent.size == other.size
+          && agent.armorShifted == other.armorShifted
+          && agent.shieldUpgrades == other.shieldUpgrades
+          && agent.maxHealthShifted == other.maxHealthShifted
+          && agent.maxShieldsShifted == other.maxShieldsShifted
+          && agent.detected == other.detected
+          && agent.isHealer == other.isHealer
+          && agent.isSuicider == other.isSuicider
+          && sameDamage(agent.groundWeapon, other.groundWeapon)
+          && sameDamage(agent.airWeapon, other.airWeapon);
+    }
+
+    private static boolean sameDamage(Weapon a, Weapon b) {
+      return a == b
+          || a != null
+              && b != null
+              && a.damageShifted == b.damageShifted
+              && a.hits == b.hits
+              && a.cooldown == b.cooldown
+              && a.damageType == b.damageType;
+    }
+  }
+
+  /**
+   * Estimated outcome. The value is in the [0..1] range, same as {@link
+   * Evaluator.EvaluationResult#value}. It is the remaining fraction of A relative to the remaining
+   * fractions of A and B, using health and half of the shields.
+   */
+  public static final class Result {
+    public final double value;
+    /** True, if no damage will be done by either side. */
+    public final boolean noCombat;
+    /** Remaining fraction of health and halfed shields of A. */
+    public final double remainingA;
+    /** Remaining fraction of health and halfed shields of B. */
+    public final double remainingB;
+    /** Estimated number of surviving agents of A, assuming fire is focused on single units. */
+    public final int survivorsA;
+    /** Estimated number of surviving agents of B, assuming fire is focused on single units. */
+    public final int survivorsB;
+    /** Estimated number of frames the fight lasts. */
+    public final int frames;
+
+    Result(
+        double value,
+        boolean noCombat,
+        double remainingA,
+        double remainingB,
+        int survivorsA,
+        int survivorsB,
+        int frames) {
+      this.value = value;
+      this.noCombat = noCombat;
+      this.remainingA = remainingA;
+      this.remainingB = remainingB;
+      this.survivorsA = survivorsA;
+      this.survivorsB = survivorsB;
+      this.frames = frames;
+    }
+
+    @Override
+    public String toString() {
+      return noCombat
+          ? "Result{NO COMBAT}"
+          : "Result{"
+              + "value="
+              + value
+              + ", survivorsA="
+              + survivorsA
+              + ", survivorsB="
+              + survivorsB
+              + ", frames="
+              + frames
+              + '}';
+    }
+  }
+}
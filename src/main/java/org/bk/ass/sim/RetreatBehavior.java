@@ -19,27 +19,77 @@ public class RetreatBehavior implements Behavior {
     if (agent.burrowed) return false;
     Agent selectedEnemy = null;
     int selectedDistanceSquared = Integer.MAX_VALUE;
-    for (int i = enemies.size() - 1; i >= 0; i--) {
-      Agent enemy = enemies.get(i);
-      Weapon wpn = enemy.weaponVs(agent);
-      // Enemy could be dead already, but skipping it generally doesn't make a difference and it will be gone next frame.
-      if (wpn.damageShifted != 0) {
-        int distanceSq = distanceSquared(agent, enemy);
-        if (distanceSq >= wpn.minRangeSquared && distanceSq < selectedDistanceSquared) {
+    AgentGrid grid = AgentGrid.of(enemies);
+    if (grid != null) {
+      // Prefer the nearest enemy which can hit us right now, none can be further away than maxRange
+      selectedEnemy = grid.nearest(agent, grid.getMaxRange(), RetreatBehavior::isThreat);
+      if (selectedEnemy != null) {
+        selectedDistanceSquared = distanceSquared(agent, selectedEnemy);
+      }
+    }
+    if (selectedEnemy == null) {
+      for (int i = enemies.size() - 1; i >= 0; i--) {
+        Agent enemy = enemies.get(i);
+        Weapon wpn = enemy.weaponVs(agent);
+        // Enemy could be dead already, but skipping it generally doesn't make a difference and
+        // it will be gone next frame.
+        if (wpn.damageShifted != 0) {
+          int distanceSq = distanceSquared(agent, enemy);
+          if (distanceSq >= wpn.minRangeSquared && distanceSq < selectedDistanceSquared) {
+            selectedDistanceSquared = distanceSq;
+            selectedEnemy = enemy;
+
+            // If the enemy can hit us this frame, we're done searching
+            if (selectedDistanceSquared <= wpn.maxRangeSquared) {
+              break;
+            }
+          }
+        }
+      }
+    }
+    if (selectedEnemy == null) {
+      return false;
+    }
+    moveAwayFrom(frames, agent, selectedEnemy, (float) sqrt(selectedDistanceSquared));
+    return true;
+  }
+
+  private static boolean isThreat(Agent agent, Agent enemy) {
+    Weapon wpn = enemy.weaponVs(agent);
+    int distanceSq = distanceSquared(agent, enemy);
+    return wpn.damageShifted != 0
+        && distanceSq >= wpn.minRangeSquared
+        && distanceSq <= wpn.maxRangeSquared;
+  }
+
+  /** Structure-of-arrays variant of {@link #simFlee(int, Agent, UnorderedCollection)}. */
+  static boolean simFlee(int frames, AgentArrays agents, int i, AgentArrays enemies) {
+    if (agents.is(i, AgentArrays.BURROWED)) return false;
+    boolean air = agents.is(i, AgentArrays.FLYER);
+    int selectedEnemy = -1;
+    int selectedDistanceSquared = Integer.MAX_VALUE;
+    for (int j = enemies.size - 1; j >= 0; j--) {
+      int damageShifted = air ? enemies.airDamageShifted[j] : enemies.groundDamageShifted[j];
+      if (damageShifted != 0) {
+        int distanceSq = agents.distanceSquared(i, enemies, j);
+        if (distanceSq >= (air ? enemies.airMinRangeSquared[j] : enemies.groundMinRangeSquared[j])
+            && distanceSq < selectedDistanceSquared) {
           selectedDistanceSquared = distanceSq;
-          selectedEnemy = enemy;
+          selectedEnemy = j;
 
           // If the enemy can hit us this frame, we're done searching
-          if (selectedDistanceSquared <= wpn.maxRangeSquared) {
+          if (selectedDistanceSquared
+              <= (air ? enemies.airMaxRangeSquared[j] : enemies.groundMaxRangeSquared[j])) {
             break;
           }
         }
       }
     }
-    if (selectedEnemy == null) {
+    if (selectedEnemy < 0) {
       return false;
     }
-    moveAwayFrom(frames, agent, selectedEnemy, (float) sqrt(selectedDistanceSquared));
+    AgentUtil.moveAwayFrom(
+        frames, agents, i, enemies, selectedEnemy, (float) sqrt(selectedDistanceSquared));
     return true;
   }
 }
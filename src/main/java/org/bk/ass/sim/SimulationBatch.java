@@ -0,0 +1,133 @@
+package org.bk.ass.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs many independent simulations in parallel. Each scenario is simulated by a {@link Simulator}
+ * created by the given supplier, simulators are reused by later scenarios of the same batch.
+ * Agents of a {@link Scenario} are copied before being simulated, so the same scenario (or agent)
+ * can be used in multiple batches or multiple times within one batch. The result of a scenario
+ * only depends on the scenario itself, not on the thread or order it was simulated in.
+ */
+public class SimulationBatch {
+  private final ForkJoinPool pool;
+  private final Supplier<Simulator> simulatorFactory;
+  private final ConcurrentLinkedQueue<Simulator> simulators = new ConcurrentLinkedQueue<>();
+  final ToIntFunction<Agent> agentEval;
+
+  /**
+   * @param pool the pool to run simulations on, ie. {@link ForkJoinPool#commonPool()}
+   * @param simulatorFactory creates the simulators, at most one per concurrently simulated
+   *     scenario, ie. {@code () -> new Simulator.Builder().withFrameSkip(4).build()}
+   * @param agentEval evaluation used to build the resulting {@link IntEvaluation}s, ie. {@code
+   *     agent -> agent.getHealth() + agent.getShields()}
+   */
+  public SimulationBatch(
+      ForkJoinPool pool, Supplier<Simulator> simulatorFactory, ToIntFunction<Agent> agentEval) {
+    this.pool = Objects.requireNonNull(pool, "pool must be set");
+    this.simulatorFactory =
+        Objects.requireNonNull(simulatorFactory, "simulatorFactory must be set");
+    this.agentEval = Objects.requireNonNull(agentEval, "agentEval must be set");
+  }
+
+  /**
+   * Simulates all scenarios and returns the evaluation of each after simulating. The resulting
+   * array has the same order as the given scenarios. The given agents are not modified.
+   */
+  public IntEvaluation[] simulate(List<Scenario> scenarios) {
+    IntEvaluation[] result = new IntEvaluation[scenarios.size()];
+    if (!scenarios.isEmpty()) {
+      pool.invoke(new SimulateRange(scenarios, result, 0, scenarios.size()));
+    }
+    return result;
+  }
+
+  private IntEvaluation simulate(Scenario scenario) {
+    Simulator simulator = simulators.poll();
+    if (simulator == null) {
+      simulator = simulatorFactory.get();
+    }
+    simulator.setSeed(scenario.seed);
+    simulator.context.rollHits = scenario.rollHits;
+    try {
+      for (Agent agent : scenario.agentsA) {
+        simulator.addAgentA(new Agent(agent));
+      }
+      for (Agent agent : scenario.agentsB) {
+        simulator.addAgentB(new Agent(agent));
+      }
+      simulator.simulate(scenario.frames);
+      return simulator.evalToInt(agentEval);
+    } finally {
+      simulator.reset();
+      simulators.offer(simulator);
+    }
+  }
+
+  private class SimulateRange extends RecursiveAction {
+    private final List<Scenario> scenarios;
+    private final IntEvaluation[] result;
+    private final int from;
+    private final int to;
+
+    SimulateRange(List<Scenario> scenarios, IntEvaluation[] result, int from, int to) {
+      this.scenarios = scenarios;
+      this.result = result;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        result[from] = simulate(scenarios.get(from));
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(
+            new SimulateRange(scenarios, result, from, mid),
+            new SimulateRange(scenarios, result, mid, to));
+      }
+    }
+  }
+
+  /** Describes one engagement to simulate. */
+  public static class Scenario {
+    final List<Agent> agentsA;
+    final List<Agent> agentsB;
+    final int frames;
+    final long seed;
+    boolean rollHits;
+
+    /**
+     * @param agentsA agents of player a, will be copied before simulating
+     * @param agentsB agents of player b, will be copied before simulating
+     * @param frames number of frames to simulate, see {@link Simulator#simulate(int)}
+     */
+    public Scenario(Collection<Agent> agentsA, Collection<Agent> agentsB, int frames) {
+      this(agentsA, agentsB, frames, 0);
+    }
+
+    /**
+     * @param agentsA agents of player a, will be copied before simulating
+     * @param agentsB agents of player b, will be copied before simulating
+     * @param frames number of frames to simulate, see {@link Simulator#simulate(int)}
+     * @param seed used for random decisions made while simulating (ie. fleeing from an agent at
+     *     the same position)
+     */
+    public Scenario(
+        Collection<Agent> agentsA, Collection<Agent> agentsB, int frames, long seed) {
+      this.agentsA = new ArrayList<>(agentsA);
+      this.agentsB = new ArrayList<>(agentsB);
+      this.frames = frames;
+      this.seed = seed;
+    }
+  }
+}
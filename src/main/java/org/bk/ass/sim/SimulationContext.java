@@ -0,0 +1,18 @@
+package org.bk.ass.sim;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random state of a {@link Simulator}. Agents refer to the context of the simulator they are
+ * simulated by, so attacks and movement don't need to look it up.
+ */
+final class SimulationContext {
+  SplittableRandom rnd = new SplittableRandom();
+  /**
+   * If set, ranged attacks randomly hit or miss based on their hit chance. Otherwise, they always
+   * hit but deal damage reduced by the hit chance.
+   */
+  boolean rollHits;
+  /** If set, damage dealt by agents using this context is recorded instead of being applied. */
+  DamageLog deferredDamage;
+}
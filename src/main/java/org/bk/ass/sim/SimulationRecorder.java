@@ -0,0 +1,266 @@
+package org.bk.ass.sim;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import org.bk.ass.collection.UnorderedCollection;
+
+/**
+ * Records a timeline of simulation steps. For each step and side, the number of agents, their
+ * total health and shields and the number of attacks performed are recorded. Deaths of agents are
+ * recorded as separate events. All data is stored in ring buffers preallocated in the
+ * constructor, once they are full the oldest entries will be overwritten.
+ *
+ * <p>Attach it using {@link Simulator#setRecorder(SimulationRecorder)}. Multiple simulations will
+ * be recorded one after the other, unless {@link #clear()} is called in between. A recorder must
+ * not be attached to multiple simulators at the same time.
+ */
+public class SimulationRecorder {
+  public static final int SIDE_A = 0;
+  public static final int SIDE_B = 1;
+
+  static final int MAGIC = 0x53494D52;
+  static final int FORMAT_VERSION = 1;
+
+  private final int[] stepFrame;
+  private final int[] stepAgents;
+  private final int[] stepHealth;
+  private final int[] stepShields;
+  private final int[] stepAttacks;
+  private long steps;
+
+  private final int[] deathFrame;
+  private final int[] deathSide;
+  private final int[] deathX;
+  private final int[] deathY;
+  private final String[] deathName;
+  private long deaths;
+
+  private int frame;
+  private int stepFrames;
+  private final long[] attackCounterTotal = new long[2];
+  private final long[] deadAttackCounter = new long[2];
+
+  /**
+   * @param stepCapacity number of steps to retain
+   * @param deathCapacity number of deaths to retain
+   */
+  public SimulationRecorder(int stepCapacity, int deathCapacity) {
+    if (stepCapacity < 1) throw new IllegalArgumentException("stepCapacity must be >= 1");
+    if (deathCapacity < 1) throw new IllegalArgumentException("deathCapacity must be >= 1");
+    stepFrame = new int[stepCapacity];
+    stepAgents = new int[stepCapacity * 2];
+    stepHealth = new int[stepCapacity * 2];
+    stepShields = new int[stepCapacity * 2];
+    stepAttacks = new int[stepCapacity * 2];
+    deathFrame = new int[deathCapacity];
+    deathSide = new int[deathCapacity];
+    deathX = new int[deathCapacity];
+    deathY = new int[deathCapacity];
+    deathName = new String[deathCapacity];
+  }
+
+  /** Removes all recorded steps and deaths and restarts counting frames at 0. */
+  public void clear() {
+    steps = 0;
+    deaths = 0;
+    frame = 0;
+    Arrays.fill(deathName, null);
+  }
+
+  void start(UnorderedCollection<Agent> agentsA, UnorderedCollection<Agent> agentsB) {
+    attackCounterTotal[SIDE_A] = attackCounterSum(agentsA);
+    attackCounterTotal[SIDE_B] = attackCounterSum(agentsB);
+    deadAttackCounter[SIDE_A] = 0;
+    deadAttackCounter[SIDE_B] = 0;
+  }
+
+  /** Called before each step, which might simulate a different number of frames. */
+  void beginStep(int stepFrames) {
+    this.stepFrames = stepFrames;
+  }
+
+  void recordStep(UnorderedCollection<Agent> agentsA, UnorderedCollection<Agent> agentsB) {
+    frame += stepFrames;
+    int index = (int) (steps++ % stepFrame.length);
+    stepFrame[index] = frame;
+    recordSide(index * 2 + SIDE_A, SIDE_A, agentsA);
+    recordSide(index * 2 + SIDE_B, SIDE_B, agentsB);
+  }
+
+  void recordStep(AgentArrays agentsA, AgentArrays agentsB) {
+    frame += stepFrames;
+    int index = (int) (steps++ % stepFrame.length);
+    stepFrame[index] = frame;
+    recordSide(index * 2 + SIDE_A, SIDE_A, agentsA);
+    recordSide(index * 2 + SIDE_B, SIDE_B, agentsB);
+  }
+
+  void recordDeath(int side, Agent agent) {
+    int index = (int) (deaths++ % deathFrame.length);
+    // Deaths are recorded before the step is completed
+    deathFrame[index] = frame + stepFrames;
+    deathSide[index] = side;
+    deathX[index] = agent.x;
+    deathY[index] = agent.y;
+    deathName[index] = agent.name;
+    deadAttackCounter[side] += agent.attackCounter;
+  }
+
+  /**
+   * Keeps the attacks of an agent removed without dying, ie. interceptors of a dead carrier. It is
+   * not recorded as death.
+   */
+  void recordRemoval(int side, Agent agent) {
+    deadAttackCounter[side] += agent.attackCounter;
+  }
+
+  private void recordSide(int slot, int side, UnorderedCollection<Agent> agents) {
+    int health = 0;
+    int shields = 0;
+    for (int i = agents.size() - 1; i >= 0; i--) {
+      Agent agent = agents.get(i);
+      health += agent.getHealth();
+      shields += agent.getShields();
+    }
+    stepAgents[slot] = agents.size();
+    stepHealth[slot] = health;
+    stepShields[slot] = shields;
+    recordAttacks(slot, side, attackCounterSum(agents));
+  }
+
+  private void recordSide(int slot, int side, AgentArrays agents) {
+    int health = 0;
+    int shields = 0;
+    long attackCounter = 0;
+    for (int i = agents.size - 1; i >= 0; i--) {
+      health += Math.min(agents.healthShifted[i], agents.maxHealthShifted[i]) >> 8;
+      shields += Math.min(agents.shieldsShifted[i], agents.maxShieldsShifted[i]) >> 8;
+      attackCounter += agents.attackCounter[i];
+    }
+    stepAgents[slot] = agents.size;
+    stepHealth[slot] = health;
+    stepShields[slot] = shields;
+    recordAttacks(slot, side, attackCounter);
+  }
+
+  private void recordAttacks(int slot, int side, long livingAttackCounter) {
+    long total = livingAttackCounter + deadAttackCounter[side];
+    stepAttacks[slot] = (int) (total - attackCounterTotal[side]);
+    attackCounterTotal[side] = total;
+  }
+
+  private static long attackCounterSum(UnorderedCollection<Agent> agents) {
+    long sum = 0;
+    for (int i = agents.size() - 1; i >= 0; i--) {
+      sum += agents.get(i).attackCounter;
+    }
+    return sum;
+  }
+
+  /** Number of retained steps. Steps are indexed from 0 (oldest) to this value - 1. */
+  public int getStepCount() {
+    return (int) Math.min(steps, stepFrame.length);
+  }
+
+  /** Frame at the end of the given step, counting from the start of recording. */
+  public int getFrame(int step) {
+    return stepFrame[stepIndex(step)];
+  }
+
+  public int getAgents(int step, int side) {
+    return stepAgents[stepIndex(step) * 2 + side];
+  }
+
+  public int getHealth(int step, int side) {
+    return stepHealth[stepIndex(step) * 2 + side];
+  }
+
+  public int getShields(int step, int side) {
+    return stepShields[stepIndex(step) * 2 + side];
+  }
+
+  /** Number of attacks performed by the given side in the given step. */
+  public int getAttacks(int step, int side) {
+    return stepAttacks[stepIndex(step) * 2 + side];
+  }
+
+  /** Number of retained deaths. Deaths are indexed from 0 (oldest) to this value - 1. */
+  public int getDeathCount() {
+    return (int) Math.min(deaths, deathFrame.length);
+  }
+
+  public int getDeathFrame(int death) {
+    return deathFrame[deathIndex(death)];
+  }
+
+  public int getDeathSide(int death) {
+    return deathSide[deathIndex(death)];
+  }
+
+  public int getDeathX(int death) {
+    return deathX[deathIndex(death)];
+  }
+
+  public int getDeathY(int death) {
+    return deathY[deathIndex(death)];
+  }
+
+  public String getDeathName(int death) {
+    return deathName[deathIndex(death)];
+  }
+
+  private int stepIndex(int step) {
+    if (step < 0 || step >= getStepCount()) {
+      throw new IndexOutOfBoundsException("step " + step + " must be >= 0 and < " + getStepCount());
+    }
+    return (int) ((steps - getStepCount() + step) % stepFrame.length);
+  }
+
+  private int deathIndex(int death) {
+    if (death < 0 || death >= getDeathCount()) {
+      throw new IndexOutOfBoundsException(
+          "death " + death + " must be >= 0 and < " + getDeathCount());
+    }
+    return (int) ((deaths - getDeathCount() + death) % deathFrame.length);
+  }
+
+  /**
+   * Writes all retained steps and deaths, oldest first. The format is (all numbers big-endian
+   * ints, unless noted otherwise):
+   *
+   * <ol>
+   *   <li>magic number 0x53494D52 ("SIMR") and format version
+   *   <li>step count, followed by each step: frame, then agents, health, shields and attacks of
+   *       side A and then of side B
+   *   <li>death count, followed by each death: frame, side (byte), x, y and name (modified UTF-8,
+   *       see {@link DataOutput#writeUTF(String)})
+   * </ol>
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    int stepCount = getStepCount();
+    out.writeInt(stepCount);
+    for (int step = 0; step < stepCount; step++) {
+      int index = stepIndex(step);
+      out.writeInt(stepFrame[index]);
+      for (int side = SIDE_A; side <= SIDE_B; side++) {
+        out.writeInt(stepAgents[index * 2 + side]);
+        out.writeInt(stepHealth[index * 2 + side]);
+        out.writeInt(stepShields[index * 2 + side]);
+        out.writeInt(stepAttacks[index * 2 + side]);
+      }
+    }
+    int deathCount = getDeathCount();
+    out.writeInt(deathCount);
+    for (int death = 0; death < deathCount; death++) {
+      int index = deathIndex(death);
+      out.writeInt(deathFrame[index]);
+      out.writeByte(deathSide[index]);
+      out.writeInt(deathX[index]);
+      out.writeInt(deathY[index]);
+      out.writeUTF(deathName[index] == null ? "" : deathName[index]);
+    }
+  }
+}
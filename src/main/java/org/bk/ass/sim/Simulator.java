@@ -1,12 +1,19 @@
 package org.bk.ass.sim;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.ToIntFunction;
 import org.bk.ass.PositionOutOfBoundsException;
 import org.bk.ass.collection.UnorderedCollection;
+import org.bk.ass.grid.Grid;
+import org.bk.ass.sim.SimulationBatch.Scenario;
 
 /**
  * Used to simulate 2 groups of agents engaging each other. Either use the default constructor which
@@ -32,47 +39,98 @@ public class Simulator {
       agent -> agent.getHealth() + agent.getShields() / 2;
 
   private static final int MAX_MAP_DIMENSION = 8192;
+  /** Maximum number of agents deciding in one task of a parallel step. */
+  private static final int PARALLEL_CHUNK_SIZE = 64;
+  /** Parallel steps with fewer agents run all chunks on the calling thread. */
+  private static final int PARALLEL_MIN_AGENTS = 2 * PARALLEL_CHUNK_SIZE;
   private static final int TILE_SIZE = 16;
-  private static final int COLLISION_MAP_DIMENSION = MAX_MAP_DIMENSION / TILE_SIZE;
-  private final UnorderedCollection<Agent> playerA = new UnorderedCollection<>();
-  private final UnorderedCollection<Agent> playerB = new UnorderedCollection<>();
+  private static final int DISTRIBUTION_POSITION_JITTER = 8;
+  private final AgentGrid.IndexedAgents playerA = new AgentGrid.IndexedAgents();
+  private final AgentGrid.IndexedAgents playerB = new AgentGrid.IndexedAgents();
 
-  final byte[] collision = new byte[COLLISION_MAP_DIMENSION * COLLISION_MAP_DIMENSION];
+  final CollisionMap collision = new CollisionMap();
+  final SimulationContext context = new SimulationContext();
   private final Behavior playerABehavior;
   private final Behavior playerBBehavior;
-  private final int frameSkip;
+  final int frameSkip;
+  final int maxFrameSkip;
+  private final StepBounds stepBounds = new StepBounds();
   private final SimulatorDeathContext deathContext = new SimulatorDeathContext();
+  private SimulationRecorder recorder;
+  private final AgentArrays arraysA;
+  private final AgentArrays arraysB;
+  private final boolean parallelStep;
+  private final List<StepChunk> stepChunks = new ArrayList<>();
+  private final WalkabilityMap walkability;
+  // Kept, so that its simulators are reused by the next simulateDistribution call
+  private SimulationBatch distributionBatch;
 
-  private Simulator(int frameSkip, Behavior playerABehavior, Behavior playerBBehavior) {
+  private Simulator(
+      int frameSkip,
+      int maxFrameSkip,
+      Behavior playerABehavior,
+      Behavior playerBBehavior,
+      boolean structureOfArrays,
+      boolean spatialIndex,
+      boolean parallelStep,
+      WalkabilityMap walkability) {
     if (frameSkip < 1) throw new IllegalArgumentException("frameSkip must be >= 1");
+    if (maxFrameSkip < frameSkip)
+      throw new IllegalArgumentException("maxFrameSkip must be >= frameSkip");
     Objects.requireNonNull(playerABehavior, "Behavior of player A must be set");
     Objects.requireNonNull(playerBBehavior, "Behavior of player B must be set");
 
     this.playerABehavior = playerABehavior;
     this.playerBBehavior = playerBBehavior;
     this.frameSkip = frameSkip;
+    this.maxFrameSkip = maxFrameSkip;
+    this.parallelStep = parallelStep;
+    this.walkability = walkability;
+    if (structureOfArrays) {
+      arraysA = new AgentArrays(context);
+      arraysB = new AgentArrays(context);
+    } else {
+      arraysA = null;
+      arraysB = null;
+    }
+    if (spatialIndex) {
+      playerA.grid = new AgentGrid();
+      playerB.grid = new AgentGrid();
+    }
+  }
+
+  /**
+   * Reseeds the random number generator used for hit rolls and random decisions (ie. fleeing from
+   * an agent at the same position). Simulating the same agents afterwards will be reproducible.
+   */
+  public void setSeed(long seed) {
+    context.rnd = new SplittableRandom(seed);
   }
 
   public Simulator addAgentA(Agent agent) {
     playerA.add(agent);
     if (!agent.isFlyer) {
-      collision[colindex(agent.x, agent.y)]++;
+      collision.increment(colindex(agent.x, agent.y));
     }
     return this;
   }
 
   public void removeAgentA(Agent agent) {
-    playerA.remove(agent);
+    if (playerA.remove(agent) && !agent.isFlyer) {
+      collision.decrement(colindex(agent.x, agent.y));
+    }
   }
 
   public void removeAgentB(Agent agent) {
-    playerB.remove(agent);
+    if (playerB.remove(agent) && !agent.isFlyer) {
+      collision.decrement(colindex(agent.x, agent.y));
+    }
   }
 
   public Simulator addAgentB(Agent agent) {
     playerB.add(agent);
     if (!agent.isFlyer) {
-      collision[colindex(agent.x, agent.y)]++;
+      collision.increment(colindex(agent.x, agent.y));
     }
     return this;
   }
@@ -106,6 +164,82 @@ public class Simulator {
     return new IntEvaluation(evalA, evalB);
   }
 
+  /**
+   * Estimates the distribution of outcomes when simulating 4 seconds into the future, evaluating
+   * using {@link #HEALTH_AND_HALFED_SHIELD}. See {@link #simulateDistribution(int, long, int,
+   * ToIntFunction)}.
+   */
+  public EvaluationDistribution simulateDistribution(int runs, long seed) {
+    return simulateDistribution(runs, seed, 96, HEALTH_AND_HALFED_SHIELD);
+  }
+
+  /**
+   * Estimates the distribution of outcomes by simulating the current agents multiple times. Each
+   * run starts with agent positions jittered by up to {@value #DISTRIBUTION_POSITION_JITTER}
+   * pixels and agents in a random order (which affects ties when selecting targets). Ranged
+   * attacks will randomly hit or miss instead of dealing the expected damage. The same seed and
+   * agents will always yield the same distribution.
+   *
+   * <p>Runs are simulated in parallel on the {@link ForkJoinPool#commonPool()}, using simulators
+   * with the same settings as this one. They are created once and reused by later calls. Custom
+   * behaviors must be thread-safe. The agents of this simulator are not modified.
+   *
+   * @param runs number of simulations to run
+   * @param seed seed for all random decisions
+   * @param frames number of frames to simulate in each run, see {@link #simulate(int)}
+   * @param agentEval evaluation applied to the agents after each run
+   */
+  public EvaluationDistribution simulateDistribution(
+      int runs, long seed, int frames, ToIntFunction<Agent> agentEval) {
+    if (runs < 1) throw new IllegalArgumentException("runs must be >= 1");
+    SplittableRandom rnd = new SplittableRandom(seed);
+    List<Scenario> scenarios = new ArrayList<>(runs);
+    for (int i = 0; i < runs; i++) {
+      Scenario scenario =
+          new Scenario(jittered(playerA, rnd), jittered(playerB, rnd), frames, rnd.nextLong());
+      scenario.rollHits = true;
+      scenarios.add(scenario);
+    }
+    if (distributionBatch == null || distributionBatch.agentEval != agentEval) {
+      boolean structureOfArrays = arraysA != null;
+      boolean spatialIndex = playerA.grid != null;
+      distributionBatch =
+          new SimulationBatch(
+              ForkJoinPool.commonPool(),
+              () ->
+                  new Simulator(
+                      frameSkip,
+                      maxFrameSkip,
+                      playerABehavior,
+                      playerBBehavior,
+                      structureOfArrays,
+                      spatialIndex,
+                      parallelStep,
+                      walkability),
+              agentEval);
+    }
+    return new EvaluationDistribution(distributionBatch.simulate(scenarios));
+  }
+
+  private static List<Agent> jittered(UnorderedCollection<Agent> agents, SplittableRandom rnd) {
+    List<Agent> result = new ArrayList<>(agents.size());
+    for (int i = 0; i < agents.size(); i++) {
+      Agent agent = new Agent(agents.get(i));
+      agent.nx = jittered(agent.nx, rnd);
+      agent.ny = jittered(agent.ny, rnd);
+      // Inside-out shuffle
+      result.add(agent);
+      Collections.swap(result, rnd.nextInt(result.size()), result.size() - 1);
+    }
+    return result;
+  }
+
+  private static int jittered(int position, SplittableRandom rnd) {
+    int jittered =
+        position + rnd.nextInt(-DISTRIBUTION_POSITION_JITTER, DISTRIBUTION_POSITION_JITTER + 1);
+    return Math.max(0, Math.min(MAX_MAP_DIMENSION - 1, jittered));
+  }
+
   /**
    * Simulates 4 seconds into the future.
    *
@@ -122,14 +256,31 @@ public class Simulator {
    * @return the number of frames left after simulating, usually 0
    */
   public int simulate(int frames) {
+    return simulate(frames, null, 1);
+  }
+
+  /**
+   * Simulate the given number of frames, but stop early if the given condition is met. The
+   * condition is checked every <code>checkInterval</code> steps (a step simulates <code>frameSkip
+   * </code> frames, or more with adaptive frame skip). Larger intervals reduce the overhead of
+   * checking, but might simulate a bit more than needed.
+   *
+   * @param frames see {@link #simulate(int)}
+   * @param stopCondition condition to stop the simulation early, or null
+   * @param checkInterval number of steps between checks, must be at least 1
+   * @return the number of frames left after simulating
+   */
+  public int simulate(int frames, StopCondition stopCondition, int checkInterval) {
+    if (checkInterval < 1) throw new IllegalArgumentException("checkInterval must be >= 1");
     if (frames > 0) frames += Math.floorMod(frameSkip - frames, frameSkip);
     for (int i = playerA.size() - 1; i >= 0; i--) {
       Agent agent = playerA.get(i);
+      agent.context = context;
       if (!agent.isFlyer) {
         int oldCI = colindex(agent.x, agent.y);
         int newCI = colindex(agent.nx, agent.ny);
-        collision[oldCI]--;
-        collision[newCI]++;
+        collision.decrement(oldCI);
+        collision.increment(newCI);
       }
       agent.x = agent.nx;
       agent.y = agent.ny;
@@ -137,20 +288,40 @@ public class Simulator {
     }
     for (int i = playerB.size() - 1; i >= 0; i--) {
       Agent agent = playerB.get(i);
+      agent.context = context;
       if (!agent.isFlyer) {
         int oldCI = colindex(agent.x, agent.y);
         int newCI = colindex(agent.nx, agent.ny);
-        collision[oldCI]--;
-        collision[newCI]++;
+        collision.decrement(oldCI);
+        collision.increment(newCI);
       }
       agent.x = agent.nx;
       agent.y = agent.ny;
       checkBounds(agent);
     }
-    while (frames != 0 && !playerA.isEmpty() && !playerB.isEmpty()) {
-      frames -= frameSkip;
-      if (!step()) {
-        break;
+    if (recorder != null) {
+      recorder.start(playerA, playerB);
+    }
+    if (stopCondition != null) {
+      stopCondition.start(this);
+    }
+    boolean plainAttackers = (arraysA != null || parallelStep) && onlyPlainAttackers();
+    if (arraysA != null && plainAttackers) {
+      frames = simulateArrays(frames, stopCondition, checkInterval);
+    } else {
+      boolean parallel = parallelStep && plainAttackers;
+      int steps = 0;
+      while (frames != 0 && !playerA.isEmpty() && !playerB.isEmpty()) {
+        int stepFrames = nextStepFrames(frames, false);
+        frames -= stepFrames;
+        if (!step(stepFrames, parallel)) {
+          break;
+        }
+        if (stopCondition != null
+            && ++steps % checkInterval == 0
+            && stopCondition.shouldStop(this)) {
+          break;
+        }
       }
     }
     playerA.clearReferences();
@@ -168,15 +339,66 @@ public class Simulator {
     return frames;
   }
 
-  public void reset() {
-    for (int i = playerA.size() - 1; i >= 0; i--) {
-      Agent agent = playerA.get(i);
-      collision[colindex(agent.x, agent.y)] = 0;
+  /**
+   * Attaches a recorder, which will record a timeline of all following simulations. Use null to
+   * detach it again. Without a recorder, there is no recording overhead.
+   */
+  public void setRecorder(SimulationRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  /** Captures the current state of all agents. */
+  public SimulatorSnapshot snapshot() {
+    return snapshot(new SimulatorSnapshot());
+  }
+
+  /**
+   * Captures the current state of all agents into the given snapshot, overwriting its previous
+   * content.
+   *
+   * @return the given snapshot
+   */
+  public SimulatorSnapshot snapshot(SimulatorSnapshot snapshot) {
+    snapshot.capture(playerA, playerB);
+    return snapshot;
+  }
+
+  /**
+   * Restores the agents and their state captured in the given snapshot. Agents added after taking
+   * the snapshot will be removed, agents that died will be added again.
+   */
+  public void restore(SimulatorSnapshot snapshot) {
+    removeCollisions(playerA);
+    removeCollisions(playerB);
+    playerA.clear();
+    playerB.clear();
+    snapshot.restore(playerA, playerB);
+    addCollisions(playerA);
+    addCollisions(playerB);
+    playerA.clearReferences();
+    playerB.clearReferences();
+  }
+
+  private void removeCollisions(UnorderedCollection<Agent> agents) {
+    for (int i = agents.size() - 1; i >= 0; i--) {
+      Agent agent = agents.get(i);
+      if (!agent.isFlyer) {
+        collision.decrement(colindex(agent.x, agent.y));
+      }
     }
-    for (int i = playerB.size() - 1; i >= 0; i--) {
-      Agent agent = playerB.get(i);
-      collision[colindex(agent.x, agent.y)] = 0;
+  }
+
+  private void addCollisions(UnorderedCollection<Agent> agents) {
+    for (int i = agents.size() - 1; i >= 0; i--) {
+      Agent agent = agents.get(i);
+      if (!agent.isFlyer) {
+        collision.increment(colindex(agent.x, agent.y));
+      }
     }
+  }
+
+  public void reset() {
+    collision.clear();
     resetUnits();
   }
 
@@ -186,40 +408,323 @@ public class Simulator {
   }
 
   /**
-   * Simulate one frame.
+   * Simulate one step of the given number of frames.
    *
+   * @param parallel if true, agents decide in parallel, see {@link #simUnitsInParallel(int)}
    * @return false, if nothing happened in this step and the sim can be aborted.
    */
-  private boolean step() {
+  private boolean step(int stepFrames, boolean parallel) {
+    if (recorder != null) {
+      recorder.beginStep(stepFrames);
+    }
+    if (playerA.grid != null) {
+      playerA.grid.rebuild(playerA);
+      playerB.grid.rebuild(playerB);
+    }
+    boolean simRunning = false;
+    if (parallel) {
+      simRunning = simUnitsInParallel(stepFrames);
+    } else {
+      for (int i = playerA.size() - 1; i >= 0; i--) {
+        Agent agent = playerA.get(i);
+        simRunning |=
+            agent.isStasised()
+                || agent.sleepTimer > 0
+                || playerABehavior.simUnit(stepFrames, agent, playerA, playerB);
+      }
+      for (int i = playerB.size() - 1; i >= 0; i--) {
+        Agent agent = playerB.get(i);
+        simRunning |=
+            agent.isStasised()
+                || agent.sleepTimer > 0
+                || playerBBehavior.simUnit(stepFrames, agent, playerB, playerA);
+      }
+    }
+    removeDead(playerA);
+    removeDead(playerB);
+    updateStats(playerA, stepFrames);
+    updateStats(playerB, stepFrames);
+    if (recorder != null) {
+      recorder.recordStep(playerA, playerB);
+    }
+    return simRunning;
+  }
+
+  /**
+   * Lets the agents of both players decide in chunks, which run concurrently for large battles.
+   * Each chunk records its damage and gets its own random state split from the simulator's. Damage
+   * is applied once all agents decided, in the same order as the sequential step would. Speeds are
+   * updated before, as agents look at the speed of their targets. So no agent modifies state
+   * another agent reads while deciding, and the outcome does not depend on the number of threads.
+   */
+  private boolean simUnitsInParallel(int stepFrames) {
+    updateSpeeds(playerA);
+    updateSpeeds(playerB);
+    int chunks = prepareChunks(0, stepFrames, playerA, playerB, playerABehavior);
+    chunks = prepareChunks(chunks, stepFrames, playerB, playerA, playerBBehavior);
+    List<StepChunk> active = stepChunks.subList(0, chunks);
+    if (playerA.size() + playerB.size() < PARALLEL_MIN_AGENTS) {
+      for (int i = 0; i < chunks; i++) {
+        active.get(i).simUnits();
+      }
+    } else if (ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(active);
+    } else {
+      ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(active)));
+    }
     boolean simRunning = false;
+    for (int i = 0; i < chunks; i++) {
+      StepChunk chunk = active.get(i);
+      chunk.damage.apply();
+      simRunning |= chunk.simRunning;
+    }
+    return simRunning;
+  }
+
+  private static void updateSpeeds(UnorderedCollection<Agent> agents) {
+    for (int i = agents.size() - 1; i >= 0; i--) {
+      agents.get(i).updateSpeed();
+    }
+  }
+
+  private int prepareChunks(
+      int chunks,
+      int stepFrames,
+      UnorderedCollection<Agent> allies,
+      UnorderedCollection<Agent> enemies,
+      Behavior behavior) {
+    for (int to = allies.size(); to > 0; to -= PARALLEL_CHUNK_SIZE) {
+      if (chunks == stepChunks.size()) {
+        stepChunks.add(new StepChunk());
+      }
+      StepChunk chunk = stepChunks.get(chunks++);
+      chunk.reinitialize();
+      chunk.stepFrames = stepFrames;
+      chunk.allies = allies;
+      chunk.enemies = enemies;
+      chunk.behavior = behavior;
+      chunk.from = Math.max(0, to - PARALLEL_CHUNK_SIZE);
+      chunk.to = to;
+      chunk.context.rnd = context.rnd.split();
+      chunk.context.rollHits = context.rollHits;
+    }
+    return chunks;
+  }
+
+  /**
+   * Returns the number of frames the next step should simulate. That is frameSkip, unless adaptive
+   * frame skip is used. Then up to maxFrameSkip frames are simulated at once, as long as no agent
+   * is expected to be in range of an enemy and ready to attack before the step ends.
+   */
+  private int nextStepFrames(int framesLeft, boolean arrays) {
+    if (maxFrameSkip == frameSkip) {
+      return frameSkip;
+    }
+    stepBounds.clear(2 * frameSkip);
+    if (arrays) {
+      stepBounds.add(arraysA, arraysB, stepBounds.sideA);
+      stepBounds.add(arraysB, arraysA, stepBounds.sideB);
+    } else {
+      stepBounds.add(playerA, stepBounds.sideA);
+      stepBounds.add(playerB, stepBounds.sideB);
+    }
+    if (stepBounds.isFine()) {
+      return frameSkip;
+    }
+    int frames = Math.min(maxFrameSkip, stepBounds.framesUntilAction());
+    if (framesLeft > 0) {
+      frames = Math.min(frames, framesLeft);
+    }
+    return Math.max(frameSkip, frames - frames % frameSkip);
+  }
+
+  /**
+   * True, if both players use the default {@link AttackerBehavior} and no agent is a healer,
+   * repairer or suicider or has a death handler.
+   */
+  private boolean onlyPlainAttackers() {
+    if (!isPlainAttacker(playerABehavior) || !isPlainAttacker(playerBBehavior)) {
+      return false;
+    }
     for (int i = playerA.size() - 1; i >= 0; i--) {
-      Agent agent = playerA.get(i);
-      simRunning |=
-          agent.isStasised()
-              || agent.sleepTimer > 0
-              || playerABehavior.simUnit(frameSkip, agent, playerA, playerB);
+      if (!AgentArrays.isSupported(playerA.get(i))) {
+        return false;
+      }
     }
     for (int i = playerB.size() - 1; i >= 0; i--) {
-      Agent agent = playerB.get(i);
+      if (!AgentArrays.isSupported(playerB.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isPlainAttacker(Behavior behavior) {
+    return behavior.getClass() == AttackerBehavior.class
+        || behavior.getClass() == RoleBasedBehavior.class
+            && ((RoleBasedBehavior) behavior).attackerSimulator.getClass()
+                == AttackerBehavior.class;
+  }
+
+  /**
+   * Same as the main loop of {@link #simulate(int)}, but running on the {@link AgentArrays}. The
+   * {@link Agent}s are only updated once the simulation is done.
+   */
+  private int simulateArrays(int frames, StopCondition stopCondition, int checkInterval) {
+    arraysA.load(playerA);
+    arraysB.load(playerB);
+    arraysA.resolveTargets(arraysB);
+    arraysB.resolveTargets(arraysA);
+    int steps = 0;
+    while (frames != 0 && arraysA.size > 0 && arraysB.size > 0) {
+      int stepFrames = nextStepFrames(frames, true);
+      frames -= stepFrames;
+      if (!stepArrays(stepFrames)) {
+        break;
+      }
+      if (stopCondition != null && ++steps % checkInterval == 0) {
+        // Conditions look at the agents, so they need to be up to date
+        storeArrays(arraysA, arraysB, playerA);
+        storeArrays(arraysB, arraysA, playerB);
+        if (stopCondition.shouldStop(this)) {
+          break;
+        }
+      }
+    }
+    storeArrays(arraysA, arraysB, playerA);
+    storeArrays(arraysB, arraysA, playerB);
+    arraysA.clearReferences();
+    arraysB.clearReferences();
+    return frames;
+  }
+
+  private static void storeArrays(
+      AgentArrays agents, AgentArrays enemies, UnorderedCollection<Agent> target) {
+    target.clear();
+    for (int i = 0; i < agents.size; i++) {
+      agents.store(i, enemies);
+      target.add(agents.agents[i]);
+    }
+  }
+
+  private boolean stepArrays(int stepFrames) {
+    if (recorder != null) {
+      recorder.beginStep(stepFrames);
+    }
+    boolean simRunning = false;
+    for (int i = arraysA.size - 1; i >= 0; i--) {
       simRunning |=
-          agent.isStasised()
-              || agent.sleepTimer > 0
-              || playerBBehavior.simUnit(frameSkip, agent, playerB, playerA);
+          arraysA.isStasised(i)
+              || arraysA.sleepTimer[i] > 0
+              || AttackerBehavior.simUnit(stepFrames, arraysA, i, arraysB);
+    }
+    for (int i = arraysB.size - 1; i >= 0; i--) {
+      simRunning |=
+          arraysB.isStasised(i)
+              || arraysB.sleepTimer[i] > 0
+              || AttackerBehavior.simUnit(stepFrames, arraysB, i, arraysA);
+    }
+    removeDead(arraysA, arraysB);
+    removeDead(arraysB, arraysA);
+    updateStats(arraysA, stepFrames);
+    updateStats(arraysB, stepFrames);
+    if (recorder != null) {
+      recorder.recordStep(arraysA, arraysB);
     }
-    removeDead(playerA);
-    removeDead(playerB);
-    updateStats(playerA);
-    updateStats(playerB);
     return simRunning;
   }
 
+  private void removeDead(AgentArrays agents, AgentArrays enemies) {
+    int i = 0;
+    while (i < agents.size) {
+      if (agents.healthShifted[i] < 1) {
+        agents.store(i, enemies);
+        Agent agent = agents.removeAt(i, enemies);
+        if (!agent.isFlyer) {
+          collision.decrement(colindex(agent.x, agent.y));
+        }
+        if (recorder != null) {
+          recorder.recordDeath(
+              agents == arraysA ? SimulationRecorder.SIDE_A : SimulationRecorder.SIDE_B, agent);
+        }
+      } else {
+        i++;
+      }
+    }
+  }
+
+  private void updateStats(AgentArrays agents, int stepFrames) {
+    for (int i = agents.size - 1; i >= 0; i--) {
+      assert agents.healthShifted[i] >= 0;
+
+      updatePosition(agents, i);
+      agents.vx[i] = 0;
+      agents.vy[i] = 0;
+      agents.sleepTimer[i] -= stepFrames;
+      agents.stasisTimer[i] -= stepFrames;
+
+      agents.cooldown[i] -= stepFrames;
+      agents.shieldsShifted[i] += 7 * stepFrames;
+      int plagueDamage = agents.plagueDamagePerFrameShifted[i] * stepFrames;
+      if (plagueDamage < agents.healthShifted[i]) agents.healthShifted[i] -= plagueDamage;
+      agents.stimTimer[i] -= stepFrames;
+      agents.ensnareTimer[i] -= stepFrames;
+      if (agents.is(i, AgentArrays.REGENERATES_HEALTH)) agents.healthShifted[i] += 4 * stepFrames;
+      agents.energyShifted[i] += 8 * stepFrames;
+      agents.updateTargetable(i);
+    }
+  }
+
+  private void updatePosition(AgentArrays agents, int i) {
+    int x = agents.x[i];
+    int y = agents.y[i];
+    int tx = x + agents.vx[i];
+    int ty = y + agents.vy[i];
+    if (tx < 0 || ty < 0 || tx >= MAX_MAP_DIMENSION || ty >= MAX_MAP_DIMENSION) {
+      return;
+    }
+
+    if (!agents.is(i, AgentArrays.FLYER)) {
+      if (walkability != null && !walkability.canMove(x, y, tx, ty)) {
+        // Slide along walls if possible
+        if (walkability.canMove(x, y, tx, y)) {
+          ty = y;
+        } else if (walkability.canMove(x, y, x, ty)) {
+          tx = x;
+        } else {
+          return;
+        }
+      }
+      int oldCI = colindex(x, y);
+      int newCI = colindex(tx, ty);
+      if (oldCI != newCI) {
+        if (collision.get(newCI) > TILE_SIZE / 8 - 1) {
+          int cx = x / TILE_SIZE * TILE_SIZE;
+          int cy = y / TILE_SIZE * TILE_SIZE;
+          tx = Math.max(cx, Math.min(cx + TILE_SIZE - 1, tx));
+          ty = Math.max(cy, Math.min(cy + TILE_SIZE - 1, ty));
+        } else {
+          collision.decrement(oldCI);
+          collision.increment(newCI);
+        }
+      }
+    }
+
+    agents.x[i] = tx;
+    agents.y[i] = ty;
+  }
+
   private void removeDead(UnorderedCollection<Agent> agents) {
     int i = 0;
     while (i < agents.size()) {
       if (agents.get(i).healthShifted < 1) {
         Agent agent = agents.removeAt(i);
         if (!agent.isFlyer) {
-          collision[colindex(agent.x, agent.y)]--;
+          collision.decrement(colindex(agent.x, agent.y));
+        }
+        if (recorder != null) {
+          recorder.recordDeath(
+              agents == playerA ? SimulationRecorder.SIDE_A : SimulationRecorder.SIDE_B, agent);
         }
         deathContext.deadUnit = agent;
         deathContext.myUnits = agents;
@@ -230,7 +735,7 @@ public class Simulator {
     }
   }
 
-  private void updateStats(UnorderedCollection<Agent> agents) {
+  private void updateStats(UnorderedCollection<Agent> agents, int stepFrames) {
     for (int i = agents.size() - 1; i >= 0; i--) {
       Agent agent = agents.get(i);
 
@@ -240,20 +745,20 @@ public class Simulator {
       agent.vx = 0;
       agent.vy = 0;
       agent.healedThisFrame = false;
-      agent.sleepTimer -= frameSkip;
-      agent.stasisTimer -= frameSkip;
+      agent.sleepTimer -= stepFrames;
+      agent.stasisTimer -= stepFrames;
 
       // Since these calls are potentially made every frame, no boundary checks are done for
       // performance reasons!
       // Bounds are established when the fields are modified.
-      agent.cooldown -= frameSkip;
-      agent.shieldsShifted += 7 * frameSkip;
-      if (agent.plagueDamagePerFrameShifted * frameSkip < agent.healthShifted)
-        agent.healthShifted -= agent.plagueDamagePerFrameShifted * frameSkip;
-      agent.stimTimer -= frameSkip;
-      agent.ensnareTimer -= frameSkip;
-      if (agent.regeneratesHealth) agent.healthShifted += 4 * frameSkip;
-      agent.energyShifted += 8 * frameSkip;
+      agent.cooldown -= stepFrames;
+      agent.shieldsShifted += 7 * stepFrames;
+      if (agent.plagueDamagePerFrameShifted * stepFrames < agent.healthShifted)
+        agent.healthShifted -= agent.plagueDamagePerFrameShifted * stepFrames;
+      agent.stimTimer -= stepFrames;
+      agent.ensnareTimer -= stepFrames;
+      if (agent.regeneratesHealth) agent.healthShifted += 4 * stepFrames;
+      agent.energyShifted += 8 * stepFrames;
     }
   }
 
@@ -265,17 +770,27 @@ public class Simulator {
     }
 
     if (!agent.isFlyer) {
+      if (walkability != null && !walkability.canMove(agent.x, agent.y, tx, ty)) {
+        // Slide along walls if possible
+        if (walkability.canMove(agent.x, agent.y, tx, agent.y)) {
+          ty = agent.y;
+        } else if (walkability.canMove(agent.x, agent.y, agent.x, ty)) {
+          tx = agent.x;
+        } else {
+          return;
+        }
+      }
       int oldCI = colindex(agent.x, agent.y);
       int newCI = colindex(tx, ty);
       if (oldCI != newCI) {
-        if (collision[newCI] > TILE_SIZE / 8 - 1) {
+        if (collision.get(newCI) > TILE_SIZE / 8 - 1) {
           int cx = agent.x / TILE_SIZE * TILE_SIZE;
           int cy = agent.y / TILE_SIZE * TILE_SIZE;
           tx = Math.max(cx, Math.min(cx + TILE_SIZE - 1, tx));
           ty = Math.max(cy, Math.min(cy + TILE_SIZE - 1, ty));
         } else {
-          collision[oldCI]--;
-          collision[newCI]++;
+          collision.decrement(oldCI);
+          collision.increment(newCI);
         }
       }
     }
@@ -285,7 +800,7 @@ public class Simulator {
   }
 
   private int colindex(int tx, int ty) {
-    return ty / TILE_SIZE * COLLISION_MAP_DIMENSION + tx / TILE_SIZE;
+    return CollisionMap.index(tx, ty);
   }
 
   /** Dispatches behaviors based on the role in combat. */
@@ -332,6 +847,61 @@ public class Simulator {
     }
   }
 
+  /**
+   * Decides whether a simulation can be stopped early, ie. because the outcome is already clear.
+   * See {@link #simulate(int, StopCondition, int)}. Conditions might keep state from {@link
+   * #start(Simulator)} on, so don't use the same instance in multiple simulations at the same time.
+   */
+  public interface StopCondition {
+
+    /** Called once before simulating, ie. to record the initial state. */
+    default void start(Simulator simulator) {}
+
+    /** Returns true, if the simulation should be stopped. */
+    boolean shouldStop(Simulator simulator);
+
+    /**
+     * Stops once either side lost at least the given fraction (0 - 1) of its evaluation at the
+     * start of the simulation.
+     */
+    static StopCondition sideLost(double fraction, ToIntFunction<Agent> agentEval) {
+      return new StopCondition() {
+        private int thresholdA;
+        private int thresholdB;
+
+        @Override
+        public void start(Simulator simulator) {
+          IntEvaluation evaluation = simulator.evalToInt(agentEval);
+          thresholdA = (int) (evaluation.evalA * (1 - fraction));
+          thresholdB = (int) (evaluation.evalB * (1 - fraction));
+        }
+
+        @Override
+        public boolean shouldStop(Simulator simulator) {
+          IntEvaluation evaluation = simulator.evalToInt(agentEval);
+          return evaluation.evalA <= thresholdA || evaluation.evalB <= thresholdB;
+        }
+      };
+    }
+
+    /**
+     * Stops once the evaluation of one side is at least <code>ratio</code> times the evaluation
+     * of the other side.
+     */
+    static StopCondition evalRatioReached(double ratio, ToIntFunction<Agent> agentEval) {
+      return simulator -> {
+        IntEvaluation evaluation = simulator.evalToInt(agentEval);
+        return evaluation.evalA >= ratio * evaluation.evalB
+            || evaluation.evalB >= ratio * evaluation.evalA;
+      };
+    }
+
+    /** Stops once the given agent died. */
+    static StopCondition agentDied(Agent agent) {
+      return simulator -> agent.healthShifted < 1;
+    }
+  }
+
   /**
    * Implementations define what action to take for an agent in regards to its allies and/or
    * enemies.
@@ -349,10 +919,188 @@ public class Simulator {
         UnorderedCollection<Agent> enemies);
   }
 
+  /** Consecutive agents of one player deciding in a parallel step. */
+  private static final class StepChunk extends RecursiveAction {
+    final SimulationContext context = new SimulationContext();
+    final DamageLog damage = new DamageLog();
+    int stepFrames;
+    UnorderedCollection<Agent> allies;
+    UnorderedCollection<Agent> enemies;
+    Behavior behavior;
+    int from;
+    int to;
+    boolean simRunning;
+
+    StepChunk() {
+      context.deferredDamage = damage;
+    }
+
+    @Override
+    protected void compute() {
+      simUnits();
+    }
+
+    void simUnits() {
+      boolean running = false;
+      for (int i = to - 1; i >= from; i--) {
+        Agent agent = allies.get(i);
+        SimulationContext simulatorContext = agent.context;
+        agent.context = context;
+        running |=
+            agent.isStasised()
+                || agent.sleepTimer > 0
+                || behavior.simUnit(stepFrames, agent, allies, enemies);
+        agent.context = simulatorContext;
+      }
+      simRunning = running;
+    }
+  }
+
+  /**
+   * Bounds of both sides used to determine how many frames can be skipped without missing agents
+   * getting in range or becoming able to act.
+   */
+  private static final class StepBounds {
+    final int[] sideA = new int[4];
+    final int[] sideB = new int[4];
+    int maxRange;
+    float maxSpeed;
+    /** Minimum frames until an agent with an attack target can attack it. */
+    int minTargetedFrames;
+    /** Minimum frames until an agent without an attack target is ready. */
+    int minUntargetedFrames;
+    /** Once an agent can attack in less frames, the bounds are not relevant anymore. */
+    int fineFrames;
+
+    void clear(int fineFrames) {
+      this.fineFrames = fineFrames;
+      sideA[0] = sideB[0] = Integer.MAX_VALUE;
+      sideA[1] = sideB[1] = Integer.MAX_VALUE;
+      sideA[2] = sideB[2] = Integer.MIN_VALUE;
+      sideA[3] = sideB[3] = Integer.MIN_VALUE;
+      maxRange = 0;
+      maxSpeed = 0;
+      minTargetedFrames = Integer.MAX_VALUE;
+      minUntargetedFrames = Integer.MAX_VALUE;
+    }
+
+    void add(UnorderedCollection<Agent> agents, int[] box) {
+      for (int i = agents.size() - 1; i >= 0 && !isFine(); i--) {
+        Agent agent = agents.get(i);
+        addPosition(box, agent.x, agent.y);
+        // Speed is only updated when moving, it might not be set yet
+        float speed = agent.computeSpeed();
+        maxSpeed = Math.max(maxSpeed, speed);
+        int range = Math.max(agent.groundWeapon.maxRange, agent.airWeapon.maxRange);
+        if (agent.groundSeekRangeSquared > 0) {
+          range = Math.max(range, (int) Math.sqrt(agent.groundSeekRangeSquared) + 1);
+        }
+        maxRange = Math.max(maxRange, range);
+        if (agent.isHealer || agent.isRepairer || agent.isSuicider) {
+          // Not bound by a weapon cooldown, but also not acting before the forces get in contact
+          minUntargetedFrames = 0;
+        } else if (agent.groundWeapon.damageShifted > 0 || agent.airWeapon.damageShifted > 0) {
+          int idleFrames = idleFrames(agent.cooldown, agent.sleepTimer, agent.stasisTimer);
+          Agent target = agent.attackTarget;
+          if (target != null && target.healthShifted > 0) {
+            float distance = (float) Math.sqrt(AgentUtil.distanceSquared(agent, target));
+            addTargeted(
+                idleFrames,
+                distance - agent.weaponVs(target).maxRange,
+                speed + target.computeSpeed());
+          } else {
+            minUntargetedFrames = Math.min(minUntargetedFrames, idleFrames);
+          }
+        }
+      }
+    }
+
+    void add(AgentArrays agents, AgentArrays enemies, int[] box) {
+      for (int i = agents.size - 1; i >= 0 && !isFine(); i--) {
+        addPosition(box, agents.x[i], agents.y[i]);
+        float speed = agents.computeSpeed(i);
+        maxSpeed = Math.max(maxSpeed, speed);
+        maxRange =
+            Math.max(
+                maxRange, Math.max(agents.groundWeapon[i].maxRange, agents.airWeapon[i].maxRange));
+        if (agents.groundDamageShifted[i] > 0 || agents.airDamageShifted[i] > 0) {
+          int idleFrames =
+              idleFrames(agents.cooldown[i], agents.sleepTimer[i], agents.stasisTimer[i]);
+          int target = agents.attackTarget[i];
+          if (target >= 0 && target < enemies.size && enemies.healthShifted[target] > 0) {
+            float distance = (float) Math.sqrt(agents.distanceSquared(i, enemies, target));
+            Weapon weapon =
+                enemies.is(target, AgentArrays.FLYER)
+                    ? agents.airWeapon[i]
+                    : agents.groundWeapon[i];
+            addTargeted(
+                idleFrames, distance - weapon.maxRange, speed + enemies.computeSpeed(target));
+          } else {
+            minUntargetedFrames = Math.min(minUntargetedFrames, idleFrames);
+          }
+        }
+      }
+    }
+
+    boolean isFine() {
+      return minTargetedFrames < fineFrames;
+    }
+
+    private void addPosition(int[] box, int x, int y) {
+      box[0] = Math.min(box[0], x);
+      box[1] = Math.min(box[1], y);
+      box[2] = Math.max(box[2], x);
+      box[3] = Math.max(box[3], y);
+    }
+
+    private static int idleFrames(int cooldown, int sleepTimer, int stasisTimer) {
+      return Math.max(0, Math.max(cooldown, Math.max(sleepTimer, stasisTimer)));
+    }
+
+    private void addTargeted(int idleFrames, float gap, float closingSpeed) {
+      int framesUntilInRange = 0;
+      if (gap > 0) {
+        framesUntilInRange = closingSpeed <= 0 ? Integer.MAX_VALUE : (int) (gap / closingSpeed);
+      }
+      minTargetedFrames = Math.min(minTargetedFrames, Math.max(idleFrames, framesUntilInRange));
+    }
+
+    /**
+     * Frames until the first agent could act. Agents without target are assumed to be able to
+     * attack once any agent could be in range of any enemy.
+     */
+    int framesUntilAction() {
+      if (minUntargetedFrames == Integer.MAX_VALUE) {
+        return minTargetedFrames;
+      }
+      return Math.min(minTargetedFrames, Math.max(framesUntilContact(), minUntargetedFrames));
+    }
+
+    /** Frames until any agent could be in range of an enemy if both move toward each other. */
+    private int framesUntilContact() {
+      long dx = Math.max(0, Math.max(sideB[0] - sideA[2], sideA[0] - sideB[2]));
+      long dy = Math.max(0, Math.max(sideB[1] - sideA[3], sideA[1] - sideB[3]));
+      double gap = Math.sqrt(dx * dx + dy * dy) - maxRange;
+      if (gap <= 0) {
+        return 0;
+      }
+      if (maxSpeed <= 0) {
+        return Integer.MAX_VALUE;
+      }
+      return (int) Math.min(Integer.MAX_VALUE, gap / (2 * maxSpeed));
+    }
+  }
+
   public static final class Builder {
     private Behavior playerABehavior = new RoleBasedBehavior();
     private Behavior playerBBehavior = new RoleBasedBehavior();
     private int frameSkip = 1;
+    private int maxFrameSkip;
+    private boolean structureOfArrays;
+    private boolean spatialIndex;
+    private boolean parallelStep;
+    private Grid<Boolean> walkability;
+    private int walkabilityCellSize;
 
     public Builder() {}
 
@@ -371,8 +1119,90 @@ public class Simulator {
       return this;
     }
 
+    /**
+     * Simulate up to maxFrameSkip frames per step while the forces are too far apart to get in
+     * range of each other, or while no agent is able to act (ie. all are on cooldown). Steps of
+     * frameSkip frames are used otherwise. Faster than a fixed small frame skip and more precise
+     * than a fixed large one.
+     *
+     * <p>For long runs like {@link #simulate(int) simulate(-1)}, a maximum of 240 frames skips
+     * nearly all frames in which no agent can attack, while agents that will never be able to
+     * attack still re-evaluate their movement regularly. As long as no agent moves while waiting
+     * (ie. static defense or sieged tanks), the result is identical to a frame skip of 1.
+     */
+    public Builder withAdaptiveFrameSkip(int maxFrameSkip) {
+      this.maxFrameSkip = maxFrameSkip;
+      return this;
+    }
+
+    /**
+     * Simulate using primitive arrays instead of the {@link Agent} objects. Results are written
+     * back to the agents once {@link #simulate(int)} returns. This is only used if both players
+     * use the default {@link AttackerBehavior} (directly or via {@link RoleBasedBehavior}) and no
+     * agent is a healer, repairer or suicider or has a death handler. Otherwise, the simulation
+     * silently falls back to the regular behaviors.
+     */
+    public Builder withStructureOfArrays(boolean structureOfArrays) {
+      this.structureOfArrays = structureOfArrays;
+      return this;
+    }
+
+    /**
+     * Maintain a per-step grid index of each player's agents. The default behaviors use it to look
+     * for targets nearby first, and only fall back to looking at all agents if there are none.
+     * Target selection might differ slightly. Useful for large battles with hundreds of agents.
+     */
+    public Builder withSpatialIndex(boolean spatialIndex) {
+      this.spatialIndex = spatialIndex;
+      return this;
+    }
+
+    /**
+     * Let the agents of both players decide concurrently on the {@link ForkJoinPool#commonPool()},
+     * or the pool the simulation is run in, in chunks of up to 64 agents. All agents decide on the
+     * state at the beginning of a step, damage (including the health cost of stim) is applied once
+     * all are done. This makes the simulation symmetric, but agents might attack targets already
+     * killed in the same step. The outcome does not depend on the number of threads, battles with
+     * less than 128 agents are simulated on the calling thread. Only
+     * used if all agents are plain attackers (see {@link #withStructureOfArrays(boolean)}, which
+     * takes precedence).
+     */
+    public Builder withParallelStep(boolean parallelStep) {
+      this.parallelStep = parallelStep;
+      return this;
+    }
+
+    /**
+     * Ground agents will not move into unwalkable cells of the given grid, but slide along walls
+     * instead. There is no path finding, agents still move straight toward their targets. One cell
+     * of the grid covers a walk position (8x8 pixels), ie. {@link
+     * org.bk.ass.grid.Grids#fromWalkability(bwapi.Game)}. The grid is only read once, when
+     * building the simulator.
+     */
+    public Builder withWalkability(Grid<Boolean> walkability) {
+      return withWalkability(walkability, 8);
+    }
+
+    /**
+     * Same as {@link #withWalkability(Grid)}, but with cells of the given size in pixels, ie. 32
+     * for {@link org.bk.ass.grid.Grids#fromTileWalkability(bwapi.Game)}. Must be a power of 2.
+     */
+    public Builder withWalkability(Grid<Boolean> walkability, int cellSize) {
+      this.walkability = walkability;
+      this.walkabilityCellSize = cellSize;
+      return this;
+    }
+
     public Simulator build() {
-      return new Simulator(frameSkip, playerABehavior, playerBBehavior);
+      return new Simulator(
+          frameSkip,
+          maxFrameSkip == 0 ? frameSkip : maxFrameSkip,
+          playerABehavior,
+          playerBBehavior,
+          structureOfArrays,
+          spatialIndex,
+          parallelStep,
+          walkability != null ? new WalkabilityMap(walkability, walkabilityCellSize) : null);
     }
   }
 
@@ -395,10 +1225,11 @@ public class Simulator {
     public void addAgent(Agent agent) {
       agent.x = agent.nx;
       agent.y = agent.ny;
+      agent.context = context;
       myUnits.add(agent);
       checkBounds(agent);
       if (!agent.isFlyer) {
-        collision[colindex(agent.x, agent.y)]++;
+        collision.increment(colindex(agent.x, agent.y));
       }
     }
 
@@ -406,10 +1237,16 @@ public class Simulator {
     public void removeAgents(List<Agent> agents) {
       for (int i = 0; i < agents.size(); i++) {
         Agent a = agents.get(i);
+        if (!myUnits.remove(a)) {
+          continue;
+        }
         if (!a.isFlyer) {
-          collision[colindex(a.x, a.y)]--;
+          collision.decrement(colindex(a.x, a.y));
+        }
+        if (recorder != null) {
+          recorder.recordRemoval(
+              myUnits == playerA ? SimulationRecorder.SIDE_A : SimulationRecorder.SIDE_B, a);
         }
-        myUnits.remove(a);
       }
     }
   }
@@ -0,0 +1,130 @@
+package org.bk.ass.sim;
+
+import java.util.Arrays;
+import org.bk.ass.collection.UnorderedCollection;
+
+/**
+ * The state of all agents of a {@link Simulator} at one point in time. Create one using {@link
+ * Simulator#snapshot()} and apply it with {@link Simulator#restore(SimulatorSnapshot)}. Restoring
+ * can be done multiple times, ie. to simulate different branches starting at the same state.
+ *
+ * <p>Only state changed by simulating is captured, the agents themselves are not copied. Changing
+ * other properties of an agent (ie. its weapons) will also affect restored agents. A snapshot can
+ * be reused by calling {@link Simulator#snapshot(SimulatorSnapshot)}, restoring does not allocate.
+ */
+public class SimulatorSnapshot {
+  private static final int X = 0;
+  private static final int Y = 1;
+  private static final int NX = 2;
+  private static final int NY = 3;
+  private static final int VX = 4;
+  private static final int VY = 5;
+  private static final int HEALTH = 6;
+  private static final int SHIELDS = 7;
+  private static final int ENERGY = 8;
+  private static final int COOLDOWN = 9;
+  private static final int SLEEP_TIMER = 10;
+  private static final int STIM_TIMER = 11;
+  private static final int ENSNARE_TIMER = 12;
+  private static final int STASIS_TIMER = 13;
+  private static final int ATTACK_COUNTER = 14;
+  private static final int SPEED = 15;
+  private static final int SPEED_SQUARED = 16;
+  private static final int FLAGS = 17;
+  private static final int STRIDE = 18;
+
+  private static final int HEALED_THIS_FRAME = 1;
+  private static final int DETECTED = 2;
+
+  private int sizeA;
+  private int size;
+  private Agent[] agents = new Agent[0];
+  private Agent[] attackTargets = new Agent[0];
+  private Agent[] restoreTargets = new Agent[0];
+  private int[] state = new int[0];
+
+  void capture(UnorderedCollection<Agent> agentsA, UnorderedCollection<Agent> agentsB) {
+    sizeA = agentsA.size();
+    size = sizeA + agentsB.size();
+    if (agents.length < size) {
+      agents = new Agent[size];
+      attackTargets = new Agent[size];
+      restoreTargets = new Agent[size];
+      state = new int[size * STRIDE];
+    } else {
+      Arrays.fill(agents, size, agents.length, null);
+      Arrays.fill(attackTargets, size, attackTargets.length, null);
+      Arrays.fill(restoreTargets, size, restoreTargets.length, null);
+    }
+    for (int i = 0; i < sizeA; i++) {
+      capture(i, agentsA.get(i));
+    }
+    for (int i = sizeA; i < size; i++) {
+      capture(i, agentsB.get(i - sizeA));
+    }
+  }
+
+  private void capture(int i, Agent agent) {
+    agents[i] = agent;
+    attackTargets[i] = agent.attackTarget;
+    restoreTargets[i] = agent.restoreTarget;
+    int o = i * STRIDE;
+    state[o + X] = agent.x;
+    state[o + Y] = agent.y;
+    state[o + NX] = agent.nx;
+    state[o + NY] = agent.ny;
+    state[o + VX] = agent.vx;
+    state[o + VY] = agent.vy;
+    state[o + HEALTH] = agent.healthShifted;
+    state[o + SHIELDS] = agent.shieldsShifted;
+    state[o + ENERGY] = agent.energyShifted;
+    state[o + COOLDOWN] = agent.cooldown;
+    state[o + SLEEP_TIMER] = agent.sleepTimer;
+    state[o + STIM_TIMER] = agent.stimTimer;
+    state[o + ENSNARE_TIMER] = agent.ensnareTimer;
+    state[o + STASIS_TIMER] = agent.stasisTimer;
+    state[o + ATTACK_COUNTER] = agent.attackCounter;
+    state[o + SPEED] = Float.floatToRawIntBits(agent.speed);
+    state[o + SPEED_SQUARED] = agent.speedSquared;
+    state[o + FLAGS] =
+        (agent.healedThisFrame ? HEALED_THIS_FRAME : 0) | (agent.detected ? DETECTED : 0);
+  }
+
+  /** Restores the captured agents and their state into the given (cleared) collections. */
+  void restore(UnorderedCollection<Agent> agentsA, UnorderedCollection<Agent> agentsB) {
+    for (int i = 0; i < sizeA; i++) {
+      agentsA.add(restore(i));
+    }
+    for (int i = sizeA; i < size; i++) {
+      agentsB.add(restore(i));
+    }
+  }
+
+  private Agent restore(int i) {
+    Agent agent = agents[i];
+    agent.attackTarget = attackTargets[i];
+    agent.restoreTarget = restoreTargets[i];
+    int o = i * STRIDE;
+    agent.x = state[o + X];
+    agent.y = state[o + Y];
+    agent.nx = state[o + NX];
+    agent.ny = state[o + NY];
+    agent.vx = state[o + VX];
+    agent.vy = state[o + VY];
+    agent.healthShifted = state[o + HEALTH];
+    agent.shieldsShifted = state[o + SHIELDS];
+    agent.energyShifted = state[o + ENERGY];
+    agent.cooldown = state[o + COOLDOWN];
+    agent.sleepTimer = state[o + SLEEP_TIMER];
+    agent.stimTimer = state[o + STIM_TIMER];
+    agent.ensnareTimer = state[o + ENSNARE_TIMER];
+    agent.stasisTimer = state[o + STASIS_TIMER];
+    agent.attackCounter = state[o + ATTACK_COUNTER];
+    agent.speed = Float.intBitsToFloat(state[o + SPEED]);
+    agent.speedSquared = state[o + SPEED_SQUARED];
+    int flags = state[o + FLAGS];
+    agent.healedThisFrame = (flags & HEALED_THIS_FRAME) != 0;
+    agent.detected = (flags & DETECTED) != 0;
+    return agent;
+  }
+}
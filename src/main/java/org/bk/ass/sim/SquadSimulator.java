@@ -0,0 +1,413 @@
+package org.bk.ass.sim;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.bk.ass.cluster.Cluster;
+
+/**
+ * Squad level combat prediction for map wide what-if analysis. Each {@link Cluster} (ie. from a
+ * {@link org.bk.ass.cluster.StableDBScanner}) is aggregated into a {@link Squad}: Hit points and
+ * shields are summed by unit size and air/ground, attackers are grouped by their weapons and speed
+ * and range are averaged. An engagement of two squads is then solved in closed form with
+ * Lanchester's square law, after the attacking squad moved into range.
+ *
+ * <p>Evaluating a pair of squads does not depend on the number of agents, only on the number of
+ * different weapons. Promising engagements can be {@link #refine(Engagement, int) refined} with a
+ * full {@link Simulator}.
+ *
+ * <p>Positions within a squad, splash, abilities, healing and suiciders are ignored. Shields are
+ * treated like hit points.
+ */
+public class SquadSimulator {
+  // Below this fraction of its hit points, a squad is considered dead
+  private static final double DEAD = 1 / 256.0;
+  private static final UnitSize[] SIZES = UnitSize.values();
+  private static final int CLASSES = SIZES.length * 2;
+
+  private final Simulator simulator;
+
+  /** @param simulator used to {@link #refine(Engagement, int)} engagements. */
+  public SquadSimulator(Simulator simulator) {
+    this.simulator = simulator;
+  }
+
+  public SquadSimulator() {
+    this(new Simulator.Builder().build());
+  }
+
+  /** Creates a squad of the agents of all elements of the given cluster. */
+  public static <U> Squad squadOf(Cluster<U> cluster, Function<U, Agent> agentOf) {
+    List<Agent> agents = new ArrayList<>();
+    for (U element : cluster.getElements()) {
+      agents.add(agentOf.apply(element));
+    }
+    return new Squad(cluster, agents);
+  }
+
+  /**
+   * Evaluates all engagements of squads of A attacking squads of B, the most favorable for A first.
+   */
+  public List<Engagement> engageAll(Collection<Squad> squadsA, Collection<Squad> squadsB) {
+    List<Engagement> engagements = new ArrayList<>(squadsA.size() * squadsB.size());
+    for (Squad a : squadsA) {
+      for (Squad b : squadsB) {
+        engagements.add(engage(a, b));
+      }
+    }
+    engagements.sort((x, y) -> Double.compare(y.value, x.value));
+    return engagements;
+  }
+
+  /** Same as {@link #engage(Squad, Squad, int)} until one squad is dead. */
+  public Engagement engage(Squad a, Squad b) {
+    return engage(a, b, -1);
+  }
+
+  /**
+   * Estimates the outcome of squad A moving into range of B and fighting it.
+   *
+   * @param frames the maximum number of frames including moving into range, -1 to fight until one
+   *     squad is dead.
+   */
+  public Engagement engage(Squad a, Squad b, int frames) {
+    double maxFrames = frames < 0 ? Double.MAX_VALUE : frames;
+    double distance = Math.hypot(a.x - b.x, a.y - b.y);
+    double gap = max(0, distance - a.range);
+    double approach = gap == 0 ? 0 : a.speed > 0 ? gap / a.speed : Double.MAX_VALUE;
+    // Fraction of the pool of the enemy lost per frame at full strength
+    double lossRateA = a.pool == 0 ? 0 : b.damageRateVs(a) / a.pool;
+    double lossRateB = b.pool == 0 ? 0 : a.damageRateVs(b) / b.pool;
+    if (approach >= maxFrames || lossRateA == 0 && lossRateB == 0) {
+      return new Engagement(a, b, 0.5, true, 1, 1, (int) min(approach, maxFrames), false);
+    }
+
+    double fightFrames = maxFrames - approach;
+    double remainingA;
+    double remainingB;
+    double fought;
+    if (lossRateA == 0 || lossRateB == 0) {
+      // Only one side can do damage: Linear decline
+      double rate = max(lossRateA, lossRateB);
+      fought = min(fightFrames, 1 / rate);
+      double loss = rate * fought;
+      remainingA = lossRateA > 0 ? 1 - loss : 1;
+      remainingB = lossRateB > 0 ? 1 - loss : 1;
+    } else {
+      double k = Math.sqrt(lossRateA * lossRateB);
+      double end;
+      if (Math.abs(lossRateA - lossRateB) < 1E-9 * k) {
+        // Mutual annihilation, both decline as e^(-kt)
+        end = -Math.log(DEAD) / k;
+      } else {
+        end = atanh(Math.sqrt(min(lossRateA, lossRateB) / max(lossRateA, lossRateB))) / k;
+      }
+      fought = min(fightFrames, end);
+      double cosh = Math.cosh(k * fought);
+      double sinh = Math.sinh(k * fought);
+      remainingA = max(0, cosh - lossRateA / k * sinh);
+      remainingB = max(0, cosh - lossRateB / k * sinh);
+    }
+    if (remainingA < DEAD) remainingA = 0;
+    if (remainingB < DEAD) remainingB = 0;
+
+    double valueA = a.remaining(remainingA);
+    double valueB = b.remaining(remainingB);
+    return new Engagement(
+        a,
+        b,
+        valueA + valueB == 0 ? 0.5 : valueA / (valueA + valueB),
+        false,
+        valueA,
+        valueB,
+        (int) Math.ceil(approach + fought),
+        false);
+  }
+
+  /**
+   * Simulates the engagement with the {@link Simulator} given in the constructor. Copies of the
+   * agents are used, the squads are not modified.
+   *
+   * @param frames the number of frames to simulate
+   */
+  public Engagement refine(Engagement engagement, int frames) {
+    simulator.reset();
+    for (Agent agent : engagement.squadA.agents) {
+      simulator.addAgentA(new Agent(agent));
+    }
+    for (Agent agent : engagement.squadB.agents) {
+      simulator.addAgentB(new Agent(agent));
+    }
+    int initialA = value(simulator.getAgentsA());
+    int initialB = value(simulator.getAgentsB());
+    int remainingFrames = simulator.simulate(frames);
+    double valueA = initialA == 0 ? 0 : value(simulator.getAgentsA()) / (double) initialA;
+    double valueB = initialB == 0 ? 0 : value(simulator.getAgentsB()) / (double) initialB;
+    return new Engagement(
+        engagement.squadA,
+        engagement.squadB,
+        valueA + valueB == 0 ? 0.5 : valueA / (valueA + valueB),
+        false,
+        valueA,
+        valueB,
+        max(0, frames - remainingFrames),
+        true);
+  }
+
+  private static int value(Collection<Agent> agents) {
+    int value = 0;
+    for (Agent agent : agents) {
+      value += Simulator.HEALTH_AND_HALFED_SHIELD.applyAsInt(agent);
+    }
+    return value;
+  }
+
+  private static double atanh(double x) {
+    return 0.5 * Math.log((1 + x) / (1 - x));
+  }
+
+  private static int classOf(Agent agent) {
+    UnitSize size = agent.size == null ? UnitSize.IRRELEVANT : agent.size;
+    return size.ordinal() * 2 + (agent.isFlyer ? 1 : 0);
+  }
+
+  private static boolean isAir(int targetClass) {
+    return (targetClass & 1) != 0;
+  }
+
+  /** Aggregated agents of a {@link Cluster}. */
+  public static final class Squad {
+    final Cluster<?> cluster;
+    final List<Agent> agents;
+    // Center
+    final int x;
+    final int y;
+    // Average speed of mobile attackers
+    final float speed;
+    // Average maximum weapon range of attackers
+    final float range;
+    // Hit points and shields (shifted) of agents which can be targeted, by target class
+    final double[] classPool = new double[CLASSES];
+    // Average armor (shifted) by target class
+    final double[] classArmor = new double[CLASSES];
+    final double pool;
+    final double untargetablePool;
+    final List<WeaponGroup> weaponGroups = new ArrayList<>();
+
+    public Squad(Cluster<?> cluster, Collection<Agent> agents) {
+      this.cluster = cluster;
+      this.agents = new ArrayList<>(agents);
+      long sumX = 0;
+      long sumY = 0;
+      int alive = 0;
+      float sumSpeed = 0;
+      int mobile = 0;
+      float sumRange = 0;
+      int attackers = 0;
+      double untargetable = 0;
+      for (Agent agent : agents) {
+        if (agent.healthShifted <= 0) {
+          continue;
+        }
+        alive++;
+        sumX += agent.nx;
+        sumY += agent.ny;
+        double hp = agent.healthShifted + max(0, agent.shieldsShifted);
+        if (agent.detected) {
+          int targetClass = classOf(agent);
+          classPool[targetClass] += hp;
+          classArmor[targetClass] += hp * agent.armorShifted;
+        } else {
+          untargetable += hp;
+        }
+        if (agent.isHealer || agent.isSuicider || !canAttack(agent)) {
+          continue;
+        }
+        attackers++;
+        sumRange += max(range(agent.groundWeapon), range(agent.airWeapon));
+        float speed = agent.computeSpeed();
+        if (speed > 0) {
+          mobile++;
+          sumSpeed += speed;
+        }
+        addToWeaponGroup(agent);
+      }
+      double targetable = 0;
+      for (int i = 0; i < CLASSES; i++) {
+        if (classPool[i] > 0) {
+          classArmor[i] /= classPool[i];
+          targetable += classPool[i];
+        }
+      }
+      x = alive == 0 ? 0 : (int) (sumX / alive);
+      y = alive == 0 ? 0 : (int) (sumY / alive);
+      speed = mobile == 0 ? 0 : sumSpeed / mobile;
+      range = attackers == 0 ? 0 : sumRange / attackers;
+      pool = targetable;
+      untargetablePool = untargetable;
+    }
+
+    public Squad(Collection<Agent> agents) {
+      this(null, agents);
+    }
+
+    public Cluster<?> getCluster() {
+      return cluster;
+    }
+
+    public List<Agent> getAgents() {
+      return Collections.unmodifiableList(agents);
+    }
+
+    public int getX() {
+      return x;
+    }
+
+    public int getY() {
+      return y;
+    }
+
+    private static boolean canAttack(Agent agent) {
+      return agent.groundWeapon != null && agent.groundWeapon.damageShifted > 0
+          || agent.airWeapon != null && agent.airWeapon.damageShifted > 0;
+    }
+
+    private static int range(Weapon weapon) {
+      return weapon == null || weapon.damageShifted == 0 ? 0 : weapon.maxRange;
+    }
+
+    private void addToWeaponGroup(Agent agent) {
+      for (WeaponGroup group : weaponGroups) {
+        if (sameDamage(group.groundWeapon, agent.groundWeapon)
+            && sameDamage(group.airWeapon, agent.airWeapon)) {
+          group.count++;
+          return;
+        }
+      }
+      weaponGroups.add(new WeaponGroup(agent.groundWeapon, agent.airWeapon));
+    }
+
+    private static boolean sameDamage(Weapon a, Weapon b) {
+      return a == b
+          || a != null
+              && b != null
+              && a.damageShifted == b.damageShifted
+              && a.hits == b.hits
+              && a.cooldown == b.cooldown
+              && a.damageType == b.damageType
+              && a.maxRange == b.maxRange;
+    }
+
+    /** Damage (shifted) per frame this squad deals to the target squad at full strength. */
+    double damageRateVs(Squad target) {
+      double rate = 0;
+      for (WeaponGroup group : weaponGroups) {
+        double reachable = 0;
+        double weighted = 0;
+        for (int i = 0; i < CLASSES; i++) {
+          double classPool = target.classPool[i];
+          if (classPool == 0) {
+            continue;
+          }
+          Weapon weapon = isAir(i) ? group.airWeapon : group.groundWeapon;
+          if (weapon == null || weapon.damageShifted == 0) {
+            continue;
+          }
+          UnitSize size = SIZES[i / 2];
+          double damage =
+              max(
+                  128,
+                  AgentUtil.reduceDamageBySizeAndDamageType(
+                      size,
+                      weapon.damageType,
+                      (int) (weapon.damageShifted - target.classArmor[i] * weapon.hits)));
+          reachable += classPool;
+          weighted += classPool * damage / max(1, weapon.cooldown);
+        }
+        // Fire is split by the hit points of the reachable targets
+        if (reachable > 0) {
+          rate += group.count * weighted / reachable;
+        }
+      }
+      return rate;
+    }
+
+    double remaining(double poolFraction) {
+      double total = pool + untargetablePool;
+      return total == 0 ? 0 : (pool * poolFraction + untargetablePool) / total;
+    }
+  }
+
+  static final class WeaponGroup {
+    final Weapon groundWeapon;
+    final Weapon airWeapon;
+    int count = 1;
+
+    WeaponGroup(Weapon groundWeapon, Weapon airWeapon) {
+      this.groundWeapon = groundWeapon;
+      this.airWeapon = airWeapon;
+    }
+  }
+
+  /**
+   * Estimated or simulated outcome of squad A attacking squad B. The value is in the [0..1] range,
+   * same as {@link LanchesterSolver.Result#value}.
+   */
+  public static final class Engagement {
+    public final Squad squadA;
+    public final Squad squadB;
+    public final double value;
+    /** True, if A can't reach B in time or neither squad can damage the other. */
+    public final boolean noCombat;
+    /** Remaining fraction of A. */
+    public final double remainingA;
+    /** Remaining fraction of B. */
+    public final double remainingB;
+    /** Frames until the fight is over, including moving into range. */
+    public final int frames;
+    /** True, if this is the result of {@link SquadSimulator#refine(Engagement, int)}. */
+    public final boolean refined;
+
+    Engagement(
+        Squad squadA,
+        Squad squadB,
+        double value,
+        boolean noCombat,
+        double remainingA,
+        double remainingB,
+        int frames,
+        boolean refined) {
+      this.squadA = squadA;
+      this.squadB = squadB;
+      this.value = value;
+      this.noCombat = noCombat;
+      this.remainingA = remainingA;
+      this.remainingB = remainingB;
+      this.frames = frames;
+      this.refined = refined;
+    }
+
+    @Override
+    public String toString() {
+      return noCombat
+          ? "Engagement{NO COMBAT}"
+          : "Engagement{"
+              + "value="
+              + value
+              + ", remainingA="
+              + remainingA
+              + ", remainingB="
+              + remainingB
+              + ", frames="
+              + frames
+              + ", refined="
+              + refined
+              + '}';
+    }
+  }
+}
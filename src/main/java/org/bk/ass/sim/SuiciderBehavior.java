@@ -17,19 +17,40 @@ public class SuiciderBehavior implements Behavior {
     Agent selectedEnemy = null;
     int selectedDistanceSquared =
         agent.groundSeekRangeSquared > 0 ? agent.groundSeekRangeSquared + 1 : Integer.MAX_VALUE;
-    for (int i = enemies.size() - 1; i >= 0; i--) {
-      Agent enemy = enemies.get(i);
-      Weapon wpn = agent.weaponVs(enemy);
-      if (enemy.healthShifted >= 1 && wpn.damageShifted != 0 && enemy.detected) {
-        int distanceSq = distanceSquared(agent, enemy);
-        if (distanceSq < selectedDistanceSquared
-            && (agent.groundSeekRangeSquared == 0 || enemy.seekableTarget)) {
-          selectedDistanceSquared = distanceSq;
-          selectedEnemy = enemy;
-
-          // If we can hit it this frame, we're done searching
-          if (selectedDistanceSquared <= agent.speedSquared) {
-            break;
+    AgentGrid grid = AgentGrid.of(enemies);
+    if (grid != null) {
+      boolean seeking = agent.groundSeekRangeSquared > 0;
+      selectedEnemy =
+          grid.nearest(
+              agent,
+              seeking
+                  ? (int) Math.ceil(Math.sqrt(agent.groundSeekRangeSquared))
+                  : AgentGrid.SEARCH_RADIUS,
+              SuiciderBehavior::isValidTarget);
+      if (selectedEnemy != null) {
+        selectedDistanceSquared = distanceSquared(agent, selectedEnemy);
+        if (selectedDistanceSquared > agent.groundSeekRangeSquared && seeking) {
+          selectedEnemy = null;
+        }
+      }
+      // Seeking agents only target enemies within their seek range, there's nothing more to find
+      if (selectedEnemy == null && seeking) {
+        return false;
+      }
+    }
+    if (selectedEnemy == null) {
+      for (int i = enemies.size() - 1; i >= 0; i--) {
+        Agent enemy = enemies.get(i);
+        if (isValidTarget(agent, enemy)) {
+          int distanceSq = distanceSquared(agent, enemy);
+          if (distanceSq < selectedDistanceSquared) {
+            selectedDistanceSquared = distanceSq;
+            selectedEnemy = enemy;
+
+            // If we can hit it this frame, we're done searching
+            if (selectedDistanceSquared <= agent.speedSquared) {
+              break;
+            }
           }
         }
       }
@@ -49,4 +70,11 @@ public class SuiciderBehavior implements Behavior {
     }
     return true;
   }
+
+  private static boolean isValidTarget(Agent agent, Agent enemy) {
+    return enemy.healthShifted >= 1
+        && agent.weaponVs(enemy).damageShifted != 0
+        && enemy.detected
+        && (agent.groundSeekRangeSquared == 0 || enemy.seekableTarget);
+  }
 }
@@ -0,0 +1,107 @@
+package org.bk.ass.sim;
+
+/**
+ * Reusable structure-of-arrays storage of the state of units, as read by {@link
+ * JBWAPIAgentFactory#read(java.util.Collection, UnitStateBuffer)}. Reading all units once per frame
+ * and creating agents with {@link JBWAPIAgentFactory#of(UnitStateBuffer, int)} avoids querying the
+ * same unit, player and upgrade information repeatedly. The arrays only grow, refilling the buffer
+ * every frame creates no garbage.
+ */
+public final class UnitStateBuffer {
+  static final int DETECTED = 1;
+  static final int BURROWED = 1 << 1;
+  static final int PLAGUED = 1 << 2;
+  static final int POWERED = 1 << 3;
+  static final int FLYING = 1 << 4;
+  static final int PROTECTED_BY_DARK_SWARM = 1 << 5;
+  static final int CAN_STIM = 1 << 6;
+
+  int size;
+
+  Object[] unit;
+  int[] playerId;
+  int[] unitType;
+  // Key of the agent template, see AgentTemplates.key
+  int[] upgrades;
+  int[] flags;
+  int[] x;
+  int[] y;
+  int[] hitPoints;
+  int[] shields;
+  int[] energy;
+  int[] stimTimer;
+  int[] stasisTimer;
+  int[] lockDownTimer;
+  int[] ensnareTimer;
+  int[] remainingBuildTime;
+  int[] elevationLevel;
+
+  public UnitStateBuffer() {
+    ensureCapacity(16);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Returns the unit the state at the given index was read from. */
+  public Object getUnit(int index) {
+    return unit[index];
+  }
+
+  public int getPlayerId(int index) {
+    return playerId[index];
+  }
+
+  public int getX(int index) {
+    return x[index];
+  }
+
+  public int getY(int index) {
+    return y[index];
+  }
+
+  public int getHitPoints(int index) {
+    return hitPoints[index];
+  }
+
+  public int getShields(int index) {
+    return shields[index];
+  }
+
+  /** Removes all entries, but keeps the capacity. */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      unit[i] = null;
+    }
+    size = 0;
+  }
+
+  boolean is(int index, int flag) {
+    return (flags[index] & flag) != 0;
+  }
+
+  /** Grows the arrays to hold at least the given number of entries. Existing entries are lost. */
+  void ensureCapacity(int capacity) {
+    if (unit != null && unit.length >= capacity) {
+      return;
+    }
+    int newCapacity = unit == null ? capacity : Math.max(capacity, unit.length * 7 / 4);
+    unit = new Object[newCapacity];
+    playerId = new int[newCapacity];
+    unitType = new int[newCapacity];
+    upgrades = new int[newCapacity];
+    flags = new int[newCapacity];
+    x = new int[newCapacity];
+    y = new int[newCapacity];
+    hitPoints = new int[newCapacity];
+    shields = new int[newCapacity];
+    energy = new int[newCapacity];
+    stimTimer = new int[newCapacity];
+    stasisTimer = new int[newCapacity];
+    lockDownTimer = new int[newCapacity];
+    ensnareTimer = new int[newCapacity];
+    remainingBuildTime = new int[newCapacity];
+    elevationLevel = new int[newCapacity];
+  }
+}
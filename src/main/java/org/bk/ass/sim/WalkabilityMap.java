@@ -0,0 +1,64 @@
+package org.bk.ass.sim;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+
+import org.bk.ass.grid.Grid;
+
+/**
+ * Walkability of a {@link Grid}, copied into a bit set once, so that lookups don't need to box or
+ * call into the grid. Positions outside of the grid are unwalkable.
+ */
+final class WalkabilityMap {
+  private final long[] walkable;
+  private final int width;
+  private final int height;
+  private final int cellShift;
+
+  WalkabilityMap(Grid<Boolean> grid, int cellSize) {
+    if (cellSize < 1 || Integer.bitCount(cellSize) != 1)
+      throw new IllegalArgumentException("cellSize must be a power of 2");
+    width = grid.getWidth();
+    height = grid.getHeight();
+    cellShift = Integer.numberOfTrailingZeros(cellSize);
+    walkable = new long[(width * height + 63) >> 6];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (grid.get(x, y)) {
+          int index = y * width + x;
+          walkable[index >> 6] |= 1L << index;
+        }
+      }
+    }
+  }
+
+  boolean isWalkable(int x, int y) {
+    int cx = x >> cellShift;
+    int cy = y >> cellShift;
+    if (cx < 0 || cy < 0 || cx >= width || cy >= height) {
+      return false;
+    }
+    int index = cy * width + cx;
+    return (walkable[index >> 6] & 1L << index) != 0;
+  }
+
+  /**
+   * Returns true, if a ground agent can move in a straight line from one position to the other.
+   * Long moves are sampled once per cell. Agents on unwalkable positions can always move, so they
+   * are not stuck if their position was imprecise.
+   */
+  boolean canMove(int fromX, int fromY, int toX, int toY) {
+    if (!isWalkable(fromX, fromY)) {
+      return true;
+    }
+    int dx = toX - fromX;
+    int dy = toY - fromY;
+    int samples = max(abs(dx), abs(dy)) >> cellShift;
+    for (int i = 1; i <= samples; i++) {
+      if (!isWalkable(fromX + dx * i / (samples + 1), fromY + dy * i / (samples + 1))) {
+        return false;
+      }
+    }
+    return isWalkable(toX, toY);
+  }
+}
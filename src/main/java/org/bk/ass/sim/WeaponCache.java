@@ -0,0 +1,82 @@
+package org.bk.ass.sim;
+
+/**
+ * {@link Weapon}s by all properties used to create them, so agents of the same type and upgrades
+ * share one instance. Not thread safe.
+ */
+final class WeaponCache {
+  /** Returned by {@link #key(int, int, int, int, int, int)} if the values can't be packed. */
+  static final long NO_KEY = -1;
+
+  private long[] keys = new long[64];
+  private Weapon[] weapons = new Weapon[64];
+  private int size;
+
+  static long key(
+      int weaponId,
+      int upgrades,
+      int rangeExtension,
+      int hitsFactor,
+      int maxHits,
+      int cooldown) {
+    if ((weaponId | upgrades | rangeExtension | hitsFactor | maxHits | cooldown) < 0
+        || weaponId > 0x3FF
+        || upgrades > 0xFF
+        || rangeExtension > 0xFFF
+        || hitsFactor > 0xF
+        || maxHits > 0xFF
+        || cooldown > 0xFFFF) {
+      return NO_KEY;
+    }
+    return (long) weaponId
+        | (long) upgrades << 10
+        | (long) rangeExtension << 18
+        | (long) hitsFactor << 30
+        | (long) maxHits << 34
+        | (long) cooldown << 42;
+  }
+
+  /** Returns the cached weapon or null, if there is none. */
+  Weapon get(long key) {
+    int mask = keys.length - 1;
+    for (int i = slotOf(key, mask); weapons[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return weapons[i];
+      }
+    }
+    return null;
+  }
+
+  void put(long key, Weapon weapon) {
+    if (2 * (size + 1) > keys.length) {
+      grow();
+    }
+    int mask = keys.length - 1;
+    int i = slotOf(key, mask);
+    while (weapons[i] != null && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    if (weapons[i] == null) {
+      size++;
+    }
+    keys[i] = key;
+    weapons[i] = weapon;
+  }
+
+  private void grow() {
+    long[] oldKeys = keys;
+    Weapon[] oldWeapons = weapons;
+    keys = new long[oldKeys.length * 2];
+    weapons = new Weapon[oldWeapons.length * 2];
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldWeapons[i] != null) {
+        put(oldKeys[i], oldWeapons[i]);
+      }
+    }
+  }
+
+  private static int slotOf(long key, int mask) {
+    return Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+  }
+}
@@ -0,0 +1,104 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.bk.ass.sim.Simulator.Builder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openbw.bwapi4j.test.BWDataProvider;
+import org.openbw.bwapi4j.type.UnitType;
+
+class AgentRosterTest {
+
+  private BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+  private AgentRoster sut = new AgentRoster(new Builder().build());
+
+  @BeforeAll
+  static void setup() throws Exception {
+    BWDataProvider.injectValues();
+  }
+
+  @BeforeEach
+  void addAgents() {
+    for (int i = 0; i < 4; i++) {
+      int x = 20 * i;
+      sut.getOrAddA("marine" + i, key -> factory.of(UnitType.Terran_Marine).setX(x).setY(20));
+    }
+    sut.getOrAddB("zealot", key -> factory.of(UnitType.Protoss_Zealot).setX(30).setY(200));
+  }
+
+  @Test
+  void shouldRestoreStateBeforeSimulationOnAccess() {
+    // GIVEN
+    sut.simulate(-1);
+    String firstResult = sut.getSimulator().getAgentsA().toString();
+
+    // WHEN
+    Agent marine = sut.get("marine0");
+    sut.simulate(-1);
+
+    // THEN
+    assertThat(marine.getHealth()).isEqualTo(40);
+    assertThat(marine.getUserObject()).isEqualTo("marine0");
+    assertThat(sut.getSimulator().getAgentsA()).hasToString(firstResult);
+  }
+
+  @Test
+  void shouldOnlyCreateNewAgents() {
+    // GIVEN
+    sut.simulate(96);
+
+    // WHEN
+    sut.getOrAddA(
+        "marine0",
+        key -> {
+          throw new IllegalStateException("Should not create existing agents");
+        });
+    sut.getOrAddB("zergling", key -> factory.of(UnitType.Zerg_Zergling).setX(40).setY(200));
+
+    // THEN
+    assertThat(sut.size()).isEqualTo(6);
+    assertThat(sut.getSimulator().getAgentsA()).hasSize(4);
+    assertThat(sut.getSimulator().getAgentsB()).hasSize(2);
+  }
+
+  @Test
+  void shouldApplyUpdatesToNextSimulation() {
+    // GIVEN
+    sut.simulate(-1);
+    assertThat(sut.getSimulator().getAgentsB()).isEmpty();
+
+    // WHEN
+    for (int i = 0; i < 4; i++) {
+      sut.get("marine" + i).setHealth(5);
+    }
+    sut.simulate(-1);
+
+    // THEN
+    assertThat(sut.getSimulator().getAgentsA()).isEmpty();
+    assertThat(sut.getSimulator().getAgentsB()).isNotEmpty();
+  }
+
+  @Test
+  void shouldRemoveDeadAgentsAndReferencesToThem() {
+    // GIVEN
+    sut.simulate(24);
+    Agent zealot = sut.get("zealot");
+
+    // WHEN
+    boolean removed = sut.remove("zealot");
+
+    // THEN
+    assertThat(removed).isTrue();
+    assertThat(sut.remove("zealot")).isFalse();
+    assertThat(sut.getSimulator().getAgentsB()).isEmpty();
+    assertThat(sut.getSimulator().getAgentsA())
+        .allSatisfy(agent -> assertThat(agent.attackTarget).isNotSameAs(zealot));
+    int groundAgentsInCollisionMap = 0;
+    for (byte cell : sut.getSimulator().collision.toArray()) {
+      groundAgentsInCollisionMap += cell;
+    }
+    assertThat(groundAgentsInCollisionMap).isEqualTo(4);
+  }
+}
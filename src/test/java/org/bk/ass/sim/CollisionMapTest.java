@@ -0,0 +1,61 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class CollisionMapTest {
+
+  private CollisionMap sut = new CollisionMap();
+
+  @Test
+  void shouldCountPerCell() {
+    // GIVEN
+    int cell = CollisionMap.index(255, 255);
+    int neighborInOtherTile = CollisionMap.index(256, 255);
+
+    // WHEN
+    sut.increment(cell);
+    sut.increment(cell);
+    sut.increment(neighborInOtherTile);
+    sut.decrement(cell);
+
+    // THEN
+    assertThat(sut.get(cell)).isEqualTo(1);
+    assertThat(sut.get(neighborInOtherTile)).isEqualTo(1);
+    assertThat(sut.get(CollisionMap.index(8191, 8191))).isZero();
+  }
+
+  @Test
+  void shouldMapCellsLikeDenseArray() {
+    // GIVEN
+    int[][] positions = {{0, 0}, {17, 3}, {4000, 7000}, {8191, 8191}, {8191, 0}};
+
+    // WHEN
+    for (int[] position : positions) {
+      sut.increment(CollisionMap.index(position[0], position[1]));
+    }
+
+    // THEN
+    byte[] cells = sut.toArray();
+    for (int[] position : positions) {
+      assertThat(cells[position[1] / 16 * 512 + position[0] / 16]).isEqualTo((byte) 1);
+    }
+    assertThat(cells).hasSize(512 * 512);
+  }
+
+  @Test
+  void shouldBeEmptyAfterClear() {
+    // GIVEN
+    sut.increment(CollisionMap.index(100, 100));
+    sut.increment(CollisionMap.index(5000, 100));
+
+    // WHEN
+    sut.clear();
+
+    // THEN
+    assertThat(sut.toArray()).containsOnly(0);
+    sut.increment(CollisionMap.index(100, 100));
+    assertThat(sut.get(CollisionMap.index(100, 100))).isEqualTo(1);
+  }
+}
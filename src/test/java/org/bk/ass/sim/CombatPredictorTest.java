@@ -0,0 +1,83 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bk.ass.sim.CombatPredictor.Builder;
+import org.bk.ass.sim.CombatPredictor.Prediction;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openbw.bwapi4j.test.BWDataProvider;
+import org.openbw.bwapi4j.type.UnitType;
+
+class CombatPredictorTest {
+  private BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+
+  @BeforeAll
+  static void setup() throws Exception {
+    BWDataProvider.injectValues();
+  }
+
+  @Test
+  void shouldDefaultToSimulatorWithAdaptiveFrameSkip() {
+    // WHEN
+    CombatPredictor predictor = new Builder().build();
+
+    // THEN
+    assertThat(predictor.simulator.maxFrameSkip).isGreaterThan(predictor.simulator.frameSkip);
+  }
+
+  @Test
+  void shouldNotSimulateLandslide() {
+    // GIVEN
+    CombatPredictor predictor = new Builder().build();
+    List<Agent> a = agents(UnitType.Protoss_Zealot, 10);
+
+    // WHEN
+    Prediction prediction =
+        predictor.predict(a, Collections.singletonList(factory.of(UnitType.Zerg_Zergling)));
+
+    // THEN
+    assertThat(prediction.simulated).isFalse();
+    assertThat(prediction.value).isGreaterThan(0.7);
+    assertThat(predictor.getEvaluatorHitRate()).isEqualTo(1.0);
+  }
+
+  @Test
+  void shouldSimulateCloseFight() {
+    // GIVEN
+    CombatPredictor predictor = new Builder().withConfidenceBounds(0.0, 1.0).build();
+    List<Agent> a = agents(UnitType.Terran_Marine, 5);
+    List<Agent> b = agents(UnitType.Terran_Marine, 5);
+    AgentUtil.randomizePositions(a, 0, 0, 64, 64);
+    AgentUtil.randomizePositions(b, 100, 0, 164, 64);
+
+    // WHEN
+    Prediction prediction = predictor.predict(a, b);
+
+    // THEN
+    assertThat(prediction.simulated).isTrue();
+    assertThat(prediction.value).isBetween(0.2, 0.8);
+    assertThat(predictor.getSimulations()).isEqualTo(1);
+    assertThat(predictor.getEvaluatorHitRate()).isZero();
+    assertThat(a).allMatch(it -> it.healthShifted == it.maxHealthShifted);
+    assertThat(b).allMatch(it -> it.healthShifted == it.maxHealthShifted);
+  }
+
+  @Test
+  void shouldNotAllowInvertedBounds() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new Builder().withConfidenceBounds(0.6, 0.4));
+  }
+
+  private List<Agent> agents(UnitType type, int amount) {
+    List<Agent> agents = new ArrayList<>();
+    for (int i = 0; i < amount; i++) {
+      agents.add(factory.of(type));
+    }
+    return agents;
+  }
+}
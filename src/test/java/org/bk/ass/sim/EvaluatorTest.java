@@ -1,6 +1,7 @@
 package org.bk.ass.sim;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
 import static org.bk.ass.sim.Evaluator.EVAL_NO_COMBAT;
 
 import io.jenetics.util.IntRange;
@@ -12,6 +13,8 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.bk.ass.sim.Evaluator.EvalWithAgents;
 import org.bk.ass.sim.Evaluator.EvaluationResult;
+import org.bk.ass.sim.Evaluator.IncrementalEvaluation;
+import org.bk.ass.sim.Evaluator.MutableEvaluationResult;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.openbw.bwapi4j.test.BWDataProvider;
@@ -547,4 +550,161 @@ class EvaluatorTest {
     // THEN
     assertThat(result.value).isBetween(0.3, 0.4);
   }
+
+  @Test
+  void reusableResultShouldMatchEvaluationResult() {
+    // GIVEN
+    List<Agent> a =
+        Arrays.asList(
+            factory.of(UnitType.Terran_Marine),
+            factory.of(UnitType.Terran_Marine),
+            factory.of(UnitType.Terran_Medic));
+    List<Agent> b =
+        Arrays.asList(factory.of(UnitType.Zerg_Hydralisk), factory.of(UnitType.Zerg_Zergling));
+    MutableEvaluationResult result = new MutableEvaluationResult();
+
+    // WHEN
+    evaluator.evaluate(a, b, result);
+
+    // THEN
+    assertThat(result.noCombat).isFalse();
+    assertThat(result.value).isCloseTo(evaluator.evaluate(a, b).value, within(0.001));
+  }
+
+  @Test
+  void reusableResultShouldBeResetWhenThereIsNoCombat() {
+    // GIVEN
+    MutableEvaluationResult result = new MutableEvaluationResult();
+    evaluator.evaluate(
+        Collections.singletonList(factory.of(UnitType.Terran_Marine)),
+        Collections.singletonList(factory.of(UnitType.Zerg_Zergling)),
+        result);
+
+    // WHEN
+    evaluator.evaluate(Collections.emptyList(), Collections.emptyList(), result);
+
+    // THEN
+    assertThat(result.noCombat).isTrue();
+    assertThat(result.value).isEqualTo(EVAL_NO_COMBAT.value);
+  }
+
+  @Test
+  void incrementalEvaluationShouldMatchEvaluateAfterRemovingAgents() {
+    // GIVEN
+    Agent ling = factory.of(UnitType.Zerg_Zergling);
+    Agent medic = factory.of(UnitType.Terran_Medic);
+    List<Agent> a =
+        Arrays.asList(
+            factory.of(UnitType.Terran_Marine),
+            factory.of(UnitType.Terran_Marine),
+            factory.of(UnitType.Terran_Firebat),
+            medic);
+    List<Agent> b =
+        Arrays.asList(
+            factory.of(UnitType.Zerg_Hydralisk), factory.of(UnitType.Zerg_Mutalisk), ling);
+    IncrementalEvaluation evaluation = evaluator.newIncrementalEvaluation();
+    a.forEach(evaluation::addA);
+    b.forEach(evaluation::addB);
+    evaluation.addA(factory.of(UnitType.Terran_Ghost));
+
+    // WHEN
+    evaluation.removeA(medic);
+    evaluation.removeB(ling);
+    evaluation.addA(medic);
+    evaluation.removeA(a.get(0));
+
+    // THEN
+    double expected =
+        evaluator
+            .evaluate(
+                Arrays.asList(a.get(1), a.get(2), medic, factory.of(UnitType.Terran_Ghost)),
+                b.subList(0, 2))
+            .value;
+    assertThat(evaluation.evaluate().value).isCloseTo(expected, within(0.001));
+  }
+
+  @Test
+  void incrementalEvaluationWithoutAgentsShouldBeNoCombat() {
+    // GIVEN
+    IncrementalEvaluation evaluation = evaluator.newIncrementalEvaluation();
+    Agent marine = factory.of(UnitType.Terran_Marine);
+    Agent ling = factory.of(UnitType.Zerg_Zergling);
+    evaluation.addA(marine);
+    evaluation.addB(ling);
+
+    // WHEN
+    evaluation.removeA(marine);
+    evaluation.removeB(ling);
+
+    // THEN
+    assertThat(evaluation.evaluate()).isEqualTo(EVAL_NO_COMBAT);
+  }
+
+  @Test
+  void optimizeEvalByAddingShouldDropUselessAgents() {
+    // GIVEN
+    Agent mutalisk = factory.of(UnitType.Zerg_Mutalisk);
+    List<Agent> a = Arrays.asList(factory.of(UnitType.Zerg_Zergling), mutalisk);
+    List<Agent> b = Collections.singletonList(factory.of(UnitType.Protoss_Zealot));
+
+    // WHEN
+    EvalWithAgents result = evaluator.optimizeEvalByAdding(a, b);
+
+    // THEN
+    assertThat(result.agents).containsOnly(mutalisk);
+    assertThat(result.eval).isGreaterThan(0.5);
+  }
+
+  @Test
+  void evaluateManyShouldMatchEvaluatingEachCandidate() {
+    // GIVEN
+    List<Agent> enemies =
+        Arrays.asList(
+            factory.of(UnitType.Terran_Marine),
+            factory.of(UnitType.Terran_Marine),
+            factory.of(UnitType.Terran_Medic),
+            factory.of(UnitType.Terran_Goliath));
+    Agent mutalisk = factory.of(UnitType.Zerg_Mutalisk);
+    List<List<Agent>> candidates =
+        Arrays.asList(
+            Arrays.asList(mutalisk, factory.of(UnitType.Zerg_Zergling)),
+            Collections.singletonList(factory.of(UnitType.Zerg_Overlord)),
+            Arrays.asList(mutalisk, factory.of(UnitType.Zerg_Hydralisk)),
+            Collections.emptyList());
+
+    // WHEN
+    double[] values = evaluator.evaluateMany(enemies, candidates);
+    double[] parallelValues = evaluator.evaluateMany(enemies, candidates, true);
+
+    // THEN
+    for (int i = 0; i < candidates.size(); i++) {
+      double expected = evaluator.evaluate(candidates.get(i), enemies).value;
+      assertThat(values[i]).isCloseTo(expected, within(0.001));
+      assertThat(parallelValues[i]).isCloseTo(expected, within(0.001));
+    }
+  }
+
+  @Test
+  void incrementalEvaluationShouldAddManyAgentsOfOneKind() {
+    // GIVEN
+    List<Agent> a = new ArrayList<>();
+    List<Agent> b = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      a.add(factory.of(UnitType.Zerg_Hydralisk));
+      b.add(factory.of(UnitType.Terran_Marine));
+    }
+    b.add(factory.of(UnitType.Terran_Medic));
+    b.add(factory.of(UnitType.Terran_Medic));
+    IncrementalEvaluation evaluation = evaluator.newIncrementalEvaluation();
+
+    // WHEN
+    evaluation.addA(factory.of(UnitType.Zerg_Hydralisk), 20);
+    evaluation.addB(factory.of(UnitType.Terran_Marine), 20);
+    evaluation.addB(factory.of(UnitType.Terran_Medic), 3);
+    evaluation.removeB(factory.of(UnitType.Terran_Medic), 1);
+
+    // THEN
+    assertThat(evaluation.evaluate().value)
+        .isCloseTo(evaluator.evaluate(a, b).value, within(0.001));
+  }
 }
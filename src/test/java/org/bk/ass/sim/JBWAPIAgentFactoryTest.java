@@ -1,12 +1,19 @@
 package org.bk.ass.sim;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import bwapi.Player;
+import bwapi.TechType;
 import bwapi.Unit;
 import bwapi.UnitType;
+import bwapi.UpgradeType;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -51,6 +58,63 @@ class JBWAPIAgentFactoryTest {
     assertThat(agent.sleepTimer).isEqualTo(Integer.MAX_VALUE);
   }
 
+  @Test
+  void agentsOfBufferShouldMatchAgentsOfUnits() {
+    // GIVEN
+    Unit unit = mockUnit(UnitType.Terran_Marine);
+    given(unit.getHitPoints()).willReturn(30);
+    given(unit.getX()).willReturn(100);
+    given(unit.getY()).willReturn(200);
+    given(unit.getStimTimer()).willReturn(5);
+    given(unit.isDetected()).willReturn(true);
+    given(unit.getPlayer().hasResearched(TechType.Stim_Packs)).willReturn(true);
+    UnitStateBuffer buffer = new UnitStateBuffer();
+
+    // WHEN
+    sut.read(Collections.singletonList(unit), buffer);
+    Agent agent = sut.of(buffer, 0);
+
+    // THEN
+    assertThat(buffer.size()).isEqualTo(1);
+    assertThat(agent).isEqualToComparingFieldByField(sut.of(unit));
+    assertThat(agent.canStim).isTrue();
+    assertThat(agent.stimTimer).isEqualTo(5);
+  }
+
+  @Test
+  void agentsOfBufferShouldKeepUpgradesTooHighForTemplates() {
+    // GIVEN
+    Unit unit = mockUnit(UnitType.Terran_Marine);
+    given(unit.getPlayer().getUpgradeLevel(any(UpgradeType.class))).willReturn(20);
+    UnitStateBuffer buffer = new UnitStateBuffer();
+
+    // WHEN
+    sut.read(Collections.singletonList(unit), buffer);
+    Agent agent = sut.of(buffer, 0);
+
+    // THEN
+    assertThat(agent.groundWeapon.damageShifted)
+        .isEqualTo(sut.of(unit).groundWeapon.damageShifted);
+    assertThat(sut.templates.get(UnitType.Terran_Marine.ordinal(), AgentTemplates.NO_KEY))
+        .isNull();
+  }
+
+  @Test
+  void readShouldQueryResearchOncePerPlayer() {
+    // GIVEN
+    Player player = mock(Player.class);
+    Unit a = mockUnit(UnitType.Terran_Marine);
+    Unit b = mockUnit(UnitType.Terran_Firebat);
+    given(a.getPlayer()).willReturn(player);
+    given(b.getPlayer()).willReturn(player);
+
+    // WHEN
+    sut.read(Arrays.asList(a, b, a), new UnitStateBuffer());
+
+    // THEN
+    verify(player, times(1)).hasResearched(TechType.Stim_Packs);
+  }
+
   private Unit mockUnit(UnitType type) {
     Unit unit = mock(Unit.class, Answers.RETURNS_DEEP_STUBS);
     given(unit.getType()).willReturn(type);
@@ -72,6 +136,75 @@ class JBWAPIAgentFactoryTest {
     assertThat(agent.sleepTimer).isEqualTo(374);
   }
 
+  @Test
+  void agentsWithSameTypeAndUpgradesShouldShareWeapons() {
+    // WHEN
+    Agent a = sut.of(UnitType.Terran_Marine);
+    Agent b = sut.of(UnitType.Terran_Marine);
+    Agent upgraded = sut.of(UnitType.Terran_Marine, 1, 1, 0, 0, false, false, false);
+
+    // THEN
+    assertThat(a.groundWeapon).isSameAs(b.groundWeapon);
+    assertThat(a.groundWeapon).isNotSameAs(upgraded.groundWeapon);
+  }
+
+  @Test
+  void agentsOfSameTypeShouldNotShareState() {
+    // GIVEN
+    Agent a = sut.of(UnitType.Protoss_Zealot).setX(100).setHealth(1).setShields(0);
+
+    // WHEN
+    Agent b = sut.of(UnitType.Protoss_Zealot);
+
+    // THEN
+    assertThat(b.x).isZero();
+    assertThat(b.getHealth()).isEqualTo(UnitType.Protoss_Zealot.maxHitPoints());
+    assertThat(b.getShields()).isEqualTo(UnitType.Protoss_Zealot.maxShields());
+  }
+
+  @Test
+  void agentsWithDifferentUpgradesShouldDiffer() {
+    // WHEN
+    Agent zergling = sut.of(UnitType.Zerg_Zergling);
+    Agent upgraded = sut.of(UnitType.Zerg_Zergling, 0, 0, 0, 0, true, false, true);
+
+    // THEN
+    assertThat(upgraded.speedUpgrade).isTrue();
+    assertThat(upgraded.cooldownUpgrade).isTrue();
+    assertThat(zergling.speedUpgrade).isFalse();
+    assertThat(zergling.cooldownUpgrade).isFalse();
+  }
+
+  @Test
+  void pooledFactoryShouldReuseRecycledAgents() {
+    // GIVEN
+    JBWAPIAgentFactory pooled = new JBWAPIAgentFactory(null, true);
+    Agent first = pooled.of(UnitType.Terran_Marine).setX(100).setHealth(1).setStimTimer(10);
+
+    // WHEN
+    pooled.recycleAgents();
+    Agent agent = pooled.of(UnitType.Terran_Marine);
+
+    // THEN
+    assertThat(agent).isSameAs(first);
+    assertThat(agent.x).isZero();
+    assertThat(agent.stimTimer).isZero();
+    assertThat(agent.getHealth()).isEqualTo(UnitType.Terran_Marine.maxHitPoints());
+  }
+
+  @Test
+  void pooledFactoryShouldNotReuseAgentsBeforeRecycling() {
+    // GIVEN
+    JBWAPIAgentFactory pooled = new JBWAPIAgentFactory(null, true);
+
+    // WHEN
+    Agent a = pooled.of(UnitType.Terran_Marine);
+    Agent b = pooled.of(UnitType.Terran_Marine);
+
+    // THEN
+    assertThat(a).isNotSameAs(b);
+  }
+
   private static Stream<UnitType> buildings() {
     return Arrays.stream(UnitType.values())
         .filter(it -> it.isBuilding() &&
@@ -0,0 +1,99 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bk.ass.sim.LanchesterSolver.Result;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openbw.bwapi4j.test.BWDataProvider;
+import org.openbw.bwapi4j.type.UnitType;
+
+class LanchesterSolverTest {
+  private LanchesterSolver solver = new LanchesterSolver();
+  private BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+
+  @BeforeAll
+  static void setup() throws Exception {
+    BWDataProvider.injectValues();
+  }
+
+  @Test
+  void noAgentsShouldBeNoCombat() {
+    // WHEN
+    Result result = solver.solve(Collections.emptyList(), Collections.emptyList());
+
+    // THEN
+    assertThat(result.noCombat).isTrue();
+    assertThat(result.value).isEqualTo(0.5);
+  }
+
+  @Test
+  void agentsWhichCannotAttackEachOtherShouldBeNoCombat() {
+    // WHEN
+    Result result =
+        solver.solve(agents(UnitType.Zerg_Zergling, 5), agents(UnitType.Zerg_Overlord, 3));
+
+    // THEN
+    assertThat(result.noCombat).isTrue();
+    assertThat(result.survivorsA).isEqualTo(5);
+    assertThat(result.survivorsB).isEqualTo(3);
+  }
+
+  @Test
+  void survivorsShouldFollowSquareLaw() {
+    // WHEN
+    Result result =
+        solver.solve(agents(UnitType.Terran_Marine, 10), agents(UnitType.Terran_Marine, 5));
+
+    // THEN
+    // sqrt(10^2 - 5^2) = 8.66
+    assertThat(result.survivorsA).isBetween(8, 9);
+    assertThat(result.survivorsB).isZero();
+    assertThat(result.value).isGreaterThan(0.9);
+  }
+
+  @Test
+  void concussiveDamageShouldBeWeakAgainstLargeUnits() {
+    // GIVEN
+    List<Agent> smallDragoons = agents(UnitType.Protoss_Dragoon, 3);
+    smallDragoons.forEach(it -> it.setSize(UnitSize.SMALL));
+
+    // WHEN
+    Result vsLarge =
+        solver.solve(agents(UnitType.Terran_Vulture, 6), agents(UnitType.Protoss_Dragoon, 3));
+    Result vsSmall = solver.solve(agents(UnitType.Terran_Vulture, 6), smallDragoons);
+
+    // THEN
+    assertThat(vsLarge.remainingA).isLessThan(vsSmall.remainingA);
+    assertThat(vsLarge.frames).isGreaterThan(vsSmall.frames);
+  }
+
+  @Test
+  void frameLimitShouldStopEarly() {
+    // GIVEN
+    List<Agent> a = agents(UnitType.Terran_Marine, 5);
+    List<Agent> b = agents(UnitType.Terran_Marine, 5);
+
+    // WHEN
+    Result result = solver.solve(a, b, 24);
+
+    // THEN
+    // 5 marines focusing fire kill one marine every 20 frames
+    assertThat(result.frames).isEqualTo(24);
+    assertThat(result.survivorsA).isEqualTo(4);
+    assertThat(result.survivorsB).isEqualTo(4);
+    assertThat(result.value).isEqualTo(0.5);
+    assertThat(a).allMatch(it -> it.healthShifted == it.maxHealthShifted);
+  }
+
+  private List<Agent> agents(UnitType type, int amount) {
+    List<Agent> agents = new ArrayList<>();
+    for (int i = 0; i < amount; i++) {
+      agents.add(factory.of(type));
+    }
+    return agents;
+  }
+}
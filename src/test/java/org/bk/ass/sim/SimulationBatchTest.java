@@ -0,0 +1,166 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import org.bk.ass.sim.SimulationBatch.Scenario;
+import org.bk.ass.sim.Simulator.Builder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openbw.bwapi4j.test.BWDataProvider;
+import org.openbw.bwapi4j.type.UnitType;
+
+class SimulationBatchTest {
+  private static final ToIntFunction<Agent> HEALTH_AND_SHIELDS =
+      agent -> agent.getHealth() + agent.getShields();
+
+  private BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+
+  @BeforeAll
+  static void setup() throws Exception {
+    BWDataProvider.injectValues();
+  }
+
+  @Test
+  void shouldYieldSameResultAsSequentialSimulation() {
+    // GIVEN
+    List<Scenario> scenarios = scenarios();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    SimulationBatch batch =
+        new SimulationBatch(pool, () -> new Builder().build(), HEALTH_AND_SHIELDS);
+
+    // WHEN
+    IntEvaluation[] result;
+    try {
+      result = batch.simulate(scenarios);
+    } finally {
+      pool.shutdown();
+    }
+
+    // THEN
+    Simulator simulator = new Builder().build();
+    List<String> expected = new ArrayList<>();
+    for (Scenario scenario : scenarios) {
+      simulator.setSeed(0);
+      scenario.agentsA.forEach(agent -> simulator.addAgentA(new Agent(agent)));
+      scenario.agentsB.forEach(agent -> simulator.addAgentB(new Agent(agent)));
+      simulator.simulate(scenario.frames);
+      expected.add(simulator.evalToInt(HEALTH_AND_SHIELDS).toString());
+      simulator.reset();
+    }
+    assertThat(Arrays.stream(result).map(IntEvaluation::toString))
+        .containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  void shouldBeDeterministicRegardlessOfPoolSizeAndOrder() {
+    // GIVEN
+    List<Scenario> scenarios = scenarios();
+    List<Scenario> reversed = new ArrayList<>(scenarios);
+    Collections.reverse(reversed);
+
+    ForkJoinPool singlePool = new ForkJoinPool(1);
+    ForkJoinPool parallelPool = new ForkJoinPool(4);
+
+    // WHEN
+    IntEvaluation[] single;
+    IntEvaluation[] parallel;
+    try {
+      single =
+          new SimulationBatch(singlePool, () -> new Builder().build(), HEALTH_AND_SHIELDS)
+              .simulate(scenarios);
+      parallel =
+          new SimulationBatch(parallelPool, () -> new Builder().build(), HEALTH_AND_SHIELDS)
+              .simulate(reversed);
+    } finally {
+      singlePool.shutdown();
+      parallelPool.shutdown();
+    }
+
+    // THEN
+    List<String> reversedParallel =
+        Arrays.stream(parallel).map(IntEvaluation::toString).collect(Collectors.toList());
+    Collections.reverse(reversedParallel);
+    assertThat(Arrays.stream(single).map(IntEvaluation::toString))
+        .containsExactlyElementsOf(reversedParallel);
+  }
+
+  @Test
+  void shouldNotModifyScenarioAgents() {
+    // GIVEN
+    Agent marine = factory.of(UnitType.Terran_Marine);
+    Agent zergling = factory.of(UnitType.Zerg_Zergling);
+    ForkJoinPool pool = new ForkJoinPool(2);
+    SimulationBatch batch =
+        new SimulationBatch(pool, () -> new Builder().build(), HEALTH_AND_SHIELDS);
+
+    // WHEN
+    IntEvaluation[] result;
+    try {
+      result =
+          batch.simulate(
+              Arrays.asList(
+                  new Scenario(Collections.singleton(marine), Collections.singleton(zergling), -1),
+                  new Scenario(
+                      Collections.singleton(marine), Collections.singleton(zergling), -1)));
+    } finally {
+      pool.shutdown();
+    }
+
+    // THEN
+    assertThat(marine.getHealth()).isEqualTo(40);
+    assertThat(zergling.getHealth()).isEqualTo(35);
+    assertThat(result[0].toString()).isEqualTo(result[1].toString());
+    assertThat(result[0].evalA).isZero();
+  }
+
+  @Test
+  void shouldReuseSimulators() {
+    // GIVEN
+    ForkJoinPool pool = new ForkJoinPool(1);
+    int[] created = new int[1];
+    SimulationBatch batch =
+        new SimulationBatch(
+            pool,
+            () -> {
+              created[0]++;
+              return new Builder().build();
+            },
+            HEALTH_AND_SHIELDS);
+
+    // WHEN
+    try {
+      batch.simulate(scenarios());
+      batch.simulate(scenarios());
+    } finally {
+      pool.shutdown();
+    }
+
+    // THEN
+    assertThat(created[0]).isOne();
+  }
+
+  private List<Scenario> scenarios() {
+    List<Scenario> scenarios = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      List<Agent> agentsA = new ArrayList<>();
+      List<Agent> agentsB = new ArrayList<>();
+      for (int j = 0; j <= i; j++) {
+        agentsA.add(factory.of(UnitType.Terran_Vulture));
+        agentsA.add(factory.of(UnitType.Terran_Marine));
+      }
+      for (int j = 0; j < 6; j++) {
+        agentsB.add(factory.of(UnitType.Protoss_Zealot));
+      }
+      // All at the same position, retreating agents will have to pick a random direction
+      scenarios.add(new Scenario(agentsA, agentsB, 240));
+    }
+    return scenarios;
+  }
+}
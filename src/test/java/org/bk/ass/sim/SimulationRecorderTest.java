@@ -0,0 +1,176 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.bk.ass.sim.SimulationRecorder.SIDE_A;
+import static org.bk.ass.sim.SimulationRecorder.SIDE_B;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.bk.ass.sim.Simulator.Builder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openbw.bwapi4j.test.BWDataProvider;
+import org.openbw.bwapi4j.type.UnitType;
+
+class SimulationRecorderTest {
+
+  private BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+  private SimulationRecorder sut = new SimulationRecorder(1000, 100);
+
+  @BeforeAll
+  static void setup() throws Exception {
+    BWDataProvider.injectValues();
+  }
+
+  @Test
+  void shouldRecordStepsAndDeaths() {
+    // GIVEN
+    Simulator simulator = new Builder().build();
+    simulator.setRecorder(sut);
+    addMarinesVsZergling(simulator);
+
+    // WHEN
+    int framesLeft = simulator.simulate(-1);
+
+    // THEN
+    int steps = sut.getStepCount();
+    // Simulating "-1" frames counts down from -1
+    assertThat(sut.getFrame(steps - 1)).isEqualTo(-1 - framesLeft);
+    assertThat(sut.getAgents(0, SIDE_A)).isEqualTo(4);
+    assertThat(sut.getAgents(steps - 1, SIDE_B)).isZero();
+    assertThat(sut.getHealth(steps - 1, SIDE_B)).isZero();
+    int attacksA = 0;
+    for (int step = 0; step < steps; step++) {
+      attacksA += sut.getAttacks(step, SIDE_A);
+    }
+    assertThat(attacksA)
+        .isEqualTo(simulator.getAgentsA().stream().mapToInt(Agent::getAttackCounter).sum());
+    assertThat(sut.getDeathCount()).isEqualTo(1);
+    assertThat(sut.getDeathSide(0)).isEqualTo(SIDE_B);
+    assertThat(sut.getDeathFrame(0)).isEqualTo(sut.getFrame(steps - 1));
+    assertThat(sut.getDeathY(0)).isPositive();
+  }
+
+  @Test
+  void shouldRecordSameTimelineWithStructureOfArrays() throws IOException {
+    // GIVEN
+    Simulator simulator = new Builder().build();
+    simulator.setRecorder(sut);
+    addMarinesVsZergling(simulator);
+    SimulationRecorder arrayRecorder = new SimulationRecorder(1000, 100);
+    Simulator arraySimulator = new Builder().withStructureOfArrays(true).build();
+    arraySimulator.setRecorder(arrayRecorder);
+    addMarinesVsZergling(arraySimulator);
+
+    // WHEN
+    simulator.simulate(-1);
+    arraySimulator.simulate(-1);
+
+    // THEN
+    assertThat(toBytes(arrayRecorder)).isEqualTo(toBytes(sut));
+  }
+
+  @Test
+  void shouldRetainLatestStepsWhenFull() {
+    // GIVEN
+    SimulationRecorder recorder = new SimulationRecorder(4, 1);
+    Simulator simulator = new Builder().withFrameSkip(2).build();
+    simulator.setRecorder(recorder);
+    addMarinesVsZergling(simulator);
+
+    // WHEN
+    simulator.simulate(20);
+
+    // THEN
+    assertThat(recorder.getStepCount()).isEqualTo(4);
+    assertThat(recorder.getFrame(0)).isEqualTo(14);
+    assertThat(recorder.getFrame(3)).isEqualTo(20);
+  }
+
+  @Test
+  void shouldWriteBinaryTimeline() throws IOException {
+    // GIVEN
+    Simulator simulator = new Builder().build();
+    simulator.setRecorder(sut);
+    addMarinesVsZergling(simulator);
+    simulator.simulate(-1);
+
+    // WHEN
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(toBytes(sut)));
+
+    // THEN
+    assertThat(in.readInt()).isEqualTo(SimulationRecorder.MAGIC);
+    assertThat(in.readInt()).isEqualTo(SimulationRecorder.FORMAT_VERSION);
+    int steps = in.readInt();
+    assertThat(steps).isEqualTo(sut.getStepCount());
+    for (int step = 0; step < steps; step++) {
+      assertThat(in.readInt()).isEqualTo(sut.getFrame(step));
+      for (int side = SIDE_A; side <= SIDE_B; side++) {
+        assertThat(in.readInt()).isEqualTo(sut.getAgents(step, side));
+        assertThat(in.readInt()).isEqualTo(sut.getHealth(step, side));
+        assertThat(in.readInt()).isEqualTo(sut.getShields(step, side));
+        assertThat(in.readInt()).isEqualTo(sut.getAttacks(step, side));
+      }
+    }
+    assertThat(in.readInt()).isEqualTo(1);
+    assertThat(in.readInt()).isEqualTo(sut.getDeathFrame(0));
+    assertThat(in.readByte()).isEqualTo((byte) SIDE_B);
+    assertThat(in.readInt()).isEqualTo(sut.getDeathX(0));
+    assertThat(in.readInt()).isEqualTo(sut.getDeathY(0));
+    assertThat(in.readUTF()).isEqualTo(sut.getDeathName(0));
+    assertThat(in.available()).isZero();
+  }
+
+  @Test
+  void shouldKeepAttacksOfInterceptorsRemovedWithTheirCarrier() {
+    // GIVEN
+    Simulator simulator = new Builder().build();
+    simulator.setRecorder(sut);
+    for (int i = 0; i < 4; i++) {
+      simulator.addAgentA(
+          factory
+              .of(UnitType.Protoss_Interceptor)
+              .setX(500)
+              .setAttackTargetPriority(Agent.TargetingPriority.MEDIUM));
+    }
+    List<Agent> agentsA = new ArrayList<>(simulator.getAgentsA());
+    Agent carrier = factory.of(UnitType.Protoss_Carrier);
+    carrier.setInterceptors(simulator.getAgentsA());
+    simulator.addAgentA(carrier.setX(500));
+    agentsA.add(carrier);
+    for (int i = 0; i < 4; i++) {
+      simulator.addAgentB(factory.of(UnitType.Zerg_Hydralisk).setX(500).setY(10 + 20 * i));
+    }
+
+    // WHEN
+    simulator.simulate(-1);
+
+    // THEN
+    assertThat(simulator.getAgentsA()).isEmpty();
+    int attacksA = 0;
+    for (int step = 0; step < sut.getStepCount(); step++) {
+      assertThat(sut.getAttacks(step, SIDE_A)).isNotNegative();
+      attacksA += sut.getAttacks(step, SIDE_A);
+    }
+    assertThat(attacksA).isEqualTo(agentsA.stream().mapToInt(Agent::getAttackCounter).sum());
+    assertThat(attacksA).isGreaterThan(carrier.getAttackCounter());
+  }
+
+  private void addMarinesVsZergling(Simulator simulator) {
+    for (int i = 0; i < 4; i++) {
+      simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(20));
+    }
+    simulator.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(40).setY(200));
+  }
+
+  private static byte[] toBytes(SimulationRecorder recorder) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    recorder.writeTo(new DataOutputStream(bytes));
+    return bytes.toByteArray();
+  }
+}
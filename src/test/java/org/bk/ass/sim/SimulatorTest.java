@@ -3,8 +3,18 @@ package org.bk.ass.sim;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.bk.ass.PositionOutOfBoundsException;
+import org.bk.ass.collection.UnorderedCollection;
+import org.bk.ass.grid.Grid;
+import org.bk.ass.grid.Grids;
 import org.bk.ass.sim.Simulator.Builder;
+import org.bk.ass.sim.Simulator.StopCondition;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.openbw.bwapi4j.test.BWDataProvider;
@@ -725,7 +735,7 @@ class SimulatorTest {
     simulator.reset();
 
     // THEN
-    assertThat(simulator.collision).containsOnly(0);
+    assertThat(simulator.collision.toArray()).containsOnly(0);
   }
 
   @Test
@@ -1083,6 +1093,38 @@ class SimulatorTest {
     assertThat(simulator.getAgentsB()).size().isOne();
   }
 
+  @Test
+  void suiciderShouldMoveTowardNearestEnemy() {
+    // GIVEN
+    Agent scourge = at(factory.of(UnitType.Zerg_Scourge), 100, 100);
+    UnorderedCollection<Agent> enemies = new UnorderedCollection<>();
+    enemies.add(at(factory.of(UnitType.Zerg_Mutalisk), 100, 200));
+    enemies.add(at(factory.of(UnitType.Zerg_Mutalisk), 400, 100));
+
+    // WHEN
+    new SuiciderBehavior().simUnit(1, scourge, new UnorderedCollection<>(), enemies);
+
+    // THEN
+    assertThat(scourge.vx).isZero();
+    assertThat(scourge.vy).isPositive();
+  }
+
+  @Test
+  void retreatingAgentShouldFleeFromNearestEnemy() {
+    // GIVEN
+    Agent zergling = at(factory.of(UnitType.Zerg_Zergling), 100, 100);
+    UnorderedCollection<Agent> enemies = new UnorderedCollection<>();
+    enemies.add(at(factory.of(UnitType.Terran_Marine), 100, 150));
+    enemies.add(at(factory.of(UnitType.Terran_Marine), 400, 100));
+
+    // WHEN
+    new RetreatBehavior().simUnit(1, zergling, new UnorderedCollection<>(), enemies);
+
+    // THEN
+    assertThat(zergling.vx).isZero();
+    assertThat(zergling.vy).isNegative();
+  }
+
   @Test
   void spiderMineShouldNotAttackBuilding() {
     // GIVEN
@@ -1188,4 +1230,523 @@ class SimulatorTest {
     assertThat(simulator.getAgentsA()).isEmpty();
     assertThat(simulator.getAgentsB()).hasSize(1);
   }
+
+  @Test
+  void structureOfArraysShouldYieldSameResultAsAgents() {
+    // GIVEN
+    Consumer<Simulator> setup =
+        sim -> {
+          for (int i = 0; i < 10; i++) {
+            sim.addAgentA(factory.of(UnitType.Zerg_Hydralisk));
+            sim.addAgentA(factory.of(UnitType.Zerg_Zergling));
+          }
+          for (int i = 0; i < 6; i++) {
+            sim.addAgentB(factory.of(UnitType.Protoss_Zealot));
+          }
+          sim.addAgentB(factory.of(UnitType.Terran_Siege_Tank_Siege_Mode));
+          sim.addAgentB(factory.of(UnitType.Terran_Siege_Tank_Siege_Mode));
+          AgentUtil.randomizePositions(sim.getAgentsA(), 0, 0, 200, 200);
+          AgentUtil.randomizePositions(sim.getAgentsB(), 300, 0, 400, 200);
+        };
+    Simulator agentSim = new Builder().build();
+    Simulator arraySim = new Builder().withStructureOfArrays(true).build();
+    setup.accept(agentSim);
+    setup.accept(arraySim);
+
+    // WHEN
+    agentSim.simulate(-1);
+    arraySim.simulate(-1);
+
+    // THEN
+    assertThat(stateOf(arraySim)).isEqualTo(stateOf(agentSim));
+  }
+
+  @Test
+  void structureOfArraysShouldYieldSameResultWithSplashAndUpgrades() {
+    // GIVEN
+    Consumer<Simulator> setup =
+        sim -> {
+          for (int i = 0; i < 8; i++) {
+            sim.addAgentA(factory.of(UnitType.Zerg_Zergling).setCooldownUpgrade(true));
+            sim.addAgentA(factory.of(UnitType.Zerg_Ultralisk).setArmor(4));
+          }
+          sim.addAgentB(factory.of(UnitType.Terran_Firebat).setCanStim(true));
+          sim.addAgentB(factory.of(UnitType.Terran_Firebat).setCanStim(true));
+          sim.addAgentB(factory.of(UnitType.Protoss_Archon));
+          sim.addAgentB(factory.of(UnitType.Protoss_Reaver));
+          AgentUtil.randomizePositions(sim.getAgentsA(), 0, 0, 100, 100);
+          AgentUtil.randomizePositions(sim.getAgentsB(), 120, 0, 220, 100);
+        };
+    Simulator agentSim = new Builder().withFrameSkip(2).build();
+    Simulator arraySim = new Builder().withFrameSkip(2).withStructureOfArrays(true).build();
+    setup.accept(agentSim);
+    setup.accept(arraySim);
+
+    // WHEN
+    agentSim.simulate(150);
+    arraySim.simulate(150);
+
+    // THEN
+    assertThat(stateOf(arraySim)).isEqualTo(stateOf(agentSim));
+  }
+
+  @Test
+  void structureOfArraysShouldFallBackForHealers() {
+    // GIVEN
+    simulator = new Builder().withStructureOfArrays(true).build();
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine));
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine));
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine));
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine));
+    simulator.addAgentB(factory.of(UnitType.Terran_Marine));
+    simulator.addAgentB(factory.of(UnitType.Terran_Marine));
+    simulator.addAgentB(factory.of(UnitType.Terran_Medic));
+    simulator.addAgentB(factory.of(UnitType.Terran_Medic));
+
+    // WHEN
+    simulator.simulate(-1);
+
+    // THEN
+    assertThat(simulator.getAgentsA()).isEmpty();
+    assertThat(simulator.getAgentsB()).isNotEmpty();
+  }
+
+  @Test
+  void spatialIndexShouldYieldSameWinnerInLargeBattle() {
+    // GIVEN
+    Consumer<Simulator> setup =
+        sim -> {
+          for (int i = 0; i < 60; i++) {
+            sim.addAgentA(factory.of(UnitType.Terran_Marine));
+            sim.addAgentA(factory.of(UnitType.Terran_Medic));
+          }
+          for (int i = 0; i < 40; i++) {
+            sim.addAgentB(factory.of(UnitType.Zerg_Hydralisk));
+            sim.addAgentB(factory.of(UnitType.Zerg_Zergling));
+          }
+          sim.addAgentB(factory.of(UnitType.Terran_Vulture_Spider_Mine));
+          AgentUtil.randomizePositions(sim.getAgentsA(), 0, 0, 1200, 1200);
+          AgentUtil.randomizePositions(sim.getAgentsB(), 1000, 0, 2200, 1200);
+        };
+    Simulator linearSim = new Builder().build();
+    Simulator indexedSim = new Builder().withSpatialIndex(true).build();
+    setup.accept(linearSim);
+    setup.accept(indexedSim);
+
+    // WHEN
+    linearSim.simulate(-1);
+    indexedSim.simulate(-1);
+
+    // THEN
+    assertThat(indexedSim.getAgentsA().isEmpty()).isEqualTo(linearSim.getAgentsA().isEmpty());
+    assertThat(indexedSim.getAgentsB().isEmpty()).isEqualTo(linearSim.getAgentsB().isEmpty());
+  }
+
+  @Test
+  void spatialIndexShouldFallBackToTargetsOutOfRange() {
+    // GIVEN
+    simulator = new Builder().withSpatialIndex(true).build();
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(10).setY(10));
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(30).setY(10));
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(50).setY(10));
+    simulator.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(3000).setY(3000));
+
+    // WHEN
+    simulator.simulate(-1);
+
+    // THEN
+    assertThat(simulator.getAgentsA()).isNotEmpty();
+    assertThat(simulator.getAgentsB()).isEmpty();
+  }
+
+  @Test
+  void restoredSnapshotShouldSimulateSameAsOriginal() {
+    // GIVEN
+    for (int i = 0; i < 6; i++) {
+      simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(20));
+      simulator.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(20 * i).setY(150));
+    }
+    simulator.addAgentA(factory.of(UnitType.Terran_Medic).setX(10).setY(10));
+    simulator.addAgentB(factory.of(UnitType.Zerg_Mutalisk).setX(10).setY(150));
+    List<String> initialState = stateOf(simulator);
+    byte[] initialCollision = simulator.collision.toArray();
+    SimulatorSnapshot snapshot = simulator.snapshot();
+    simulator.simulate(100);
+    List<String> stateAfterSimulating = stateOf(simulator);
+    byte[] collisionAfterSimulating = simulator.collision.toArray();
+
+    // WHEN
+    simulator.restore(snapshot);
+    List<String> restoredState = stateOf(simulator);
+    byte[] restoredCollision = simulator.collision.toArray();
+    simulator.simulate(100);
+
+    // THEN
+    assertThat(restoredState).isEqualTo(initialState);
+    assertThat(restoredCollision).isEqualTo(initialCollision);
+    assertThat(stateOf(simulator)).isEqualTo(stateAfterSimulating);
+    assertThat(simulator.collision.toArray()).isEqualTo(collisionAfterSimulating);
+  }
+
+  @Test
+  void restoredSnapshotShouldRestoreSpeed() {
+    // GIVEN
+    Agent marine = factory.of(UnitType.Terran_Marine).setCanStim(true).setX(10).setY(10);
+    simulator.addAgentA(marine);
+    simulator.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(10).setY(100));
+    float speed = marine.speed;
+    int speedSquared = marine.speedSquared;
+    SimulatorSnapshot snapshot = simulator.snapshot();
+    simulator.simulate(8);
+    assertThat(marine.speedSquared).isGreaterThan(speedSquared);
+
+    // WHEN
+    simulator.restore(snapshot);
+
+    // THEN
+    assertThat(marine.speed).isEqualTo(speed);
+    assertThat(marine.speedSquared).isEqualTo(speedSquared);
+  }
+
+  @Test
+  void snapshotShouldAllowBranching() {
+    // GIVEN
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(10).setY(10));
+    simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(30).setY(10));
+    simulator.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(20).setY(100));
+    simulator.simulate(8);
+    SimulatorSnapshot snapshot = simulator.snapshot();
+
+    // WHEN
+    simulator.simulate(-1);
+    int agentsAAfterAttacking = simulator.getAgentsA().size();
+    int agentsBAfterAttacking = simulator.getAgentsB().size();
+    simulator.restore(snapshot);
+    simulator.removeAgentA(simulator.getAgentsA().iterator().next());
+
+    // THEN
+    assertThat(agentsAAfterAttacking).isPositive();
+    assertThat(agentsBAfterAttacking).isZero();
+    assertThat(simulator.getAgentsA()).hasSize(1);
+    assertThat(simulator.getAgentsB()).hasSize(1);
+    simulator.simulate(-1);
+    assertThat(simulator.getAgentsA()).isEmpty();
+  }
+
+  @Test
+  void simulateDistributionShouldBeReproducible() {
+    // GIVEN
+    for (int i = 0; i < 8; i++) {
+      simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(20));
+      simulator.addAgentB(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(200));
+    }
+
+    // WHEN
+    EvaluationDistribution first = simulator.simulateDistribution(16, 42);
+    EvaluationDistribution second = simulator.simulateDistribution(16, 42);
+
+    // THEN
+    assertThat(first).hasToString(second.toString());
+    assertThat(first.runs).isEqualTo(16);
+  }
+
+  @Test
+  void simulateDistributionShouldVaryOutcomeOfEvenFight() {
+    // GIVEN
+    for (int i = 0; i < 8; i++) {
+      simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(20));
+      simulator.addAgentB(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(200));
+    }
+
+    // WHEN
+    EvaluationDistribution distribution =
+        simulator.simulateDistribution(32, 1, -1, Simulator.HEALTH_AND_SHIELD);
+
+    // THEN
+    assertThat(distribution.varianceA).isPositive();
+    assertThat(distribution.varianceB).isPositive();
+    assertThat(distribution.meanA).isBetween(0.0, 8 * 40.0);
+    assertThat(distribution.meanB).isBetween(0.0, 8 * 40.0);
+    assertThat(simulator.getAgentsA())
+        .allSatisfy(agent -> assertThat(agent.getHealth()).isEqualTo(40));
+  }
+
+  @Test
+  void shouldStopWhenSideLostFraction() {
+    // GIVEN
+    for (int i = 0; i < 10; i++) {
+      simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(20));
+      simulator.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(20 * i).setY(200));
+    }
+
+    // WHEN
+    int framesLeft =
+        simulator.simulate(960, StopCondition.sideLost(0.5, Simulator.HEALTH_AND_SHIELD), 1);
+
+    // THEN
+    assertThat(framesLeft).isPositive();
+    assertThat(simulator.getAgentsA()).isNotEmpty();
+    assertThat(simulator.getAgentsB()).isNotEmpty();
+    IntEvaluation evaluation = simulator.evalToInt(Simulator.HEALTH_AND_SHIELD);
+    assertThat(evaluation.evalA <= 10 * 40 / 2 || evaluation.evalB <= 10 * 35 / 2).isTrue();
+  }
+
+  @Test
+  void shouldStopWhenEvalRatioReached() {
+    // GIVEN
+    simulator = new Builder().withStructureOfArrays(true).build();
+    for (int i = 0; i < 10; i++) {
+      simulator.addAgentA(factory.of(UnitType.Zerg_Hydralisk).setX(20 * i).setY(20));
+    }
+    for (int i = 0; i < 4; i++) {
+      simulator.addAgentB(factory.of(UnitType.Zerg_Hydralisk).setX(20 * i).setY(200));
+    }
+
+    // WHEN
+    int framesLeft =
+        simulator.simulate(960, StopCondition.evalRatioReached(4, Simulator.HEALTH_AND_SHIELD), 2);
+
+    // THEN
+    assertThat(framesLeft).isPositive();
+    assertThat(simulator.getAgentsB()).isNotEmpty();
+    IntEvaluation evaluation = simulator.evalToInt(Simulator.HEALTH_AND_SHIELD);
+    assertThat(evaluation.evalA).isGreaterThanOrEqualTo(4 * evaluation.evalB);
+  }
+
+  @Test
+  void shouldStopWhenAgentDied() {
+    // GIVEN
+    Agent zealot = factory.of(UnitType.Protoss_Zealot).setX(10).setY(200);
+    for (int i = 0; i < 6; i++) {
+      simulator.addAgentA(factory.of(UnitType.Terran_Marine).setX(20 * i).setY(20));
+    }
+    simulator.addAgentB(zealot);
+    simulator.addAgentB(factory.of(UnitType.Protoss_Zealot).setX(400).setY(200));
+
+    // WHEN
+    simulator.simulate(-1, StopCondition.agentDied(zealot), 1);
+
+    // THEN
+    assertThat(simulator.getAgentsB()).doesNotContain(zealot).hasSize(1);
+  }
+
+  @Test
+  void adaptiveFrameSkipShouldUseFewerStepsWhileForcesAreFarApart() {
+    // GIVEN
+    Simulator fixed = new Builder().build();
+    Simulator adaptive = new Builder().withAdaptiveFrameSkip(48).build();
+    for (Simulator sim : new Simulator[] {fixed, adaptive}) {
+      for (int i = 0; i < 4; i++) {
+        sim.addAgentA(factory.of(UnitType.Terran_Marine).setX(100).setY(100 + 20 * i));
+        sim.addAgentB(factory.of(UnitType.Terran_Marine).setX(2000).setY(100 + 20 * i));
+      }
+    }
+    int[] steps = new int[2];
+
+    // WHEN
+    fixed.simulate(240, s -> ++steps[0] < 0, 1);
+    adaptive.simulate(240, s -> ++steps[1] < 0, 1);
+
+    // THEN
+    assertThat(steps[0]).isEqualTo(240);
+    assertThat(steps[1]).isLessThanOrEqualTo(10);
+    // Fewer steps also means less rounding when moving
+    int fixedX = fixed.getAgentsA().iterator().next().x;
+    assertThat(adaptive.getAgentsA()).allMatch(a -> a.x >= fixedX && a.x <= fixedX + 48);
+  }
+
+  @Test
+  void adaptiveFrameSkipShouldHaveSameOutcomeAsFrameSkip1() {
+    // GIVEN
+    Simulator fixed = new Builder().build();
+    Simulator adaptive = new Builder().withAdaptiveFrameSkip(37).build();
+    for (Simulator sim : new Simulator[] {fixed, adaptive}) {
+      for (int i = 0; i < 6; i++) {
+        sim.addAgentA(factory.of(UnitType.Zerg_Hydralisk).setX(100).setY(100 + 20 * i));
+      }
+      for (int i = 0; i < 4; i++) {
+        sim.addAgentB(factory.of(UnitType.Protoss_Dragoon).setX(1200).setY(100 + 30 * i));
+      }
+    }
+
+    // WHEN
+    fixed.simulate(-1);
+    adaptive.simulate(-1);
+
+    // THEN
+    assertThat(adaptive.getAgentsA().isEmpty()).isEqualTo(fixed.getAgentsA().isEmpty());
+    assertThat(adaptive.getAgentsB().isEmpty()).isEqualTo(fixed.getAgentsB().isEmpty());
+    assertThat(adaptive.getAgentsA().size() + adaptive.getAgentsB().size())
+        .isBetween(
+            fixed.getAgentsA().size() + fixed.getAgentsB().size() - 1,
+            fixed.getAgentsA().size() + fixed.getAgentsB().size() + 1);
+  }
+
+  @Test
+  void maxFrameSkipBelowFrameSkipShouldThrowException() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new Builder().withFrameSkip(4).withAdaptiveFrameSkip(2).build());
+  }
+
+  @Test
+  void largeAdaptiveFrameSkipShouldMatchFrameSkip1WithImmobileAgents() {
+    // GIVEN
+    Simulator fixed = new Builder().build();
+    Simulator adaptive = new Builder().withAdaptiveFrameSkip(240).build();
+    for (Simulator sim : new Simulator[] {fixed, adaptive}) {
+      sim.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(100));
+      sim.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(164));
+      sim.addAgentB(factory.of(UnitType.Zerg_Sunken_Colony).setX(300).setY(100));
+      sim.addAgentB(factory.of(UnitType.Zerg_Sunken_Colony).setX(300).setY(164));
+      sim.addAgentB(factory.of(UnitType.Zerg_Sunken_Colony).setX(300).setY(228));
+    }
+    int[] steps = new int[2];
+
+    // WHEN
+    fixed.setSeed(42);
+    int fixedFramesLeft = fixed.simulate(480, s -> ++steps[0] < 0, 1);
+    adaptive.setSeed(42);
+    int adaptiveFramesLeft = adaptive.simulate(480, s -> ++steps[1] < 0, 1);
+
+    // THEN
+    assertThat(adaptiveFramesLeft).isEqualTo(fixedFramesLeft);
+    assertThat(stateOf(adaptive)).isEqualTo(stateOf(fixed));
+    assertThat(steps[1]).isLessThan(steps[0] / 5);
+  }
+
+  @Test
+  void parallelStepShouldLetAgentsDecideBeforeDamageIsApplied() {
+    // GIVEN
+    Simulator sequential = new Builder().build();
+    Simulator parallel = new Builder().withParallelStep(true).build();
+    for (Simulator sim : new Simulator[] {sequential, parallel}) {
+      sim.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(100));
+      sim.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(132));
+      sim.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(200).setY(116).setHealth(15));
+      sim.addAgentB(factory.of(UnitType.Zerg_Zergling).setX(250).setY(116).setHealth(15));
+    }
+
+    // WHEN
+    sequential.simulate(1);
+    parallel.simulate(1);
+
+    // THEN
+    assertThat(sequential.getAgentsB()).isEmpty();
+    assertThat(parallel.getAgentsB()).hasSize(1);
+  }
+
+  @Test
+  void parallelStepShouldBeDeterministicInLargeBattles() {
+    // GIVEN
+    Simulator sequential = new Builder().build();
+    Simulator parallel = new Builder().withParallelStep(true).build();
+    Simulator parallelAgain = new Builder().withParallelStep(true).build();
+    for (Simulator sim : new Simulator[] {sequential, parallel, parallelAgain}) {
+      for (int i = 0; i < 100; i++) {
+        sim.addAgentA(factory.of(UnitType.Terran_Marine));
+        sim.addAgentB(factory.of(UnitType.Zerg_Zergling));
+      }
+      AgentUtil.randomizePositions(sim.getAgentsA(), 0, 0, 700, 700);
+      AgentUtil.randomizePositions(sim.getAgentsB(), 350, 0, 1050, 700);
+    }
+
+    // WHEN
+    sequential.simulate(-1);
+    parallel.simulate(-1);
+    parallelAgain.simulate(-1);
+
+    // THEN
+    assertThat(stateOf(parallelAgain)).isEqualTo(stateOf(parallel));
+    assertThat(parallel.getAgentsA().isEmpty()).isEqualTo(sequential.getAgentsA().isEmpty());
+    assertThat(parallel.getAgentsB().isEmpty()).isEqualTo(sequential.getAgentsB().isEmpty());
+  }
+
+  @Test
+  void parallelStepShouldNotDependOnNumberOfThreads() throws Exception {
+    // GIVEN
+    List<Simulator> simulators = new ArrayList<>();
+    for (int s = 0; s < 4; s++) {
+      Simulator sim = new Builder().withParallelStep(true).build();
+      // Dragoons kite marines which are not stimmed, so they look at the speed of the marines
+      for (int i = 0; i < 300; i++) {
+        sim.addAgentA(factory.of(UnitType.Terran_Marine).setCanStim(true));
+        sim.addAgentB(factory.of(UnitType.Protoss_Dragoon).setKiter(true));
+      }
+      AgentUtil.randomizePositions(sim.getAgentsA(), 0, 0, 700, 700);
+      AgentUtil.randomizePositions(sim.getAgentsB(), 350, 0, 1050, 700);
+      sim.setSeed(42);
+      simulators.add(sim);
+    }
+
+    // WHEN
+    simulators.get(0).simulate(240);
+    for (int threads = 1; threads <= 4; threads *= 2) {
+      Simulator sim = simulators.get(Integer.numberOfTrailingZeros(threads) + 1);
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        pool.submit(() -> sim.simulate(240)).get();
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    // THEN
+    for (Simulator sim : simulators) {
+      assertThat(stateOf(sim)).isEqualTo(stateOf(simulators.get(0)));
+    }
+  }
+
+  @Test
+  void groundAgentsShouldNotMoveThroughUnwalkableCells() {
+    // GIVEN
+    simulator = new Builder().withWalkability(wall(64)).build();
+    simulator.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(250));
+    simulator.addAgentB(factory.of(UnitType.Protoss_Zealot).setX(300).setY(100));
+
+    // WHEN
+    simulator.simulate(240);
+
+    // THEN
+    assertThat(simulator.getAgentsA()).allMatch(it -> it.getHealth() + it.getShields() == 200);
+    assertThat(simulator.getAgentsB()).allMatch(it -> it.x >= 208);
+  }
+
+  @Test
+  void groundAgentsShouldSlideAlongWallsThroughGaps() {
+    // GIVEN
+    simulator = new Builder().withWalkability(wall(19)).build();
+    simulator.addAgentA(factory.of(UnitType.Protoss_Photon_Cannon).setX(100).setY(250));
+    simulator.addAgentB(factory.of(UnitType.Protoss_Zealot).setX(300).setY(100));
+
+    // WHEN
+    simulator.simulate(240);
+
+    // THEN
+    assertThat(simulator.getAgentsA()).allMatch(it -> it.getHealth() + it.getShields() < 200);
+  }
+
+  /** 512x512 pixels, with an unwalkable wall at x = [192, 208) from the top to the given cell. */
+  private static Grid<Boolean> wall(int wallHeight) {
+    boolean[][] walkable = new boolean[64][64];
+    for (int x = 0; x < 64; x++) {
+      for (int y = 0; y < 64; y++) {
+        walkable[x][y] = x < 24 || x > 25 || y >= wallHeight;
+      }
+    }
+    return Grids.fromBooleanArray(walkable);
+  }
+
+  /** Places the agent without adding it to a simulator. */
+  private static Agent at(Agent agent, int x, int y) {
+    agent.x = x;
+    agent.y = y;
+    return agent;
+  }
+
+  private static List<String> stateOf(Simulator simulator) {
+    return Stream.concat(simulator.getAgentsA().stream(), simulator.getAgentsB().stream())
+        .map(a -> a + ", cd: " + a.cooldown + ", hs: " + a.healthShifted)
+        .collect(Collectors.toList());
+  }
 }
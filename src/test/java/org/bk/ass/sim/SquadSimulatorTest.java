@@ -0,0 +1,177 @@
+package org.bk.ass.sim;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.bk.ass.cluster.Cluster;
+import org.bk.ass.cluster.StableDBScanner;
+import org.bk.ass.sim.SquadSimulator.Engagement;
+import org.bk.ass.sim.SquadSimulator.Squad;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.openbw.bwapi4j.test.BWDataProvider;
+import org.openbw.bwapi4j.type.UnitType;
+
+class SquadSimulatorTest {
+  private SquadSimulator sut = new SquadSimulator();
+  private BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+
+  @BeforeAll
+  static void setup() throws Exception {
+    BWDataProvider.injectValues();
+  }
+
+  @Test
+  void shouldCreateSquadOfCluster() {
+    // GIVEN
+    List<Agent> marines = agents(UnitType.Terran_Marine, 10, 100, 100);
+    List<Integer> indices = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+    StableDBScanner<Integer> scanner = new StableDBScanner<>(indices, 1, it -> indices);
+    scanner.scan(-1);
+    Cluster<Integer> cluster = scanner.getClusters().iterator().next();
+
+    // WHEN
+    Squad squad = SquadSimulator.squadOf(cluster, marines::get);
+
+    // THEN
+    assertThat(squad.getAgents()).containsExactlyInAnyOrderElementsOf(marines);
+    assertThat(squad.getCluster()).isSameAs(cluster);
+    assertThat(squad.getX()).isEqualTo(100);
+  }
+
+  @Test
+  void agentsWithEqualWeaponsShouldShareWeaponGroup() {
+    // GIVEN
+    List<Agent> agents = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      agents.add(
+          new Agent("Test")
+              .setHealth(10)
+              .setGroundWeapon(
+                  new Weapon()
+                      .setDamage(6)
+                      .setHits(1)
+                      .setCooldown(15)
+                      .setMaxRange(128)
+                      .setDamageType(DamageType.IRRELEVANT)));
+    }
+
+    // WHEN
+    Squad squad = new Squad(agents);
+
+    // THEN
+    assertThat(squad.weaponGroups).hasSize(1);
+    assertThat(squad.weaponGroups.get(0).count).isEqualTo(3);
+  }
+
+  @Test
+  void largerSquadShouldWinFollowingSquareLaw() {
+    // GIVEN
+    Squad a = new Squad(agents(UnitType.Terran_Marine, 10, 100, 100));
+    Squad b = new Squad(agents(UnitType.Terran_Marine, 5, 100, 100));
+
+    // WHEN
+    Engagement engagement = sut.engage(a, b);
+
+    // THEN
+    // sqrt(1 - 5^2 / 10^2) = 0.866
+    assertThat(engagement.remainingA).isBetween(0.86, 0.87);
+    assertThat(engagement.remainingB).isZero();
+    assertThat(engagement.value).isEqualTo(1.0);
+  }
+
+  @Test
+  void distantSquadShouldDelayFight() {
+    // GIVEN
+    Squad a = new Squad(agents(UnitType.Zerg_Zergling, 10, 100, 100));
+    Squad near = new Squad(agents(UnitType.Terran_Marine, 5, 100, 100));
+    Squad far = new Squad(agents(UnitType.Terran_Marine, 5, 1000, 100));
+
+    // WHEN
+    Engagement vsNear = sut.engage(a, near);
+    Engagement vsFar = sut.engage(a, far);
+
+    // THEN
+    assertThat(vsFar.frames).isGreaterThan(vsNear.frames + 100);
+    assertThat(vsFar.value).isEqualTo(vsNear.value);
+  }
+
+  @Test
+  void immobileSquadShouldNotReachDistantSquad() {
+    // GIVEN
+    Squad cannons = new Squad(agents(UnitType.Protoss_Photon_Cannon, 2, 100, 100));
+    Squad marines = new Squad(agents(UnitType.Terran_Marine, 5, 1000, 100));
+
+    // WHEN
+    Engagement engagement = sut.engage(cannons, marines);
+
+    // THEN
+    assertThat(engagement.noCombat).isTrue();
+  }
+
+  @Test
+  void squadsWhichCannotAttackEachOtherShouldBeNoCombat() {
+    // GIVEN
+    Squad zerglings = new Squad(agents(UnitType.Zerg_Zergling, 5, 100, 100));
+    Squad overlords = new Squad(agents(UnitType.Zerg_Overlord, 3, 100, 100));
+
+    // WHEN
+    Engagement engagement = sut.engage(zerglings, overlords);
+
+    // THEN
+    assertThat(engagement.noCombat).isTrue();
+    assertThat(engagement.value).isEqualTo(0.5);
+  }
+
+  @Test
+  void shouldRankEngagementsByValue() {
+    // GIVEN
+    Squad a = new Squad(agents(UnitType.Terran_Marine, 10, 100, 100));
+    Squad weak = new Squad(agents(UnitType.Zerg_Zergling, 4, 300, 100));
+    Squad strong = new Squad(agents(UnitType.Zerg_Hydralisk, 12, 100, 300));
+
+    // WHEN
+    List<Engagement> engagements = sut.engageAll(listOf(a), listOf(strong, weak));
+
+    // THEN
+    assertThat(engagements).extracting(it -> it.squadB).containsExactly(weak, strong);
+  }
+
+  @Test
+  void refineShouldSimulateCopiesOfAgents() {
+    // GIVEN
+    List<Agent> marines = agents(UnitType.Terran_Marine, 10, 100, 100);
+    Squad a = new Squad(marines);
+    Squad b = new Squad(agents(UnitType.Terran_Marine, 5, 150, 100));
+    Engagement engagement = sut.engage(a, b);
+
+    // WHEN
+    Engagement refined = sut.refine(engagement, 240);
+
+    // THEN
+    assertThat(refined.refined).isTrue();
+    assertThat(refined.value).isGreaterThan(0.8);
+    assertThat(refined.remainingB).isZero();
+    assertThat(marines).allMatch(it -> it.healthShifted == it.maxHealthShifted);
+  }
+
+  private List<Squad> listOf(Squad... squads) {
+    List<Squad> result = new ArrayList<>();
+    for (Squad squad : squads) {
+      result.add(squad);
+    }
+    return result;
+  }
+
+  private List<Agent> agents(UnitType type, int amount, int x, int y) {
+    List<Agent> agents = new ArrayList<>();
+    for (int i = 0; i < amount; i++) {
+      agents.add(factory.of(type).setX(x).setY(y));
+    }
+    return agents;
+  }
+}
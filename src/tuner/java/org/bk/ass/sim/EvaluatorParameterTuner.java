@@ -0,0 +1,199 @@
+package org.bk.ass.sim;
+
+import io.jenetics.Chromosome;
+import io.jenetics.DoubleChromosome;
+import io.jenetics.DoubleGene;
+import io.jenetics.Genotype;
+import io.jenetics.Mutator;
+import io.jenetics.Phenotype;
+import io.jenetics.SinglePointCrossover;
+import io.jenetics.engine.Engine;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.engine.EvolutionStream;
+import io.jenetics.engine.Limits;
+import io.jenetics.util.ISeq;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.bk.ass.sim.Evaluator.Parameters;
+import org.openbw.bwapi4j.test.BWDataProvider;
+
+/**
+ * Tunes {@link Parameters} with a genetic algorithm, using the accuracy on a {@link
+ * ScenarioCorpus} as fitness. Fitness is evaluated in parallel on all cores. The population is
+ * written to a checkpoint file regularly, an existing checkpoint is resumed. Tuning stops after
+ * the given number of generations in total, including those before resuming.
+ *
+ * <p>Arguments (all optional): <code>
+ * [seed] [corpus size] [generations] [checkpoint file] [checkpoint interval]</code>
+ */
+public class EvaluatorParameterTuner {
+  private static final int PARAMS = 7;
+
+  public static void main(String[] args) throws Exception {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : 0;
+    int corpusSize = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    long generations = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+    Path checkpoint = Paths.get(args.length > 3 ? args[3] : "evaluator-tuner.checkpoint");
+    int checkpointInterval = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+    BWDataProvider.injectValues();
+
+    long start = System.currentTimeMillis();
+    ScenarioCorpus corpus = ScenarioCorpus.generate(seed, corpusSize);
+    System.out.println(
+        "Corpus of "
+            + corpus.size()
+            + " scenarios ("
+            + corpus.decisiveScenarios()
+            + " decisive) generated in "
+            + (System.currentTimeMillis() - start)
+            + "ms");
+    report("Default parameters", corpus, new Parameters());
+
+    Genotype<DoubleGene> genotype = Genotype.of(DoubleChromosome.of(0.0001, 10.0, PARAMS));
+    Engine<DoubleGene, Double> engine =
+        Engine.builder(gt -> corpus.accuracy(new Evaluator(parametersOf(gt))), genotype)
+            .executor(ForkJoinPool.commonPool())
+            .alterers(new Mutator<>(0.7), new SinglePointCrossover<>(0.2))
+            .build();
+
+    EvolutionStream<DoubleGene, Double> stream;
+    if (Files.exists(checkpoint)) {
+      Checkpoint resumed = Checkpoint.read(checkpoint);
+      // The fitness of the population is only valid for the corpus it was evaluated on
+      if (resumed.seed != seed || resumed.corpusSize != corpusSize) {
+        throw new IllegalStateException(
+            "Checkpoint "
+                + checkpoint
+                + " was created with seed "
+                + resumed.seed
+                + " and corpus size "
+                + resumed.corpusSize
+                + ", delete it or use the same arguments");
+      }
+      if (resumed.generation > generations) {
+        System.out.println("Checkpoint already contains " + generations + " generations");
+        return;
+      }
+      System.out.println("Resuming from generation " + resumed.generation);
+      stream = engine.stream(resumed.population, resumed.generation);
+    } else {
+      stream = engine.stream();
+    }
+    AtomicReference<EvolutionResult<DoubleGene, Double>> last = new AtomicReference<>();
+    EvolutionResult<DoubleGene, Double> result =
+        stream
+            .limit(r -> r.generation() <= generations)
+            .limit(Limits.byFitnessThreshold(1.0))
+            .peek(
+                r -> {
+                  last.set(r);
+                  if (r.generation() % checkpointInterval == 0) {
+                    writeCheckpoint(checkpoint, seed, corpusSize, r);
+                    System.out.println(
+                        "Generation " + r.generation() + ", best " + r.bestFitness());
+                  }
+                })
+            .collect(EvolutionResult.toBestEvolutionResult());
+    writeCheckpoint(checkpoint, seed, corpusSize, last.get());
+
+    Parameters best = parametersOf(result.bestPhenotype().genotype());
+    report("Tuned parameters", corpus, best);
+    System.out.println(
+        result.bestPhenotype().genotype().stream()
+            .flatMap(Chromosome::stream)
+            .mapToDouble(DoubleGene::doubleValue)
+            .map(EvaluatorParameterTuner::round)
+            .mapToObj(String::valueOf)
+            .collect(Collectors.joining(", ", "new double[] {", "}")));
+  }
+
+  private static Parameters parametersOf(Genotype<DoubleGene> genotype) {
+    return new Parameters(
+        genotype.stream()
+            .flatMap(Chromosome::stream)
+            .mapToDouble(DoubleGene::doubleValue)
+            .map(EvaluatorParameterTuner::round)
+            .toArray());
+  }
+
+  private static void report(String label, ScenarioCorpus corpus, Parameters parameters) {
+    Evaluator evaluator = new Evaluator(parameters);
+    System.out.println(
+        label
+            + ": accuracy "
+            + corpus.accuracy(evaluator)
+            + ", mean squared error "
+            + corpus.meanSquaredError(evaluator));
+  }
+
+  private static void writeCheckpoint(
+      Path file, long seed, int corpusSize, EvolutionResult<DoubleGene, Double> result) {
+    try {
+      new Checkpoint(seed, corpusSize, result.generation() + 1, result.population())
+          .write(file);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write checkpoint " + file, e);
+    }
+  }
+
+  private static double round(double v) {
+    return Math.round(v * 1000) / 1000.0;
+  }
+
+  /**
+   * Population of a generation, which can be used to resume tuning on the corpus with the same
+   * seed and size.
+   */
+  static final class Checkpoint {
+    final long seed;
+    final int corpusSize;
+    final long generation;
+    final ISeq<Phenotype<DoubleGene, Double>> population;
+
+    Checkpoint(
+        long seed,
+        int corpusSize,
+        long generation,
+        ISeq<Phenotype<DoubleGene, Double>> population) {
+      this.seed = seed;
+      this.corpusSize = corpusSize;
+      this.generation = generation;
+      this.population = population;
+    }
+
+    /** Writes to a temporary file first, so an interrupted write keeps the last checkpoint. */
+    void write(Path file) throws IOException {
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(temp))) {
+        out.writeLong(seed);
+        out.writeInt(corpusSize);
+        out.writeLong(generation);
+        out.writeObject(population);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Checkpoint read(Path file) throws IOException, ClassNotFoundException {
+      try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(file))) {
+        long seed = in.readLong();
+        int corpusSize = in.readInt();
+        long generation = in.readLong();
+        return new Checkpoint(
+            seed,
+            corpusSize,
+            generation,
+            (ISeq<Phenotype<DoubleGene, Double>>) in.readObject());
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.bk.ass.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import org.openbw.bwapi4j.type.UnitType;
+
+/**
+ * Reproducible set of battles with their outcome determined by the {@link Simulator}. Used to
+ * measure how well an {@link Evaluator} predicts simulation results. The same seed and size always
+ * yield the same corpus.
+ */
+public final class ScenarioCorpus {
+  private static final UnitType[] UNIT_TYPES = {
+    UnitType.Terran_Marine,
+    UnitType.Terran_Firebat,
+    UnitType.Terran_Medic,
+    UnitType.Terran_Vulture,
+    UnitType.Terran_Goliath,
+    UnitType.Terran_Siege_Tank_Tank_Mode,
+    UnitType.Terran_Wraith,
+    UnitType.Protoss_Zealot,
+    UnitType.Protoss_Dragoon,
+    UnitType.Protoss_Archon,
+    UnitType.Protoss_Corsair,
+    UnitType.Protoss_Scout,
+    UnitType.Zerg_Zergling,
+    UnitType.Zerg_Hydralisk,
+    UnitType.Zerg_Lurker,
+    UnitType.Zerg_Ultralisk,
+    UnitType.Zerg_Mutalisk,
+    UnitType.Zerg_Guardian
+  };
+  private static final int MAX_TYPES_PER_SIDE = 3;
+  private static final int MAX_UNITS_PER_TYPE = 12;
+  private static final int SIMULATED_FRAMES = 24 * 60;
+  /** Outcomes closer than this to 0.5 are considered a draw and not used to measure accuracy. */
+  private static final double DRAW_MARGIN = 0.1;
+
+  private final List<Scenario> scenarios;
+
+  private ScenarioCorpus(List<Scenario> scenarios) {
+    this.scenarios = scenarios;
+  }
+
+  /**
+   * Generates a corpus of the given size. The compositions and the seeds of their simulations are
+   * determined by the seed, outcomes are simulated in parallel.
+   */
+  public static ScenarioCorpus generate(long seed, int size) {
+    SplittableRandom rnd = new SplittableRandom(seed);
+    List<UnitType[]> compositionsA = new ArrayList<>();
+    List<UnitType[]> compositionsB = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      compositionsA.add(randomComposition(rnd));
+      compositionsB.add(randomComposition(rnd));
+    }
+    BWAPI4JAgentFactory factory = new BWAPI4JAgentFactory(null);
+    List<SimulationBatch.Scenario> battles = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      List<Agent> agentsA = agentsOf(factory, compositionsA.get(i));
+      List<Agent> agentsB = agentsOf(factory, compositionsB.get(i));
+      AgentUtil.randomizePositions(agentsA, 900, 900, 1100, 1100);
+      AgentUtil.randomizePositions(agentsB, 1200, 900, 1400, 1100);
+      battles.add(new SimulationBatch.Scenario(agentsA, agentsB, SIMULATED_FRAMES, rnd.nextLong()));
+    }
+    IntEvaluation[] results =
+        new SimulationBatch(
+                ForkJoinPool.commonPool(),
+                () -> new Simulator.Builder().build(),
+                agent -> agent.getHealth() + agent.getShields())
+            .simulate(battles);
+    List<Scenario> scenarios = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      scenarios.add(new Scenario(battles.get(i).agentsA, battles.get(i).agentsB, results[i]));
+    }
+    return new ScenarioCorpus(scenarios);
+  }
+
+  private static List<Agent> agentsOf(BWAPI4JAgentFactory factory, UnitType[] composition) {
+    List<Agent> agents = new ArrayList<>(composition.length);
+    for (UnitType type : composition) {
+      agents.add(factory.of(type));
+    }
+    return agents;
+  }
+
+  private static UnitType[] randomComposition(SplittableRandom rnd) {
+    List<UnitType> composition = new ArrayList<>();
+    int types = rnd.nextInt(1, MAX_TYPES_PER_SIDE + 1);
+    for (int i = 0; i < types; i++) {
+      UnitType type = UNIT_TYPES[rnd.nextInt(UNIT_TYPES.length)];
+      int amount = rnd.nextInt(1, MAX_UNITS_PER_TYPE + 1);
+      for (int j = 0; j < amount; j++) {
+        composition.add(type);
+      }
+    }
+    return composition.toArray(new UnitType[0]);
+  }
+
+  public int size() {
+    return scenarios.size();
+  }
+
+  /** Number of scenarios which were not a draw in the simulation. */
+  public int decisiveScenarios() {
+    return (int) scenarios.stream().filter(Scenario::isDecisive).count();
+  }
+
+  /**
+   * Fraction of decisive scenarios for which the evaluator predicts the same winner as the
+   * simulation.
+   */
+  public double accuracy(Evaluator evaluator) {
+    int decisive = 0;
+    int correct = 0;
+    for (Scenario scenario : scenarios) {
+      if (!scenario.isDecisive()) {
+        continue;
+      }
+      decisive++;
+      double value = evaluator.evaluate(scenario.agentsA, scenario.agentsB).value;
+      if (value > 0.5 == scenario.outcome > 0.5) {
+        correct++;
+      }
+    }
+    return decisive == 0 ? 0 : correct / (double) decisive;
+  }
+
+  /** Mean squared difference between evaluation values and simulation outcomes. */
+  public double meanSquaredError(Evaluator evaluator) {
+    double sum = 0;
+    for (Scenario scenario : scenarios) {
+      double delta =
+          evaluator.evaluate(scenario.agentsA, scenario.agentsB).value - scenario.outcome;
+      sum += delta * delta;
+    }
+    return scenarios.isEmpty() ? 0 : sum / scenarios.size();
+  }
+
+  private static final class Scenario {
+    private final List<Agent> agentsA;
+    private final List<Agent> agentsB;
+    /** Remaining hit point ratio of A relative to both sides, in the [0..1] range. */
+    private final double outcome;
+
+    Scenario(List<Agent> agentsA, List<Agent> agentsB, IntEvaluation result) {
+      this.agentsA = agentsA;
+      this.agentsB = agentsB;
+      double remainingA = result.evalA / hitPoints(agentsA);
+      double remainingB = result.evalB / hitPoints(agentsB);
+      outcome = remainingA + remainingB == 0 ? 0.5 : remainingA / (remainingA + remainingB);
+    }
+
+    private static double hitPoints(Collection<Agent> agents) {
+      return agents.stream().mapToDouble(a -> a.getHealth() + a.getShields()).sum();
+    }
+
+    boolean isDecisive() {
+      return Math.abs(outcome - 0.5) > DRAW_MARGIN;
+    }
+  }
+}